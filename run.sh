@@ -16,6 +16,21 @@ function show_usage {
   echo "  -b, --browser BROWSER      Browser to use (chrome, firefox, edge, safari)"
   echo "  --headless                 Run in headless mode"
   echo "  --device DEVICE            Mobile device name for Appium tests"
+  echo "  --otp-seed SEED            Authenticator seed for in-process OTP generation"
+  echo "  -t, --tags EXPR            Run Cucumber scenarios matching a tag expression"
+  echo "  --shard-index N            Zero-based index of the shard to run"
+  echo "  --shard-count N            Total number of shards"
+  echo "  --merge-reports [DIR]      Merge shard reports into one extent-report.html"
+  echo "  --render-report [FILE]     Render extent-report.html from an event log"
+  echo "  --query-logs QUERY         Print the log entries matching a query, e.g. \"level=WARN\""
+  echo "  --adaptive                 Adjust the number of parallel workers during the run"
+  echo "  --trace [FILE]             Write the phases of every test as a Chrome trace"
+  echo "  --profile [FILE]           Record a Java Flight Recorder profile of the run"
+  echo "  --incremental              Reuse recorded passes of unchanged tests"
+  echo "  --force                    With --incremental, run every test anyway"
+  echo "  --daemon [PORT]            Stay resident and accept runs from --via-daemon"
+  echo "  --via-daemon               Send this run to the running daemon instead of starting a JVM"
+  echo "  --stop-daemon              Stop the running daemon"
   echo "  -h, --help                 Show this help message"
   echo ""
   echo "Examples:"
@@ -25,12 +40,56 @@ function show_usage {
   echo ""
 }
 
+# Send a request to the running test daemon over its loopback socket
+function send_to_daemon {
+  local state="test-output/daemon/daemon.properties"
+  if [ ! -f "$state" ]; then
+    echo "No test daemon running (start one with: $0 --daemon)"
+    exit 1
+  fi
+  local port token
+  port=$(grep '^port=' "$state" | cut -d= -f2)
+  token=$(grep '^token=' "$state" | cut -d= -f2)
+  if ! exec 3<>"/dev/tcp/127.0.0.1/$port"; then
+    echo "Test daemon is not reachable on port $port"
+    exit 1
+  fi
+
+  local command="$1"
+  shift
+  {
+    printf 'TOKEN\t%s\n' "$token"
+    for arg in "$@"; do
+      printf 'ARG\t%s\n' "$arg"
+    done
+    printf '%s\n' "$command"
+  } >&3
+
+  local status=1 line
+  while IFS= read -r line <&3; do
+    if [[ "$line" == EXIT$'\t'* ]]; then
+      status="${line#EXIT$'\t'}"
+    else
+      printf '%s\n' "$line"
+    fi
+  done
+  exec 3<&-
+  exit "$status"
+}
+
 # Check if help is requested
 if [[ "$1" == "-h" || "$1" == "--help" || $# -eq 0 ]]; then
   show_usage
   exit 0
 fi
 
+if [[ "$1" == "--via-daemon" ]]; then
+  shift
+  send_to_daemon RUN "$@"
+elif [[ "$1" == "--stop-daemon" ]]; then
+  send_to_daemon STOP
+fi
+
 # Build the project if needed
 if [ ! -f "target/secure-test-automation-1.0-SNAPSHOT.jar" ]; then
   echo "Building project..."
@@ -43,6 +102,41 @@ if [ ! -f "target/secure-test-automation-1.0-SNAPSHOT.jar" ]; then
   fi
 fi
 
+# ExtentReports' JSON archives (used for shard reports) need reflective access on Java 9+
+JAVA_OPTS=""
+JAVA_MAJOR=$(java -version 2>&1 | head -1 | sed -E 's/.*version "([0-9]+).*/\1/')
+if [ "$JAVA_MAJOR" -ge 9 ] 2>/dev/null; then
+  JAVA_OPTS="--add-opens java.base/java.lang=ALL-UNNAMED"
+fi
+
+# The daemon reloads test classes from class directories, so it runs from target/test-classes and
+# target/classes, with the test-scoped JUnit and Cucumber jars, instead of from the jar
+if [[ "$1" == "--daemon" ]]; then
+  if [ ! -d "target/test-classes" ] || [ ! -f "target/test.classpath" ]; then
+    echo "Compiling tests..."
+    mvn -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test.classpath
+    if [ $? -ne 0 ]; then
+      echo "Build failed. Please fix the errors and try again."
+      exit 1
+    fi
+  fi
+  echo "Starting test daemon..."
+  java $JAVA_OPTS -cp "target/test-classes:target/classes:$(cat target/test.classpath)" \
+    com.securetest.runner.TestRunner "$@"
+  exit $?
+fi
+
+# Use the class data archive built by 'mvn package -Pappcds' for a faster start (JDK 13+).
+# The archive is only valid for the exact class path it was created with.
+if [ -f "target/app-cds.jsa" ] && [ -f "target/appcds.classpath" ] && [ "$JAVA_MAJOR" -ge 13 ] 2>/dev/null; then
+  CLASS_PATH="target/secure-test-automation-1.0-SNAPSHOT.jar:target/secure-test-automation-1.0-SNAPSHOT-tests.jar"
+  CLASS_PATH="$CLASS_PATH:$(cat target/appcds.classpath)"
+  echo "Running tests..."
+  java $JAVA_OPTS -XX:SharedArchiveFile=target/app-cds.jsa -Xshare:auto -cp "$CLASS_PATH" \
+    com.securetest.runner.TestRunner "$@"
+  exit $?
+fi
+
 # Run the tests with all provided arguments
 echo "Running tests..."
-java -jar target/secure-test-automation-1.0-SNAPSHOT.jar "$@"
\ No newline at end of file
+java $JAVA_OPTS -jar target/secure-test-automation-1.0-SNAPSHOT.jar "$@"
\ No newline at end of file
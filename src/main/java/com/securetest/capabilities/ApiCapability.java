@@ -0,0 +1,32 @@
+package com.securetest.capabilities;
+
+/**
+ * HTTP API testing through Apache HttpClient.
+ */
+public class ApiCapability implements Capability {
+
+    @Override
+    public String getName() {
+        return CapabilityRegistry.API;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return CapabilityRegistry.isClassPresent("org.apache.http.impl.client.HttpClients");
+    }
+
+    @Override
+    public void start() {
+        // Clients are created per test
+    }
+
+    @Override
+    public void clearSecureState() {
+        // No cached state
+    }
+
+    @Override
+    public void stop() {
+        // Clients are closed by the tests
+    }
+}
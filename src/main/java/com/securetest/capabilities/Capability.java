@@ -0,0 +1,40 @@
+package com.securetest.capabilities;
+
+/**
+ * A runtime subsystem of the framework (web, mobile, API, reporting) that is
+ * discovered through {@link java.util.ServiceLoader} and started on first use.
+ * Implementations must not touch their libraries until {@link #start()}, so
+ * runs that never use a capability never load its classes.
+ */
+public interface Capability {
+
+    /**
+     * Gets the name the capability is requested by, e.g. "web".
+     *
+     * @return The capability name
+     */
+    String getName();
+
+    /**
+     * Checks whether the libraries this capability needs are on the class path.
+     *
+     * @return true if the capability can be started
+     */
+    boolean isAvailable();
+
+    /**
+     * Prepares the capability. Called once, on first use.
+     */
+    void start();
+
+    /**
+     * Drops any cached secrets, such as authenticated sessions.
+     * Called when sensitive data is cleared, only for started capabilities.
+     */
+    void clearSecureState();
+
+    /**
+     * Releases the resources held by the capability at the end of a run.
+     */
+    void stop();
+}
@@ -0,0 +1,128 @@
+package com.securetest.capabilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Discovers the available {@link Capability} implementations and starts each
+ * one the first time it is required. Only started capabilities are cleared and
+ * stopped, so an API-only run never loads the Selenium or Appium classes.
+ */
+public class CapabilityRegistry {
+    private static final Logger LOGGER = LogManager.getLogger(CapabilityRegistry.class);
+
+    public static final String WEB = "web";
+    public static final String MOBILE = "mobile";
+    public static final String API = "api";
+    public static final String REPORTING = "reporting";
+
+    private static Map<String, Capability> capabilities;
+    private static final List<Capability> started = new ArrayList<>();
+
+    private CapabilityRegistry() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Starts a capability if it has not been started yet.
+     *
+     * @param name The capability name, e.g. {@link #WEB}
+     * @throws IllegalStateException If the capability is unknown or its libraries are missing
+     */
+    public static synchronized void require(String name) {
+        Capability capability = getCapabilities().get(name);
+        if (capability == null) {
+            throw new IllegalStateException("Unknown capability: " + name);
+        }
+        if (started.contains(capability)) {
+            return;
+        }
+        if (!capability.isAvailable()) {
+            LOGGER.error("Capability '{}' is not on the class path", name);
+            throw new IllegalStateException("Capability '" + name + "' is not available in this runtime");
+        }
+
+        long start = System.nanoTime();
+        capability.start();
+        started.add(capability);
+        LOGGER.info("Started {} capability in {} ms", name, (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Checks whether a capability can be used in this runtime.
+     *
+     * @param name The capability name
+     * @return true if the capability is known and its libraries are present
+     */
+    public static synchronized boolean isAvailable(String name) {
+        Capability capability = getCapabilities().get(name);
+        return capability != null && capability.isAvailable();
+    }
+
+    /**
+     * Checks whether a capability has been started in this JVM.
+     *
+     * @param name The capability name
+     * @return true if {@link #require(String)} has started it
+     */
+    public static synchronized boolean isStarted(String name) {
+        Capability capability = getCapabilities().get(name);
+        return capability != null && started.contains(capability);
+    }
+
+    /**
+     * Clears cached secrets of all started capabilities.
+     */
+    public static synchronized void clearSecureState() {
+        for (Capability capability : started) {
+            capability.clearSecureState();
+        }
+    }
+
+    /**
+     * Stops all started capabilities in reverse start order.
+     */
+    public static synchronized void stopAll() {
+        for (int i = started.size() - 1; i >= 0; i--) {
+            Capability capability = started.get(i);
+            try {
+                capability.stop();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to stop {} capability: {}", capability.getName(), e.getMessage());
+            }
+        }
+        started.clear();
+    }
+
+    private static Map<String, Capability> getCapabilities() {
+        if (capabilities == null) {
+            capabilities = new LinkedHashMap<>();
+            for (Capability capability : ServiceLoader.load(Capability.class, CapabilityRegistry.class.getClassLoader())) {
+                capabilities.put(capability.getName(), capability);
+            }
+            LOGGER.debug("Discovered capabilities: {}", capabilities.keySet());
+        }
+        return capabilities;
+    }
+
+    /**
+     * Checks whether a class is present without initializing it.
+     *
+     * @param className The fully qualified class name
+     * @return true if the class can be loaded
+     */
+    static boolean isClassPresent(String className) {
+        try {
+            Class.forName(className, false, CapabilityRegistry.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
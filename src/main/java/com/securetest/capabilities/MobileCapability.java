@@ -0,0 +1,33 @@
+package com.securetest.capabilities;
+
+/**
+ * Mobile automation through {@link com.securetest.utils.AppiumHelper}.
+ * Mobile drivers are owned and closed by the tests that create them.
+ */
+public class MobileCapability implements Capability {
+
+    @Override
+    public String getName() {
+        return CapabilityRegistry.MOBILE;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return CapabilityRegistry.isClassPresent("io.appium.java_client.AppiumDriver");
+    }
+
+    @Override
+    public void start() {
+        // Drivers are created on demand by AppiumHelper
+    }
+
+    @Override
+    public void clearSecureState() {
+        // No cached state
+    }
+
+    @Override
+    public void stop() {
+        // Nothing pooled
+    }
+}
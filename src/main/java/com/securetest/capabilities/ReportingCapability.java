@@ -0,0 +1,33 @@
+package com.securetest.capabilities;
+
+/**
+ * HTML reporting through ExtentReports. The report itself is created and
+ * flushed by the test runner.
+ */
+public class ReportingCapability implements Capability {
+
+    @Override
+    public String getName() {
+        return CapabilityRegistry.REPORTING;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return CapabilityRegistry.isClassPresent("com.aventstack.extentreports.ExtentReports");
+    }
+
+    @Override
+    public void start() {
+        // The report is created by the runner
+    }
+
+    @Override
+    public void clearSecureState() {
+        // Reports never contain secrets
+    }
+
+    @Override
+    public void stop() {
+        // The report is flushed by the runner
+    }
+}
@@ -0,0 +1,36 @@
+package com.securetest.capabilities;
+
+import com.securetest.utils.DriverPool;
+import com.securetest.utils.SessionSnapshotCache;
+
+/**
+ * Browser automation through {@link com.securetest.utils.DriverFactory} and {@link DriverPool}.
+ * Owns the pooled browsers and the cached authenticated sessions.
+ */
+public class WebCapability implements Capability {
+
+    @Override
+    public String getName() {
+        return CapabilityRegistry.WEB;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return CapabilityRegistry.isClassPresent("org.openqa.selenium.WebDriver");
+    }
+
+    @Override
+    public void start() {
+        // Drivers are created on demand by DriverPool
+    }
+
+    @Override
+    public void clearSecureState() {
+        SessionSnapshotCache.clear();
+    }
+
+    @Override
+    public void stop() {
+        DriverPool.shutdown();
+    }
+}
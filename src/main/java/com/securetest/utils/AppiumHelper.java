@@ -1,5 +1,6 @@
 package com.securetest.utils;
 
+import com.securetest.capabilities.CapabilityRegistry;
 import io.appium.java_client.AppiumDriver;
 import io.appium.java_client.MobileBy;
 import io.appium.java_client.MobileElement;
@@ -46,8 +47,9 @@ public class AppiumHelper {
      * @param timeoutSeconds Timeout in seconds to wait for OTP
      * @return The extracted OTP or null if not found
      */
+    @SuppressWarnings("try")
     public static String retrieveOtpFromSms(AppiumDriver driver, String senderFilter, int timeoutSeconds) {
-        try {
+        try (TraceRecorder.Span span = TraceRecorder.begin("otp", "read sms")) {
             LOGGER.info("Attempting to retrieve OTP from SMS");
             
             // Check if we're on Android
@@ -58,6 +60,7 @@ public class AppiumHelper {
                 // This is a simplified example - actual implementation would depend on device specifics
                 // Use launchApp instead of startActivity for older Appium versions
                 driver.launchApp();
+                ScreenStabilityDetector.awaitStable(driver);
                 WebDriverWait wait = new WebDriverWait(driver, timeoutSeconds);
                 
                 // Wait for the first conversation to appear if filter is provided
@@ -65,11 +68,13 @@ public class AppiumHelper {
                     WebElement conversation = wait.until(ExpectedConditions.presenceOfElementLocated(
                             MobileBy.xpath("//android.widget.TextView[contains(@text, '" + senderFilter + "')]")));
                     conversation.click();
+                    ScreenStabilityDetector.awaitStable(driver);
                 } else {
                     // Just click on the first conversation
                     WebElement firstConversation = wait.until(ExpectedConditions.presenceOfElementLocated(
                             MobileBy.xpath("(//android.widget.TextView)[1]")));
                     firstConversation.click();
+                    ScreenStabilityDetector.awaitStable(driver);
                 }
                 
                 // Get the latest message
@@ -232,6 +237,7 @@ public class AppiumHelper {
                 element.click();
                 LOGGER.debug("Clicked element as fallback (touch actions not supported)");
             }
+            ScreenStabilityDetector.awaitStable(driver);
         } catch (Exception e) {
             LOGGER.error("Failed to tap element: {}", e.getMessage());
         }
@@ -244,6 +250,7 @@ public class AppiumHelper {
      * @return The initialized AppiumDriver instance
      */
     public static AppiumDriver<MobileElement> initializeDriver(String deviceName) {
+        CapabilityRegistry.require(CapabilityRegistry.MOBILE);
         try {
             LOGGER.info("Initializing Appium driver for device: {}", deviceName);
             
@@ -291,6 +298,33 @@ public class AppiumHelper {
         }
     }
     
+    /**
+     * Retrieves an OTP using the fastest available path.
+     * Accounts enrolled with an authenticator seed get an in-process TOTP code,
+     * so no device automation is needed. Otherwise falls back to the device.
+     *
+     * @param driver The AppiumDriver instance, may be null for seed-enrolled accounts
+     * @return The OTP code or null if it could not be retrieved
+     */
+    @SuppressWarnings("try")
+    public static String retrieveOtp(AppiumDriver<MobileElement> driver) {
+        if (SensitiveDataManager.hasSecureValue(SensitiveDataManager.OTP_SEED)) {
+            LOGGER.info("Authenticator seed available, generating OTP in-process");
+            try (TraceRecorder.Span span = TraceRecorder.begin("otp", "generate totp")) {
+                return TotpGenerator.generateCurrentOtp();
+            }
+        }
+
+        if (driver == null) {
+            LOGGER.error("No authenticator seed and no mobile driver available for OTP retrieval");
+            return null;
+        }
+
+        try (TraceRecorder.Span span = TraceRecorder.begin("otp", "retrieve from device")) {
+            return simulateOtpRetrieval(driver);
+        }
+    }
+
     /**
      * Simulates retrieving an OTP from a mobile banking app.
      * Used for demonstration purposes in the test framework.
@@ -11,10 +11,18 @@ import org.apache.logging.log4j.Logger;
 public class CommandLineParser {
     private static final Logger LOGGER = LogManager.getLogger(CommandLineParser.class);
     
-    private static final Options options = new Options();
     private static CommandLine cmd;
     
-    static {
+    /**
+     * Holds the option definitions, built on first use rather than when the class loads.
+     */
+    private static final class OptionsHolder {
+        private static final Options OPTIONS = buildOptions();
+    }
+    
+    private static Options buildOptions() {
+        Options options = new Options();
+        
         // Define command line options
         Option username = Option.builder("u")
                 .longOpt("username")
@@ -51,6 +59,13 @@ public class CommandLineParser {
                 .required(false)
                 .build();
         
+        Option otpSeed = Option.builder("otp")
+                .longOpt("otp-seed")
+                .desc("Base32 authenticator seed for generating OTPs without a device")
+                .hasArg()
+                .required(false)
+                .build();
+        
         Option phoneName = Option.builder("device")
                 .longOpt("device-name")
                 .desc("Mobile device name for Appium")
@@ -79,6 +94,121 @@ public class CommandLineParser {
                 .required(false)
                 .build();
         
+        Option threads = Option.builder("threads")
+                .longOpt("threads")
+                .desc("Maximum number of parallel test workers")
+                .hasArg()
+                .required(false)
+                .build();
+        
+        Option adaptive = Option.builder("adaptive")
+                .longOpt("adaptive")
+                .desc("Adjust the number of parallel workers to latency, infrastructure failures and free memory")
+                .required(false)
+                .build();
+        
+        Option tests = Option.builder("tests")
+                .longOpt("tests")
+                .desc("Comma-separated test classes or Class#method entries to run")
+                .hasArg()
+                .required(false)
+                .build();
+        
+        Option shardIndex = Option.builder("shardIndex")
+                .longOpt("shard-index")
+                .desc("Zero-based index of the shard to run")
+                .hasArg()
+                .required(false)
+                .build();
+        
+        Option shardCount = Option.builder("shardCount")
+                .longOpt("shard-count")
+                .desc("Total number of shards the suite is split into")
+                .hasArg()
+                .required(false)
+                .build();
+        
+        Option mergeReports = Option.builder("mergeReports")
+                .longOpt("merge-reports")
+                .desc("Merge partial shard reports from a directory into one report and exit")
+                .hasArg()
+                .optionalArg(true)
+                .required(false)
+                .build();
+        
+        Option renderReport = Option.builder("renderReport")
+                .longOpt("render-report")
+                .desc("Render the HTML report from an event log, e.g. after an interrupted run, and exit")
+                .hasArg()
+                .optionalArg(true)
+                .required(false)
+                .build();
+        
+        Option queryLogs = Option.builder("queryLogs")
+                .longOpt("query-logs")
+                .desc("Query the indexed framework logs, e.g. \"level=WARN logger=AppiumHelper test=LoginTest\", and exit")
+                .hasArg()
+                .optionalArg(true)
+                .required(false)
+                .build();
+        
+        Option trace = Option.builder("trace")
+                .longOpt("trace")
+                .desc("Record the phases of every test and write them as a Chrome trace (default test-output/trace.json)")
+                .hasArg()
+                .optionalArg(true)
+                .required(false)
+                .build();
+        
+        Option profile = Option.builder("profile")
+                .longOpt("profile")
+                .desc("Record a Java Flight Recorder profile with the framework's events (default test-output/extent-reports/profile.jfr)")
+                .hasArg()
+                .optionalArg(true)
+                .required(false)
+                .build();
+        
+        Option coordinator = Option.builder("coordinator")
+                .longOpt("coordinator")
+                .desc("Run as coordinator of a distributed run, listening on the given port")
+                .hasArg()
+                .required(false)
+                .build();
+        
+        Option worker = Option.builder("worker")
+                .longOpt("worker")
+                .desc("Run as a worker pulling tests from the coordinator at host:port")
+                .hasArg()
+                .required(false)
+                .build();
+        
+        Option localWorkers = Option.builder("localWorkers")
+                .longOpt("local-workers")
+                .desc("Number of worker JVMs the coordinator starts on this host")
+                .hasArg()
+                .required(false)
+                .build();
+        
+        Option daemon = Option.builder("daemon")
+                .longOpt("daemon")
+                .desc("Stay resident and accept test runs on a loopback port (default: daemon.port or any free port)")
+                .hasArg()
+                .optionalArg(true)
+                .required(false)
+                .build();
+        
+        Option incremental = Option.builder("incremental")
+                .longOpt("incremental")
+                .desc("Reuse recorded passes of tests whose code, config and features are unchanged")
+                .required(false)
+                .build();
+        
+        Option force = Option.builder("force")
+                .longOpt("force")
+                .desc("Run every selected test, ignoring recorded results")
+                .required(false)
+                .build();
+        
         Option headless = Option.builder("headless")
                 .longOpt("headless")
                 .desc("Run in headless mode (true/false)")
@@ -98,12 +228,30 @@ public class CommandLineParser {
         options.addOption(apiKey);
         options.addOption(phoneNumber);
         options.addOption(userId);
+        options.addOption(otpSeed);
         options.addOption(phoneName);
         options.addOption(browser);
         options.addOption(tags);
         options.addOption(parallel);
+        options.addOption(threads);
+        options.addOption(adaptive);
+        options.addOption(tests);
+        options.addOption(shardIndex);
+        options.addOption(shardCount);
+        options.addOption(mergeReports);
+        options.addOption(renderReport);
+        options.addOption(queryLogs);
+        options.addOption(trace);
+        options.addOption(profile);
+        options.addOption(coordinator);
+        options.addOption(worker);
+        options.addOption(localWorkers);
+        options.addOption(daemon);
+        options.addOption(incremental);
+        options.addOption(force);
         options.addOption(headless);
         options.addOption(help);
+        return options;
     }
     
     /**
@@ -117,22 +265,91 @@ public class CommandLineParser {
         HelpFormatter formatter = new HelpFormatter();
         
         try {
-            cmd = parser.parse(options, args);
+            cmd = parser.parse(getOptions(), args);
             
             // Print help and exit if help option is present
             if (cmd.hasOption("h")) {
                 formatter.printHelp("SecureTestAutomation", 
                     "\nSecure Test Automation Framework\n\n" +
                     "Example: ./run.sh -u admin -p password -b chrome --headless true\n", 
-                    options,
+                    getOptions(),
                     "\nFor more information, see README.md", true);
                 return false;
             }
             
+            if (!validateNumericOptions()) {
+                formatter.printHelp("SecureTestAutomation", getOptions());
+                return false;
+            }
+            
             return true;
         } catch (ParseException e) {
             LOGGER.error("Error parsing command line arguments: {}", e.getMessage());
-            formatter.printHelp("SecureTestAutomation", options);
+            formatter.printHelp("SecureTestAutomation", getOptions());
+            return false;
+        }
+    }
+    
+    /**
+     * Checks that the numeric options that were given are whole numbers in their allowed range.
+     * 
+     * @return true if all numeric options are valid, false otherwise
+     */
+    private static boolean validateNumericOptions() {
+        boolean valid = isIntInRange("threads", "--threads", 1, Integer.MAX_VALUE);
+        valid &= isIntInRange("shardCount", "--shard-count", 1, Integer.MAX_VALUE);
+        valid &= isIntInRange("shardIndex", "--shard-index", 0, Integer.MAX_VALUE);
+        valid &= isIntInRange("coordinator", "--coordinator", 0, 65535);
+        valid &= isIntInRange("localWorkers", "--local-workers", 0, Integer.MAX_VALUE);
+        valid &= isIntInRange("daemon", "--daemon", 0, 65535);
+        
+        if (valid && cmd.hasOption("shardIndex")) {
+            int index = Integer.parseInt(cmd.getOptionValue("shardIndex"));
+            int count = Integer.parseInt(getOptionValue("shardCount", "1"));
+            if (index >= count) {
+                LOGGER.error("Invalid value for --shard-index: {}, must be lower than --shard-count {}", index, count);
+                valid = false;
+            }
+        }
+        
+        if (cmd.hasOption("worker")) {
+            String address = cmd.getOptionValue("worker");
+            int separator = address.lastIndexOf(':');
+            if (separator <= 0 || !isInt(address.substring(separator + 1), 1, 65535)) {
+                LOGGER.error("Invalid value for --worker: '{}', expected host:port", address);
+                valid = false;
+            }
+        }
+        return valid;
+    }
+    
+    /**
+     * Checks the value of an option, if given, and logs an error when it is not a number in range.
+     * 
+     * @param option The option to check
+     * @param name The option as written on the command line, for the error message
+     * @param min The lowest allowed value
+     * @param max The highest allowed value
+     * @return true if the option is absent or valid, false otherwise
+     */
+    private static boolean isIntInRange(String option, String name, int min, int max) {
+        String value = cmd.getOptionValue(option);
+        if (value == null || isInt(value, min, max)) {
+            return true;
+        }
+        if (max == Integer.MAX_VALUE) {
+            LOGGER.error("Invalid value for {}: '{}', expected a whole number of at least {}", name, value, min);
+        } else {
+            LOGGER.error("Invalid value for {}: '{}', expected a whole number from {} to {}", name, value, min, max);
+        }
+        return false;
+    }
+    
+    private static boolean isInt(String value, int min, int max) {
+        try {
+            int number = Integer.parseInt(value);
+            return number >= min && number <= max;
+        } catch (NumberFormatException e) {
             return false;
         }
     }
@@ -206,7 +423,7 @@ public class CommandLineParser {
      * @return The Options object
      */
     public static Options getOptions() {
-        return options;
+        return OptionsHolder.OPTIONS;
     }
     
     /**
@@ -221,6 +438,8 @@ public class CommandLineParser {
             return null;
         }
         
+        // The plain value is masked wherever it would be logged
+        SecretMasker.register(value);
         try {
             return EncryptionUtil.encrypt(value);
         } catch (Exception e) {
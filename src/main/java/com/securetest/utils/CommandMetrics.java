@@ -0,0 +1,295 @@
+package com.securetest.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process registry of framework metrics: WebDriver command latencies per command
+ * and locator, wait latencies, and wait, retry and error counters.
+ * <p>
+ * Latencies go into {@link LatencyHistogram}s, so memory stays fixed however long a
+ * run or a daemon lives. The number of label combinations is capped by
+ * {@code metrics.maxSeries}; further locators are counted under {@code other}.
+ * The registry is exported in the Prometheus text format to a file at the end of a
+ * run (for the node exporter's textfile collector) and, when enabled, served on a
+ * local HTTP endpoint while the framework runs.
+ */
+public class CommandMetrics {
+    private static final Logger LOGGER = LogManager.getLogger(CommandMetrics.class);
+    public static final String DEFAULT_FILE = "test-output/metrics/securetest.prom";
+    private static final String OTHER = "other";
+    // Prometheus bucket bounds in seconds, from a fast DOM query to a slow page load
+    private static final double[] BOUNDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private static final ConcurrentMap<Series, LatencyHistogram> commands = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Series, LatencyHistogram> waits = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Series, LongAdder> waitTimeouts = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Series, LongAdder> errors = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Series, LongAdder> retries = new ConcurrentHashMap<>();
+    private static HttpServer server;
+
+    private CommandMetrics() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Records the latency of one WebDriver command.
+     *
+     * @param command The command, e.g. findElement or navigate.to
+     * @param locator The locator the command used, or empty
+     * @param nanos The latency in nanoseconds
+     */
+    public static void recordCommand(String command, String locator, long nanos) {
+        histogram(commands, command, locator).record(nanos);
+    }
+
+    /**
+     * Counts a WebDriver command that threw.
+     *
+     * @param command The command
+     * @param error The simple name of the exception
+     */
+    public static void recordError(String command, String error) {
+        counter(errors, command, error).increment();
+    }
+
+    /**
+     * Records how long an explicit wait took and whether it timed out.
+     *
+     * @param kind The wait kind, e.g. visible, clickable or screen stability
+     * @param nanos The time waited in nanoseconds
+     * @param timedOut true if the condition was not met in time
+     */
+    public static void recordWait(String kind, long nanos, boolean timedOut) {
+        histogram(waits, kind, "").record(nanos);
+        if (timedOut) {
+            counter(waitTimeouts, kind, "").increment();
+        }
+    }
+
+    /**
+     * Counts a test queued again after a failure.
+     *
+     * @param testClass The class of the retried test
+     */
+    public static void recordRetry(String testClass) {
+        counter(retries, testClass, "").increment();
+    }
+
+    /**
+     * Formats the registry in the Prometheus text exposition format.
+     *
+     * @return The metrics text
+     */
+    public static String toPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        appendHistograms(text, "securetest_webdriver_command_seconds",
+                "Latency of WebDriver commands by command and locator", "command", "locator", commands);
+        appendCounters(text, "securetest_webdriver_command_errors_total",
+                "WebDriver commands that threw, by command and exception", "command", "exception", errors);
+        appendHistograms(text, "securetest_wait_seconds",
+                "Time spent in explicit waits by kind", "kind", null, waits);
+        appendCounters(text, "securetest_wait_timeouts_total",
+                "Explicit waits whose condition was not met in time", "kind", null, waitTimeouts);
+        appendCounters(text, "securetest_test_retries_total",
+                "Tests queued again after a failure, by test class", "test", null, retries);
+        return text.toString();
+    }
+
+    /**
+     * Writes the registry in the Prometheus text format. The file is replaced
+     * atomically, so a collector never reads it half written.
+     *
+     * @param file The file to write
+     */
+    public static void writeTo(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        try {
+            File temp = new File(parent, file.getName() + ".tmp");
+            Files.write(temp.toPath(), toPrometheusText().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Wrote {} command series to {}", commands.size(), file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Logs the commands that took the most time in total, with their percentiles.
+     *
+     * @param limit Maximum number of series to log
+     */
+    public static void logSummary(int limit) {
+        List<Map.Entry<Series, LatencyHistogram>> entries = new ArrayList<>(commands.entrySet());
+        if (entries.isEmpty()) {
+            return;
+        }
+        entries.sort((a, b) -> Double.compare(b.getValue().getSumSeconds(), a.getValue().getSumSeconds()));
+        LOGGER.info("Slowest WebDriver commands by total time:");
+        for (Map.Entry<Series, LatencyHistogram> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            LatencyHistogram histogram = entry.getValue();
+            Series series = entry.getKey();
+            LOGGER.info("  {}: {} call(s), {} s total, p50 {} ms, p95 {} ms, p99 {} ms",
+                    series.second.isEmpty() ? series.first : series.first + " " + series.second, histogram.getCount(),
+                    String.format("%.3f", histogram.getSumSeconds()), histogram.getPercentileMillis(50),
+                    histogram.getPercentileMillis(95), histogram.getPercentileMillis(99));
+        }
+    }
+
+    /**
+     * Serves the registry on {@code /metrics} until {@link #stopHttpEndpoint()}.
+     * Does nothing if the endpoint is already running.
+     *
+     * @param bindAddress The address to listen on, normally the loopback address
+     * @param port The port, 0 for any free port
+     * @return The port the endpoint listens on
+     * @throws IOException If the port cannot be bound
+     */
+    public static synchronized int startHttpEndpoint(InetAddress bindAddress, int port) throws IOException {
+        if (server != null) {
+            return server.getAddress().getPort();
+        }
+        server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+        int boundPort = server.getAddress().getPort();
+        LOGGER.info("Serving metrics on http://{}:{}/metrics", bindAddress.getHostAddress(), boundPort);
+        return boundPort;
+    }
+
+    /**
+     * Stops the HTTP endpoint if it is running.
+     */
+    public static synchronized void stopHttpEndpoint() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private static LatencyHistogram histogram(ConcurrentMap<Series, LatencyHistogram> series, String first, String second) {
+        Series key = new Series(first, second);
+        LatencyHistogram histogram = series.get(key);
+        if (histogram == null) {
+            if (series.size() >= maxSeries()) {
+                key = new Series(first, OTHER);
+            }
+            histogram = series.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+    private static LongAdder counter(ConcurrentMap<Series, LongAdder> series, String first, String second) {
+        Series key = new Series(first, second);
+        LongAdder counter = series.get(key);
+        if (counter == null) {
+            if (series.size() >= maxSeries()) {
+                key = new Series(first, OTHER);
+            }
+            counter = series.computeIfAbsent(key, k -> new LongAdder());
+        }
+        return counter;
+    }
+
+    private static int maxSeries() {
+        return PropertyManager.getIntProperty("metrics.maxSeries", 500);
+    }
+
+    private static void appendHistograms(StringBuilder text, String name, String help, String firstLabel,
+                                         String secondLabel, Map<Series, LatencyHistogram> series) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" histogram\n");
+        for (Map.Entry<Series, LatencyHistogram> entry : new TreeMap<>(series).entrySet()) {
+            String labels = labels(firstLabel, secondLabel, entry.getKey());
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            for (double bound : BOUNDS) {
+                text.append(name).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+                        .append(histogram.countAtOrBelow(bound)).append('\n');
+            }
+            text.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+            text.append(name).append("_sum{").append(labels).append("} ").append(histogram.getSumSeconds()).append('\n');
+            text.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+        }
+    }
+
+    private static void appendCounters(StringBuilder text, String name, String help, String firstLabel,
+                                       String secondLabel, Map<Series, LongAdder> series) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<Series, LongAdder> entry : new TreeMap<>(series).entrySet()) {
+            text.append(name).append('{').append(labels(firstLabel, secondLabel, entry.getKey())).append("} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+    }
+
+    private static String labels(String firstLabel, String secondLabel, Series series) {
+        String labels = firstLabel + "=\"" + escape(series.first) + "\"";
+        if (secondLabel != null) {
+            labels += "," + secondLabel + "=\"" + escape(series.second) + "\"";
+        }
+        return labels;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * The label values of one series.
+     */
+    private static final class Series implements Comparable<Series> {
+        private final String first;
+        private final String second;
+
+        Series(String first, String second) {
+            this.first = first != null ? first : "";
+            this.second = second != null ? second : "";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Series)) {
+                return false;
+            }
+            Series series = (Series) other;
+            return first.equals(series.first) && second.equals(series.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return first.hashCode() * 31 + second.hashCode();
+        }
+
+        @Override
+        public int compareTo(Series other) {
+            int result = first.compareTo(other.first);
+            return result != 0 ? result : second.compareTo(other.second);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.securetest.utils;
 
+import com.securetest.capabilities.CapabilityRegistry;
 import io.appium.java_client.AppiumDriver;
 import io.appium.java_client.android.AndroidDriver;
 import io.appium.java_client.ios.IOSDriver;
@@ -7,7 +8,10 @@ import io.appium.java_client.remote.MobileCapabilityType;
 import io.github.bonigarcia.wdm.WebDriverManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.edge.EdgeDriver;
@@ -59,6 +63,9 @@ public class DriverFactory {
      * @return The initialized WebDriver
      */
     public static WebDriver initWebDriver(String browserName, boolean headless) {
+        CapabilityRegistry.require(CapabilityRegistry.WEB);
+        // Fail fast instead of launching a browser for a portal that is known to be down
+        EnvironmentCircuitBreaker.portal().checkAvailable();
         WebDriver driver;
         
         switch (browserName.toLowerCase()) {
@@ -111,6 +118,11 @@ public class DriverFactory {
                 break;
         }
         
+        // Record command latencies and errors in CommandMetrics
+        if (PropertyManager.getBooleanProperty("metrics.enabled", true)) {
+            driver = InstrumentedDriver.wrap(driver);
+        }
+        
         driver.manage().window().maximize();
         driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
         driver.manage().timeouts().pageLoadTimeout(30, TimeUnit.SECONDS);
@@ -131,10 +143,14 @@ public class DriverFactory {
      * @param bundleId The app bundle ID (for iOS)
      * @return The initialized AppiumDriver
      */
+    @SuppressWarnings("try")
     public static AppiumDriver initAppiumDriver(String platformName, String deviceName, 
                                                String udid, String appPackage, 
                                                String appActivity, String bundleId) {
-        try {
+        CapabilityRegistry.require(CapabilityRegistry.MOBILE);
+        EnvironmentCircuitBreaker appiumServer = EnvironmentCircuitBreaker.appium();
+        appiumServer.checkAvailable();
+        try (TraceRecorder.Span span = TraceRecorder.begin("driver", "launch appium", platformName)) {
             DesiredCapabilities capabilities = new DesiredCapabilities();
             capabilities.setCapability(MobileCapabilityType.PLATFORM_NAME, platformName);
             capabilities.setCapability(MobileCapabilityType.DEVICE_NAME, deviceName);
@@ -161,14 +177,34 @@ public class DriverFactory {
             
             driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
             appiumDriverThreadLocal.set(driver);
+            appiumServer.recordSuccess();
             LOGGER.info("Initialized AppiumDriver for platform: {}, device: {}", platformName, deviceName);
             return driver;
         } catch (Exception e) {
+            if (EnvironmentCircuitBreaker.isInfrastructureFailure(e)) {
+                appiumServer.recordFailure(e);
+            }
             LOGGER.error("Failed to initialize AppiumDriver: {}", e.getMessage());
             throw new RuntimeException("Failed to initialize AppiumDriver", e);
         }
     }
     
+    /**
+     * Makes an existing WebDriver, e.g. one taken from {@link DriverPool}, the driver of the current thread.
+     * 
+     * @param driver The WebDriver to bind
+     */
+    static void bindWebDriver(WebDriver driver) {
+        webDriverThreadLocal.set(driver);
+    }
+    
+    /**
+     * Removes the WebDriver of the current thread from ThreadLocal without closing it.
+     */
+    static void unbindWebDriver() {
+        webDriverThreadLocal.remove();
+    }
+    
     /**
      * Closes the WebDriver for the current thread and removes it from ThreadLocal.
      */
@@ -201,8 +237,30 @@ public class DriverFactory {
      * @param headless Whether to run in headless mode
      * @return The initialized WebDriver
      */
+    @SuppressWarnings("try")
     public static WebDriver createDriver(String browserName, boolean headless) {
         LOGGER.info("Creating WebDriver for browser: {}, headless: {}", browserName, headless);
-        return initWebDriver(browserName, headless);
+        try (TraceRecorder.Span span = TraceRecorder.begin("driver", "launch browser", browserName)) {
+            return initWebDriver(browserName, headless);
+        }
+    }
+    
+    /**
+     * Grabs a screenshot from a driver as the raw PNG bytes it returns.
+     * Encoding, hashing and writing are left to the caller, e.g. a background executor.
+     * 
+     * @param driver The WebDriver or AppiumDriver
+     * @return The PNG bytes, or null if the driver cannot take a screenshot
+     */
+    public static byte[] captureScreenshot(WebDriver driver) {
+        if (!(driver instanceof TakesScreenshot)) {
+            return null;
+        }
+        try {
+            return ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+        } catch (WebDriverException e) {
+            LOGGER.warn("Failed to capture screenshot: {}", e.getMessage());
+            return null;
+        }
     }
 }
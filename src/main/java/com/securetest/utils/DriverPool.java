@@ -0,0 +1,194 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.WebDriver;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Pool of idle WebDriver instances, keyed by browser and headless mode.
+ * Reusing a browser between scenarios avoids a browser launch per scenario.
+ * Drivers are reset to a blank, unauthenticated state when returned, and a
+ * borrowed driver is bound to the borrowing thread through {@link DriverFactory}.
+ * A browser can be launched ahead of the first test with {@link #prewarm(String, boolean)}.
+ */
+public class DriverPool {
+    private static final Logger LOGGER = LogManager.getLogger(DriverPool.class);
+
+    private static final Map<String, Deque<WebDriver>> idle = new ConcurrentHashMap<>();
+    private static final Map<WebDriver, String> keys = new ConcurrentHashMap<>();
+    // Browsers being launched by prewarm(), which the first acquire() for their key waits for
+    private static final Map<String, CompletableFuture<WebDriver>> warming = new ConcurrentHashMap<>();
+
+    private DriverPool() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Borrows a driver for the current thread, starting a new browser if none is idle.
+     *
+     * @param browserName The browser to use (chrome, firefox, edge, safari)
+     * @param headless Whether to run in headless mode
+     * @return A driver bound to the current thread
+     * @throws EnvironmentUnavailableException If the portal is known to be down
+     */
+    public static WebDriver acquire(String browserName, boolean headless) {
+        String key = poolKey(browserName, headless);
+        try (FlightEvents.Scope event = FlightEvents.driver("acquire", key)) {
+            return borrow(browserName, headless, key, event);
+        }
+    }
+
+    @SuppressWarnings("try")
+    private static WebDriver borrow(String browserName, boolean headless, String key, FlightEvents.Scope event) {
+        EnvironmentCircuitBreaker.portal().checkAvailable();
+        Deque<WebDriver> drivers = idle.get(key);
+        WebDriver driver = drivers != null ? drivers.pollFirst() : null;
+
+        if (driver != null) {
+            DriverFactory.bindWebDriver(driver);
+            LOGGER.info("Reusing pooled WebDriver for browser: {}", key);
+            event.setResult("reused");
+            return driver;
+        }
+
+        CompletableFuture<WebDriver> launch = warming.remove(key);
+        if (launch != null) {
+            try (TraceRecorder.Span span = TraceRecorder.begin("driver", "await prewarmed browser", key)) {
+                driver = launch.join();
+                DriverFactory.bindWebDriver(driver);
+                LOGGER.info("Using prewarmed WebDriver for browser: {}", key);
+                event.setResult("prewarmed");
+                return driver;
+            } catch (CompletionException e) {
+                LOGGER.warn("Prewarmed WebDriver failed to start, launching a new one: {}", e.getCause().getMessage());
+            }
+        }
+
+        driver = DriverFactory.createDriver(browserName, headless);
+        keys.put(driver, key);
+        event.setResult("launched");
+        return driver;
+    }
+
+    /**
+     * Launches a browser ahead of the first test, e.g. while the runner is still
+     * setting up credentials and reports. The first {@link #acquire(String, boolean)}
+     * for the same browser waits for this launch instead of starting another one.
+     * Does nothing if a browser is already idle or launching.
+     *
+     * @param browserName The browser to use (chrome, firefox, edge, safari)
+     * @param headless Whether to run in headless mode
+     */
+    public static void prewarm(String browserName, boolean headless) {
+        String key = poolKey(browserName, headless);
+        Deque<WebDriver> drivers = idle.get(key);
+        CompletableFuture<WebDriver> launch = new CompletableFuture<>();
+        if ((drivers != null && !drivers.isEmpty()) || warming.putIfAbsent(key, launch) != null) {
+            return;
+        }
+
+        try {
+            WebDriver driver = DriverFactory.createDriver(browserName, headless);
+            // The launching thread is not the one that will use the driver
+            DriverFactory.unbindWebDriver();
+            keys.put(driver, key);
+            launch.complete(driver);
+        } catch (RuntimeException e) {
+            warming.remove(key, launch);
+            launch.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the current thread's driver to the pool after clearing its session.
+     * Drivers that can no longer be reset are closed instead.
+     *
+     * @param driver The driver to return, may be null
+     */
+    public static void release(WebDriver driver) {
+        if (driver == null) {
+            return;
+        }
+        DriverFactory.unbindWebDriver();
+
+        String key = keys.get(driver);
+        try (FlightEvents.Scope event = FlightEvents.driver("release", key)) {
+            event.setResult(giveBack(driver, key) ? "pooled" : "closed");
+        }
+    }
+
+    @SuppressWarnings("try")
+    private static boolean giveBack(WebDriver driver, String key) {
+        if (key == null || !PropertyManager.getBooleanProperty("webdriver.pool.enabled", true)) {
+            discard(driver);
+            return false;
+        }
+
+        try (TraceRecorder.Span span = TraceRecorder.begin("driver", "reset browser", key)) {
+            SessionSnapshotCache.clearBrowserState(driver, PropertyManager.getProperty("cuscal.portal.url"));
+            driver.get("about:blank");
+        } catch (Exception e) {
+            LOGGER.warn("Pooled WebDriver could not be reset, closing it: {}", e.getMessage());
+            discard(driver);
+            return false;
+        }
+
+        Deque<WebDriver> drivers = idle.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<WebDriver>());
+        drivers.addFirst(driver);
+        LOGGER.debug("Returned WebDriver to pool: {}", key);
+        return true;
+    }
+
+    /**
+     * Closes every idle driver. Should be called once all tests have finished.
+     */
+    public static void shutdown() {
+        List<WebDriver> drivers = new ArrayList<>();
+        for (Deque<WebDriver> deque : idle.values()) {
+            WebDriver driver;
+            while ((driver = deque.pollFirst()) != null) {
+                drivers.add(driver);
+            }
+        }
+        // Browsers prewarmed for tests that never ran
+        for (String key : new ArrayList<>(warming.keySet())) {
+            CompletableFuture<WebDriver> launch = warming.remove(key);
+            if (launch != null) {
+                try {
+                    drivers.add(launch.join());
+                } catch (CompletionException e) {
+                    // Already reported by the prewarm step
+                }
+            }
+        }
+        for (WebDriver driver : drivers) {
+            discard(driver);
+        }
+        if (!drivers.isEmpty()) {
+            LOGGER.info("Closed {} pooled WebDriver(s)", drivers.size());
+        }
+    }
+
+    private static String poolKey(String browserName, boolean headless) {
+        return browserName.toLowerCase() + (headless ? ":headless" : "");
+    }
+
+    private static void discard(WebDriver driver) {
+        keys.remove(driver);
+        try {
+            driver.quit();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to close WebDriver: {}", e.getMessage());
+        }
+    }
+}
@@ -18,21 +18,34 @@ public class EncryptionUtil {
     private static final Logger LOGGER = LogManager.getLogger(EncryptionUtil.class);
     private static final String DEFAULT_ENCRYPTION_KEY = "SECURE_TEST_FRAMEWORK_KEY";
     private static final String ALGORITHM = "AES";
-    private static SecretKeySpec secretKey;
-    private static boolean isTestMode = false;
+    private static volatile SecretKeySpec secretKey;
+    private static volatile boolean isTestMode = false;
     
-    static {
-        try {
-            // Initialize the encryption with a system property key or default
-            String encryptionKey = System.getProperty("encryption.key", DEFAULT_ENCRYPTION_KEY);
-            setKey(encryptionKey);
-            LOGGER.info("Encryption utilities initialized successfully");
-        } catch (Exception e) {
-            LOGGER.error("Failed to initialize encryption utilities: {}", e.getMessage());
-            // We don't rethrow as this is a static initializer and would prevent class loading
-            // Instead, we'll fall back to test mode if encryption fails
-            isTestMode = true;
-            LOGGER.warn("Falling back to test mode for encryption");
+    /**
+     * Gets the AES key, deriving it from the encryption.key system property on first use.
+     * Runs in test mode never need the key, so they skip the JCE setup entirely.
+     * 
+     * @return The key, or null if it could not be derived and test mode was enabled instead
+     */
+    private static SecretKeySpec getSecretKey() {
+        SecretKeySpec key = secretKey;
+        if (key != null) {
+            return key;
+        }
+        synchronized (EncryptionUtil.class) {
+            if (secretKey == null) {
+                try {
+                    // Initialize the encryption with a system property key or default
+                    setKey(System.getProperty("encryption.key", DEFAULT_ENCRYPTION_KEY));
+                    LOGGER.info("Encryption utilities initialized successfully");
+                } catch (Exception e) {
+                    LOGGER.error("Failed to initialize encryption utilities: {}", e.getMessage());
+                    // Fall back to test mode if encryption cannot be initialized
+                    isTestMode = true;
+                    LOGGER.warn("Falling back to test mode for encryption");
+                }
+            }
+            return secretKey;
         }
     }
     
@@ -80,7 +93,14 @@ public class EncryptionUtil {
      * @param value The value to encrypt
      * @return The encrypted value or null if encryption fails
      */
+    @SuppressWarnings("try")
     public static String encrypt(String value) {
+        try (FlightEvents.Scope event = FlightEvents.crypto("encrypt", value != null ? value.length() : 0)) {
+            return encryptValue(value);
+        }
+    }
+
+    private static String encryptValue(String value) {
         if (value == null || value.isEmpty()) {
             return null;
         }
@@ -91,8 +111,12 @@ public class EncryptionUtil {
         }
         
         try {
+            SecretKeySpec key = getSecretKey();
+            if (isTestMode) {
+                return MockEncryptionUtil.encodeForTest(value);
+            }
             Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+            cipher.init(Cipher.ENCRYPT_MODE, key);
             byte[] encryptedBytes = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
             return Base64.getEncoder().encodeToString(encryptedBytes);
         } catch (Exception e) {
@@ -108,7 +132,14 @@ public class EncryptionUtil {
      * @param encryptedValue The encrypted value to decrypt
      * @return The decrypted value or null if decryption fails
      */
+    @SuppressWarnings("try")
     public static String decrypt(String encryptedValue) {
+        try (FlightEvents.Scope event = FlightEvents.crypto("decrypt", encryptedValue != null ? encryptedValue.length() : 0)) {
+            return decryptValue(encryptedValue);
+        }
+    }
+
+    private static String decryptValue(String encryptedValue) {
         if (encryptedValue == null || encryptedValue.isEmpty()) {
             return null;
         }
@@ -119,8 +150,12 @@ public class EncryptionUtil {
         }
         
         try {
+            SecretKeySpec key = getSecretKey();
+            if (isTestMode) {
+                return MockEncryptionUtil.decodeForTest(encryptedValue);
+            }
             Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey);
+            cipher.init(Cipher.DECRYPT_MODE, key);
             byte[] decodedBytes = Base64.getDecoder().decode(encryptedValue);
             byte[] decryptedBytes = cipher.doFinal(decodedBytes);
             return new String(decryptedBytes, StandardCharsets.UTF_8);
@@ -146,12 +181,25 @@ public class EncryptionUtil {
         if (length <= 4) {
             return "****";
         } else {
-            // Java 8 compatible version of string repeat
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < length - 4; i++) {
-                sb.append("*");
-            }
-            return value.substring(0, 2) + sb.toString() + value.substring(length - 2);
+            StringBuilder sb = new StringBuilder(value);
+            maskSensitiveValue(sb, 0, length);
+            return sb.toString();
+        }
+    }
+    
+    /**
+     * Masks a sensitive value inside a buffer in place, e.g. in a log message being formatted.
+     * Like {@link #maskSensitiveValue(String)}, the first and last two characters of longer
+     * values stay visible; values of four characters or fewer are masked completely.
+     * 
+     * @param buffer The buffer holding the value
+     * @param start The index of the first character of the value
+     * @param end The index after the last character of the value
+     */
+    public static void maskSensitiveValue(StringBuilder buffer, int start, int end) {
+        int visible = end - start <= 4 ? 0 : 2;
+        for (int i = start + visible; i < end - visible; i++) {
+            buffer.setCharAt(i, '*');
         }
     }
     
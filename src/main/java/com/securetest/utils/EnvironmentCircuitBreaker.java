@@ -0,0 +1,272 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker for an external environment the tests depend on, such as the
+ * portal or the Appium server.
+ * <p>
+ * While CLOSED, infrastructure failures (connection refused, unknown host,
+ * network timeouts) are counted. Once {@code circuit.breaker.failureThreshold}
+ * consecutive failures have been recorded, or an explicit health probe fails,
+ * the breaker OPENS: {@link #checkAvailable()} then throws
+ * {@link EnvironmentUnavailableException} immediately instead of letting every
+ * test wait through its page-load and implicit-wait timeouts. After
+ * {@code circuit.breaker.openSeconds} the breaker is HALF_OPEN and the next
+ * caller re-probes the environment, closing the breaker again if it responds.
+ */
+public class EnvironmentCircuitBreaker {
+    private static final Logger LOGGER = LogManager.getLogger(EnvironmentCircuitBreaker.class);
+
+    public static final String PORTAL = "portal";
+    public static final String APPIUM = "appium";
+
+    private static final Map<String, EnvironmentCircuitBreaker> breakers = new ConcurrentHashMap<>();
+    // Breakers checked by the test running on each thread, so its result is attributed to them only
+    private static final ThreadLocal<Set<EnvironmentCircuitBreaker>> usedByThread =
+            ThreadLocal.withInitial(LinkedHashSet::new);
+
+    /**
+     * Breaker states.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final String url;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private String lastFailure;
+
+    private EnvironmentCircuitBreaker(String name, String url) {
+        this.name = name;
+        this.url = url;
+    }
+
+    /**
+     * Gets the breaker for the portal at {@code cuscal.portal.url}.
+     *
+     * @return The portal breaker
+     */
+    public static EnvironmentCircuitBreaker portal() {
+        return forTarget(PORTAL, PropertyManager.getProperty("cuscal.portal.url"));
+    }
+
+    /**
+     * Gets the breaker for the Appium server at {@code appium.server.url}.
+     *
+     * @return The Appium breaker
+     */
+    public static EnvironmentCircuitBreaker appium() {
+        return forTarget(APPIUM, PropertyManager.getProperty("appium.server.url", "http://localhost:4723/wd/hub"));
+    }
+
+    /**
+     * Gets or creates the breaker for a named environment.
+     *
+     * @param name The environment name
+     * @param url The URL probed to check the environment's health
+     * @return The breaker
+     */
+    public static EnvironmentCircuitBreaker forTarget(String name, String url) {
+        return breakers.computeIfAbsent(name, key -> new EnvironmentCircuitBreaker(key, url));
+    }
+
+    /**
+     * Starts tracking which environments the test on the current thread uses.
+     * Environments are marked as used by {@link #checkAvailable()}.
+     */
+    public static void startTracking() {
+        usedByThread.get().clear();
+    }
+
+    /**
+     * Records the result of the test on the current thread against every environment it used:
+     * infrastructure failures count towards opening the breakers, passes close them.
+     *
+     * @param failure The test failure, or null if the test passed
+     */
+    public static void recordResult(Throwable failure) {
+        Set<EnvironmentCircuitBreaker> used = usedByThread.get();
+        for (EnvironmentCircuitBreaker breaker : used) {
+            if (failure == null) {
+                breaker.recordSuccess();
+            } else if (findUnavailable(failure) == null && isInfrastructureFailure(failure)) {
+                breaker.recordFailure(failure);
+            }
+        }
+        used.clear();
+    }
+
+    /**
+     * Finds the {@link EnvironmentUnavailableException} in an exception's causes.
+     *
+     * @param error The exception to search
+     * @return The exception, or null if the failure was not caused by an open breaker
+     */
+    public static EnvironmentUnavailableException findUnavailable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof EnvironmentUnavailableException) {
+                return (EnvironmentUnavailableException) cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether an exception was caused by an unreachable environment rather than by the test.
+     *
+     * @param error The exception to classify
+     * @return true for connection, DNS and network timeout failures
+     */
+    public static boolean isInfrastructureFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof EnvironmentUnavailableException || cause instanceof ConnectException
+                    || cause instanceof UnknownHostException || cause instanceof NoRouteToHostException
+                    || cause instanceof InterruptedIOException) {
+                return true;
+            }
+            String message = cause.getMessage();
+            if (message != null && (message.contains("net::ERR_CONNECTION") || message.contains("net::ERR_NAME_NOT_RESOLVED")
+                    || message.contains("net::ERR_ADDRESS_UNREACHABLE") || message.contains("net::ERR_INTERNET_DISCONNECTED"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fails fast if the environment is known to be down. When the open period has
+     * elapsed, the calling thread re-probes the environment first.
+     *
+     * @throws EnvironmentUnavailableException If the breaker is open
+     */
+    public void checkAvailable() {
+        if (!isEnabled()) {
+            return;
+        }
+        usedByThread.get().add(this);
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            // Only one caller probes; the others keep failing fast until it is done
+            if (state == State.HALF_OPEN || System.currentTimeMillis() - openedAt < getOpenMillis()) {
+                throw unavailable();
+            }
+            state = State.HALF_OPEN;
+        }
+        if (!probe()) {
+            throw unavailable();
+        }
+    }
+
+    /**
+     * Probes the environment over HTTP. Any response below 500 counts as healthy.
+     * A failed probe opens the breaker straight away, a successful one closes it.
+     *
+     * @return true if the environment responded
+     */
+    public boolean probe() {
+        if (url == null || url.isEmpty()) {
+            return true;
+        }
+        int timeout = PropertyManager.getIntProperty("circuit.breaker.probeTimeoutMillis", 3000);
+        long start = System.currentTimeMillis();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setInstanceFollowRedirects(false);
+            int status = connection.getResponseCode();
+            if (status >= 500) {
+                open("health probe returned HTTP " + status);
+                return false;
+            }
+            LOGGER.debug("{} health probe returned HTTP {} in {} ms", name, status, System.currentTimeMillis() - start);
+            recordSuccess();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            open("health probe failed: " + e);
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Records an infrastructure failure observed while using the environment.
+     *
+     * @param error The failure
+     */
+    public synchronized void recordFailure(Throwable error) {
+        consecutiveFailures++;
+        int threshold = PropertyManager.getIntProperty("circuit.breaker.failureThreshold", 3);
+        LOGGER.warn("Infrastructure failure {} of {} for {}: {}", consecutiveFailures, threshold, name, error.getMessage());
+        if (state == State.HALF_OPEN || consecutiveFailures >= threshold) {
+            open(consecutiveFailures + " consecutive infrastructure failures, last: " + error.getMessage());
+        }
+    }
+
+    /**
+     * Records a successful use of the environment, closing the breaker.
+     */
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.info("Circuit for {} closed, environment is reachable again", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        lastFailure = null;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private synchronized void open(String reason) {
+        if (state != State.OPEN) {
+            LOGGER.error("Circuit for {} opened ({}): remaining tests using it fail fast for {} s",
+                    name, reason, getOpenMillis() / 1000);
+        }
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        lastFailure = reason;
+    }
+
+    private synchronized EnvironmentUnavailableException unavailable() {
+        return new EnvironmentUnavailableException(name, url, lastFailure);
+    }
+
+    private static boolean isEnabled() {
+        return PropertyManager.getBooleanProperty("circuit.breaker.enabled", true);
+    }
+
+    private static long getOpenMillis() {
+        return PropertyManager.getIntProperty("circuit.breaker.openSeconds", 60) * 1000L;
+    }
+}
@@ -0,0 +1,28 @@
+package com.securetest.utils;
+
+/**
+ * Thrown instead of starting a driver when the environment it needs is known
+ * to be down, see {@link EnvironmentCircuitBreaker}.
+ */
+public class EnvironmentUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String environment;
+
+    /**
+     * Creates the exception.
+     *
+     * @param environment The environment name, e.g. "portal"
+     * @param url The environment URL
+     * @param reason Why the environment is considered down
+     */
+    public EnvironmentUnavailableException(String environment, String url, String reason) {
+        super("Environment '" + environment + "' at " + url + " is unavailable"
+                + (reason != null ? " (" + reason + ")" : ""));
+        this.environment = environment;
+    }
+
+    public String getEnvironment() {
+        return environment;
+    }
+}
@@ -0,0 +1,195 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Custom JDK Flight Recorder events for the test lifecycle and framework calls: tests,
+ * driver acquire and release, waits, encryption and secure data reads. In a recording
+ * made with {@code --profile} they appear under "SecureTest", next to the JVM's own
+ * allocation, GC and CPU samples, so pressure can be matched to the test or call that
+ * caused it.
+ * <p>
+ * The {@code jdk.jfr} types are only referred to by {@code JfrFlightEvents}, which is
+ * loaded by name once Flight Recorder is known to be present (JDK 11, 8u262 and later).
+ * It is left out of builds on JDKs without Flight Recorder, see the {@code no-jfr} Maven
+ * profile. Elsewhere, and whenever no recording is running, every method returns a
+ * shared no-op {@link Scope}. Events never carry secret values, only key names and sizes.
+ */
+public class FlightEvents {
+    private static final Logger LOGGER = LogManager.getLogger(FlightEvents.class);
+    private static final Recorder RECORDER = loadRecorder();
+    private static final boolean AVAILABLE = RECORDER != null;
+
+    static final Scope DISABLED = new Scope() {
+        @Override
+        public void setResult(String result) {
+            // Nothing is recorded
+        }
+
+        @Override
+        public void close() {
+            // Nothing is recorded
+        }
+    };
+
+    private static Object recording;
+
+    private FlightEvents() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Times a test or scenario.
+     *
+     * @param name The test name
+     * @param attempt The attempt number, 1 for the first run
+     * @return The open event; set its result before closing it
+     */
+    public static Scope test(String name, int attempt) {
+        return AVAILABLE ? RECORDER.test(name, attempt) : DISABLED;
+    }
+
+    /**
+     * Times a driver being acquired from or released to the pool.
+     *
+     * @param operation acquire or release
+     * @param browser The pool key, e.g. chrome:headless
+     * @return The open event
+     */
+    public static Scope driver(String operation, String browser) {
+        return AVAILABLE ? RECORDER.driver(operation, browser) : DISABLED;
+    }
+
+    /**
+     * Times an explicit wait.
+     *
+     * @param kind The wait kind, e.g. visible, clickable or screen stability
+     * @param target The locator or fingerprint waited on
+     * @return The open event; set its result to timeout if the condition was not met
+     */
+    public static Scope await(String kind, String target) {
+        return AVAILABLE ? RECORDER.await(kind, target) : DISABLED;
+    }
+
+    /**
+     * Times an encryption or decryption.
+     *
+     * @param operation encrypt or decrypt
+     * @param length The length of the input in characters
+     * @return The open event
+     */
+    public static Scope crypto(String operation, int length) {
+        return AVAILABLE ? RECORDER.crypto(operation, length) : DISABLED;
+    }
+
+    /**
+     * Times a read of secure data, including its decryption.
+     *
+     * @param key The name of the value read, never the value itself
+     * @return The open event; set its result to found or missing
+     */
+    public static Scope secureDataRead(String key) {
+        return AVAILABLE ? RECORDER.secureDataRead(key) : DISABLED;
+    }
+
+    /**
+     * Starts a Flight Recorder recording of the whole JVM plus the framework events.
+     *
+     * @param settings The name of JDK settings, e.g. profile or default, or the path of a .jfc file
+     * @return true if the recording was started
+     */
+    public static synchronized boolean startRecording(String settings) {
+        if (!AVAILABLE) {
+            LOGGER.warn("Flight Recorder is not available in this JVM or build, not profiling");
+            return false;
+        }
+        if (recording != null) {
+            return true;
+        }
+        try {
+            recording = RECORDER.startRecording(settings);
+            LOGGER.info("Started Flight Recorder with '{}' settings", settings);
+            return true;
+        } catch (IOException | ParseException | RuntimeException e) {
+            LOGGER.error("Failed to start Flight Recorder: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stops the recording started by {@link #startRecording(String)} and writes it to a file.
+     *
+     * @param file The .jfr file to write
+     * @return true if a recording was written
+     */
+    public static synchronized boolean dumpRecording(File file) {
+        if (recording == null) {
+            return false;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        try {
+            RECORDER.stopRecording(recording, file);
+            LOGGER.info("Wrote Flight Recorder profile to {}", file);
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Failed to write Flight Recorder profile to {}: {}", file, e.getMessage());
+            return false;
+        } finally {
+            recording = null;
+        }
+    }
+
+    private static Recorder loadRecorder() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, FlightEvents.class.getClassLoader());
+            Recorder recorder = (Recorder) Class.forName("com.securetest.utils.JfrFlightEvents")
+                    .getDeclaredConstructor().newInstance();
+            return recorder.isAvailable() ? recorder : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * A framework call being timed. Closing it commits the event if a recording wants it.
+     */
+    public interface Scope extends AutoCloseable {
+
+        /**
+         * Records the result of the call, e.g. the test status.
+         *
+         * @param result The result
+         */
+        void setResult(String result);
+
+        @Override
+        void close();
+    }
+
+    /**
+     * The Flight Recorder side of this class, implemented by {@code JfrFlightEvents}.
+     */
+    interface Recorder {
+        boolean isAvailable();
+
+        Scope test(String name, int attempt);
+
+        Scope driver(String operation, String browser);
+
+        Scope await(String kind, String target);
+
+        Scope crypto(String operation, int length);
+
+        Scope secureDataRead(String key);
+
+        Object startRecording(String settings) throws IOException, ParseException;
+
+        void stopRecording(Object recording, File file) throws IOException;
+    }
+}
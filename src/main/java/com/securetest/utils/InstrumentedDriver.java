@@ -0,0 +1,212 @@
+package com.securetest.utils;
+
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Wraps a WebDriver in a dynamic proxy that records the latency of every command in
+ * {@link CommandMetrics}, by command and by locator, and counts the commands that throw.
+ * <p>
+ * The proxy implements every interface of the driver (JavascriptExecutor,
+ * TakesScreenshot, HasCapabilities, ...), so it can be used wherever the driver was.
+ * Elements, navigation, options, windows, alerts and frame switching are wrapped as
+ * well, and element commands are labelled with the locator that found the element.
+ * Calls that only return one of these views, such as {@code manage()}, are not timed.
+ */
+public final class InstrumentedDriver implements InvocationHandler {
+    // Methods that return a view on the driver without sending a command
+    private static final Set<String> ACCESSORS = new HashSet<>(Arrays.asList(
+            "manage", "navigate", "switchTo", "window", "timeouts", "logs", "ime"));
+
+    private final Object target;
+    private final Object root;
+    private final String prefix;
+    private final String locator;
+    private Object proxy;
+
+    private InstrumentedDriver(Object target, Object root, String prefix, String locator) {
+        this.target = target;
+        this.root = root;
+        this.prefix = prefix;
+        this.locator = locator;
+    }
+
+    /**
+     * Wraps a driver. A driver that is already wrapped is returned as it is.
+     *
+     * @param driver The driver to instrument
+     * @return The instrumented driver
+     */
+    public static WebDriver wrap(WebDriver driver) {
+        if (driver == null || isInstrumented(driver)) {
+            return driver;
+        }
+        InstrumentedDriver handler = new InstrumentedDriver(driver, null, "", "");
+        return (WebDriver) handler.createProxy();
+    }
+
+    /**
+     * Checks whether a driver was created by {@link #wrap(WebDriver)}.
+     *
+     * @param driver The driver
+     * @return true if the driver is instrumented
+     */
+    public static boolean isInstrumented(Object driver) {
+        return Proxy.isProxyClass(driver.getClass()) && Proxy.getInvocationHandler(driver) instanceof InstrumentedDriver;
+    }
+
+    private Object createProxy() {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> current = target.getClass(); current != null; current = current.getSuperclass()) {
+            collectInterfaces(current, interfaces);
+        }
+        proxy = Proxy.newProxyInstance(target.getClass().getClassLoader(), interfaces.toArray(new Class<?>[0]), this);
+        return proxy;
+    }
+
+    private static void collectInterfaces(Class<?> type, Set<Class<?>> interfaces) {
+        for (Class<?> implemented : type.getInterfaces()) {
+            // A proxy can only implement non-public interfaces of its own package
+            if (Modifier.isPublic(implemented.getModifiers())) {
+                interfaces.add(implemented);
+            }
+            collectInterfaces(implemented, interfaces);
+        }
+    }
+
+    @Override
+    public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            // A proxy equals its target, e.g. for the driver pool or element comparisons
+            return "equals".equals(name) ? target.equals(unwrap(args[0])) : invokeTarget(method, args);
+        }
+
+        if (ACCESSORS.contains(name) && (args == null || args.length == 0)) {
+            return wrapResult(invokeTarget(method, args), name, locator);
+        }
+
+        String command = prefix + name;
+        String commandLocator = args != null && args.length == 1 && args[0] instanceof By ? args[0].toString() : locator;
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invokeTarget(method, args);
+        } catch (Throwable e) {
+            CommandMetrics.recordError(command, e.getClass().getSimpleName());
+            throw e;
+        } finally {
+            CommandMetrics.recordCommand(command, commandLocator, System.nanoTime() - start);
+        }
+        return wrapResult(result, command, commandLocator);
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        if (args != null) {
+            args = args.clone();
+            for (int i = 0; i < args.length; i++) {
+                args[i] = unwrap(args[i]);
+            }
+        }
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Replaces instrumented elements, e.g. script arguments, with the driver's own objects.
+     */
+    private static Object unwrap(Object value) {
+        // executeScript receives its arguments as an array
+        if (value instanceof Object[]) {
+            Object[] values = ((Object[]) value).clone();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = unwrap(values[i]);
+            }
+            return values;
+        }
+        if (value instanceof List) {
+            List<Object> values = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                values.add(unwrap(element));
+            }
+            return values;
+        }
+        if (value != null && isInstrumented(value)) {
+            return ((InstrumentedDriver) Proxy.getInvocationHandler(value)).target;
+        }
+        return value;
+    }
+
+    /**
+     * Wraps views and elements returned by a command, so their commands are recorded too.
+     */
+    private Object wrapResult(Object result, String command, String resultLocator) {
+        if (result == null) {
+            return null;
+        }
+        Object driverProxy = root != null ? root : proxy;
+        // e.g. switchTo().frame() returns the driver itself
+        if (result == unwrappedRoot()) {
+            return driverProxy;
+        }
+        if (result instanceof WebElement) {
+            return wrapView(result, "element.", resultLocator);
+        }
+        if (result instanceof List && command.endsWith("findElements")) {
+            List<Object> elements = new ArrayList<>();
+            for (Object element : (List<?>) result) {
+                elements.add(element instanceof WebElement
+                        ? wrapView(element, "element.", resultLocator) : element);
+            }
+            return elements;
+        }
+        if (result instanceof Alert) {
+            return wrapView(result, "alert.", "");
+        }
+        if (result instanceof WebDriver.Navigation) {
+            return wrapView(result, "navigate.", "");
+        }
+        if (result instanceof WebDriver.TargetLocator) {
+            return wrapView(result, "switchTo.", "");
+        }
+        if (result instanceof WebDriver.Options) {
+            return wrapView(result, "manage.", "");
+        }
+        if (result instanceof WebDriver.Window) {
+            return wrapView(result, "manage.window.", "");
+        }
+        if (result instanceof WebDriver.Timeouts) {
+            return wrapView(result, "manage.timeouts.", "");
+        }
+        return result;
+    }
+
+    private Object wrapView(Object view, String viewPrefix, String viewLocator) {
+        InstrumentedDriver handler = new InstrumentedDriver(view, root != null ? root : proxy, viewPrefix, viewLocator);
+        return handler.createProxy();
+    }
+
+    private Object unwrappedRoot() {
+        if (root == null) {
+            return target;
+        }
+        return ((InstrumentedDriver) Proxy.getInvocationHandler(root)).target;
+    }
+}
@@ -0,0 +1,195 @@
+package com.securetest.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+/**
+ * The Flight Recorder events behind {@link FlightEvents}. This is the only class that refers
+ * to {@code jdk.jfr}; it is loaded by name, and left out of builds on JDKs without it.
+ */
+final class JfrFlightEvents implements FlightEvents.Recorder {
+
+    @Override
+    public boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    @Override
+    public FlightEvents.Scope test(String name, int attempt) {
+        TestEvent event = new TestEvent();
+        if (!event.isEnabled()) {
+            return FlightEvents.DISABLED;
+        }
+        event.name = name;
+        event.attempt = attempt;
+        return new EventScope(event);
+    }
+
+    @Override
+    public FlightEvents.Scope driver(String operation, String browser) {
+        DriverEvent event = new DriverEvent();
+        if (!event.isEnabled()) {
+            return FlightEvents.DISABLED;
+        }
+        event.operation = operation;
+        event.browser = browser;
+        return new EventScope(event);
+    }
+
+    @Override
+    public FlightEvents.Scope await(String kind, String target) {
+        WaitEvent event = new WaitEvent();
+        if (!event.isEnabled()) {
+            return FlightEvents.DISABLED;
+        }
+        event.kind = kind;
+        event.target = target;
+        return new EventScope(event);
+    }
+
+    @Override
+    public FlightEvents.Scope crypto(String operation, int length) {
+        CryptoEvent event = new CryptoEvent();
+        if (!event.isEnabled()) {
+            return FlightEvents.DISABLED;
+        }
+        event.operation = operation;
+        event.length = length;
+        return new EventScope(event);
+    }
+
+    @Override
+    public FlightEvents.Scope secureDataRead(String key) {
+        SecureDataReadEvent event = new SecureDataReadEvent();
+        if (!event.isEnabled()) {
+            return FlightEvents.DISABLED;
+        }
+        event.key = key;
+        return new EventScope(event);
+    }
+
+    @Override
+    public Object startRecording(String settings) throws IOException, ParseException {
+        Configuration configuration = settings.endsWith(".jfc")
+                ? Configuration.create(Paths.get(settings))
+                : Configuration.getConfiguration(settings);
+        Recording recording = new Recording(configuration);
+        recording.setName("SecureTestSuite");
+        recording.start();
+        return recording;
+    }
+
+    @Override
+    public void stopRecording(Object handle, File file) throws IOException {
+        Recording recording = (Recording) handle;
+        try {
+            recording.stop();
+            recording.dump(file.toPath());
+        } finally {
+            recording.close();
+        }
+    }
+
+    /**
+     * Begins an event when opened and ends and commits it when closed.
+     */
+    private static final class EventScope implements FlightEvents.Scope {
+        private final ResultEvent event;
+
+        EventScope(ResultEvent event) {
+            this.event = event;
+            event.begin();
+        }
+
+        @Override
+        public void setResult(String result) {
+            event.result = result;
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+
+    @Category("SecureTest")
+    private abstract static class ResultEvent extends Event {
+        @Label("Result")
+        String result;
+    }
+
+    @Name("securetest.Test")
+    @Label("Test")
+    @Category({"SecureTest", "Tests"})
+    @Description("A test class, test method or scenario from start to end")
+    @StackTrace(false)
+    private static final class TestEvent extends ResultEvent {
+        @Label("Name")
+        String name;
+
+        @Label("Attempt")
+        int attempt;
+    }
+
+    @Name("securetest.Driver")
+    @Label("Driver Acquire/Release")
+    @Category({"SecureTest", "Drivers"})
+    @Description("A browser taken from or returned to the driver pool, including launches and resets")
+    @StackTrace(false)
+    private static final class DriverEvent extends ResultEvent {
+        @Label("Operation")
+        String operation;
+
+        @Label("Browser")
+        String browser;
+    }
+
+    @Name("securetest.Wait")
+    @Label("Wait")
+    @Category({"SecureTest", "Waits"})
+    @Description("An explicit wait for an element or a stable screen")
+    @StackTrace(false)
+    private static final class WaitEvent extends ResultEvent {
+        @Label("Kind")
+        String kind;
+
+        @Label("Target")
+        String target;
+    }
+
+    @Name("securetest.Crypto")
+    @Label("Encrypt/Decrypt")
+    @Category({"SecureTest", "Secure Data"})
+    @Description("An EncryptionUtil call; the stack trace shows who made it")
+    private static final class CryptoEvent extends ResultEvent {
+        @Label("Operation")
+        String operation;
+
+        @Label("Input Length")
+        int length;
+    }
+
+    @Name("securetest.SecureDataRead")
+    @Label("Secure Data Read")
+    @Category({"SecureTest", "Secure Data"})
+    @Description("A SensitiveDataManager read, including decryption; the stack trace shows who made it")
+    private static final class SecureDataReadEvent extends ResultEvent {
+        @Label("Key")
+        String key;
+    }
+}
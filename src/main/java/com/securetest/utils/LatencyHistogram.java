@@ -0,0 +1,126 @@
+package com.securetest.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with a fixed memory footprint, in the style of HdrHistogram.
+ * <p>
+ * Values are counted in log-linear buckets: every power of two of microseconds is
+ * split into {@value #SUB_BUCKETS} equal sub-buckets, so any recorded value is
+ * known within 1/{@value #SUB_BUCKETS} of its magnitude whether it is 50 µs or
+ * 5 minutes. The buckets are a single array allocated up front, and recording is
+ * one atomic increment, so histograms can be updated from any number of test threads.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Covers values up to 2^44 microseconds (about 200 days); larger ones share the last bucket
+    private static final int MAGNITUDES = 40;
+    private static final int BUCKETS = (MAGNITUDES + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of all recorded latencies.
+     *
+     * @return The sum in seconds
+     */
+    public double getSumSeconds() {
+        return sumMicros.sum() / 1000000.0;
+    }
+
+    /**
+     * Counts the recorded latencies up to a bound, within the precision of the buckets.
+     *
+     * @param seconds The inclusive upper bound in seconds
+     * @return The number of latencies in buckets whose upper edge is within the bound
+     */
+    public long countAtOrBelow(double seconds) {
+        long boundMicros = (long) (seconds * 1000000);
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (upperEdgeOf(i) > boundMicros) {
+                break;
+            }
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Estimates a percentile from the buckets.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The upper edge of the bucket holding the percentile, in milliseconds, or 0 if nothing was recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperEdgeOf(i) / 1000.0;
+            }
+        }
+        return upperEdgeOf(BUCKETS - 1) / 1000.0;
+    }
+
+    /**
+     * Maps a value to its bucket. Values below {@value #SUB_BUCKETS} µs get a bucket
+     * each; above that, the top {@value #SUB_BUCKET_BITS} bits after the leading one
+     * select the sub-bucket within the value's power of two.
+     */
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+        if (magnitude > MAGNITUDES) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+        return magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the largest value, in microseconds, that falls into a bucket.
+     */
+    static long upperEdgeOf(int bucket) {
+        int magnitude = bucket / SUB_BUCKETS;
+        int subBucket = bucket % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        long width = 1L << (magnitude - 1);
+        return ((long) (SUB_BUCKETS + subBucket) * width) + width - 1;
+    }
+}
@@ -0,0 +1,818 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Indexes the framework's log files, including rolled ones, and answers queries over them,
+ * e.g. {@code level=WARN logger=AppiumHelper test=LoginTest} or {@code text=wait slowest=5 per=hour}.
+ * <p>
+ * Each log file is memory-mapped and scanned once. The index holds, for every entry, its
+ * offset, timestamp, level, logger, test id and the first "N ms" duration in its message.
+ * It is stored in columns in {@code .index/} next to the logs and is memory-mapped itself
+ * when queried. Rolled files never change, so they are indexed only once; the active file
+ * is indexed again when it has grown. A query reads only the index columns, plus the log
+ * text of the entries it matches or prints.
+ * <p>
+ * Lines are parsed in the layout of {@code log4j2.xml}:
+ * {@code yyyy-MM-dd HH:mm:ss.SSS [thread] LEVEL [testId] logger - message}. Lines that do not
+ * start with a timestamp, such as stack traces, belong to the entry before them.
+ */
+public class LogIndexer {
+    private static final Logger LOGGER = LogManager.getLogger(LogIndexer.class);
+    public static final String DEFAULT_DIR = "logs";
+    private static final String INDEX_DIR = ".index";
+    private static final int MAGIC = 0x53544c49;
+    private static final int VERSION = 1;
+    private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+    private static final DateTimeFormatter HOUR = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00");
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private LogIndexer() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Runs a query over all log files in a directory and prints the result.
+     *
+     * @param logDir The directory of the log files
+     * @param query The query, see {@link Query#parse(String)}
+     * @param out Where to print matching lines or the slowest entries
+     * @return The number of matching entries
+     * @throws IOException If a log file or index cannot be read or written
+     */
+    public static int query(File logDir, String query, PrintStream out) throws IOException {
+        Query parsed = Query.parse(query);
+        long start = System.nanoTime();
+        List<FileIndex> indexes = index(logDir);
+        long indexed = System.nanoTime();
+        int matches = 0;
+        long entries = 0;
+        try {
+            Map<String, PriorityQueue<Hit>> groups = new TreeMap<>();
+            for (FileIndex index : indexes) {
+                entries += index.count;
+                matches += parsed.slowest > 0 ? index.collectSlowest(parsed, groups) : index.print(parsed, out, parsed.limit - matches);
+            }
+            if (parsed.slowest > 0) {
+                printSlowest(groups, out);
+            }
+        } finally {
+            for (FileIndex index : indexes) {
+                index.close();
+            }
+        }
+        LOGGER.info("{} match(es) in {} entries of {} file(s); indexing took {} ms, the query {} ms", matches, entries,
+                indexes.size(), (indexed - start) / 1000000, (System.nanoTime() - indexed) / 1000000);
+        return matches;
+    }
+
+    /**
+     * Brings the index of every log file in a directory up to date.
+     *
+     * @param logDir The directory of the log files
+     * @return The indexes, oldest log first; close them after use
+     * @throws IOException If a log file or index cannot be read or written
+     */
+    public static List<FileIndex> index(File logDir) throws IOException {
+        File[] logs = logDir.listFiles((dir, name) -> name.endsWith(".log"));
+        List<FileIndex> indexes = new ArrayList<>();
+        if (logs == null) {
+            LOGGER.warn("Log directory {} does not exist", logDir);
+            return indexes;
+        }
+        File indexDir = new File(logDir, INDEX_DIR);
+        indexDir.mkdirs();
+        for (File log : logs) {
+            File indexFile = new File(indexDir, log.getName() + ".idx");
+            FileIndex index = FileIndex.open(log, indexFile, true);
+            if (index == null) {
+                long start = System.nanoTime();
+                index = build(log, indexFile);
+                LOGGER.debug("Indexed {} entries of {} in {} ms", index.count, log.getName(),
+                        (System.nanoTime() - start) / 1000000);
+            }
+            indexes.add(index);
+        }
+        indexes.sort((a, b) -> Long.compare(a.baseTime, b.baseTime));
+        return indexes;
+    }
+
+    /**
+     * Scans a log file and writes its index.
+     * <p>
+     * The index records the length and modification time the log had when it was scanned. A log
+     * written to meanwhile, e.g. while tests run, is indexed again by the next query; this one uses
+     * what was scanned.
+     *
+     * @return The index just written
+     */
+    private static FileIndex build(File log, File indexFile) throws IOException {
+        // Taken before mapping, so a write in between makes the index stale rather than look current
+        long modified = log.lastModified();
+        try (MappedLog text = MappedLog.map(log)) {
+            Builder builder = new Builder(text);
+            long indexedEnd = builder.scan();
+            File temp = new File(indexFile.getPath() + ".tmp");
+            builder.write(temp, text.length, indexedEnd, modified);
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return FileIndex.open(log, indexFile, false);
+    }
+
+    private static void printSlowest(Map<String, PriorityQueue<Hit>> groups, PrintStream out) {
+        for (Map.Entry<String, PriorityQueue<Hit>> group : groups.entrySet()) {
+            out.println(group.getKey());
+            List<Hit> hits = new ArrayList<>(group.getValue());
+            hits.sort((a, b) -> Integer.compare(b.millis, a.millis));
+            for (Hit hit : hits) {
+                out.println(String.format("  %8d ms  %s", hit.millis, hit.line));
+            }
+        }
+    }
+
+    private static int levelOf(String name) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown log level: " + name);
+    }
+
+    /**
+     * A log query: filters, and either a number of lines to print or the slowest entries to report.
+     */
+    public static final class Query {
+        private final boolean[] levels = new boolean[LEVELS.length];
+        private String logger;
+        private String test;
+        private long from = Long.MIN_VALUE;
+        private long to = Long.MAX_VALUE;
+        private byte[] text;
+        private int limit = 200;
+        private int slowest;
+        private String per = "all";
+
+        private Query() {
+            Arrays.fill(levels, true);
+        }
+
+        /**
+         * Parses a query of space-separated terms, with double quotes around values containing spaces:
+         * <ul>
+         *   <li>{@code level=WARN} or {@code level=WARN,ERROR}</li>
+         *   <li>{@code logger=AppiumHelper}, the simple or full logger name</li>
+         *   <li>{@code test=LoginTest}, a test id or its start, e.g. also matching retries</li>
+         *   <li>{@code from="2026-10-18 02:00"} and {@code to=...}, local time</li>
+         *   <li>{@code text=...}, a case-insensitive part of the entry</li>
+         *   <li>{@code limit=N}, the number of lines printed (default 200)</li>
+         *   <li>{@code slowest=N}, to report the N entries with the longest "N ms" duration instead</li>
+         *   <li>{@code per=hour}, {@code day}, {@code test} or {@code logger}, to report the slowest per group</li>
+         * </ul>
+         *
+         * @param query The query, may be empty to print every entry up to the limit
+         * @return The parsed query
+         * @throws IllegalArgumentException If a term is not understood
+         */
+        public static Query parse(String query) {
+            Query parsed = new Query();
+            for (String term : split(query != null ? query : "")) {
+                int equals = term.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Expected key=value in query term: " + term);
+                }
+                String key = term.substring(0, equals).toLowerCase();
+                String value = term.substring(equals + 1);
+                switch (key) {
+                    case "level":
+                        Arrays.fill(parsed.levels, false);
+                        for (String level : value.split(",")) {
+                            parsed.levels[levelOf(level.trim())] = true;
+                        }
+                        break;
+                    case "logger":
+                        parsed.logger = value;
+                        break;
+                    case "test":
+                        parsed.test = value;
+                        break;
+                    case "from":
+                        parsed.from = parseTime(value);
+                        break;
+                    case "to":
+                        parsed.to = parseTime(value);
+                        break;
+                    case "text":
+                        parsed.text = value.toLowerCase().getBytes(StandardCharsets.UTF_8);
+                        break;
+                    case "limit":
+                        parsed.limit = Integer.parseInt(value);
+                        break;
+                    case "slowest":
+                        parsed.slowest = Integer.parseInt(value);
+                        break;
+                    case "per":
+                        if (!Arrays.asList("all", "hour", "day", "test", "logger").contains(value)) {
+                            throw new IllegalArgumentException("per must be hour, day, test or logger: " + value);
+                        }
+                        parsed.per = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown query term: " + key);
+                }
+            }
+            return parsed;
+        }
+
+        private static List<String> split(String query) {
+            List<String> terms = new ArrayList<>();
+            StringBuilder term = new StringBuilder();
+            boolean quoted = false;
+            for (char c : query.toCharArray()) {
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == ' ' && !quoted) {
+                    if (term.length() > 0) {
+                        terms.add(term.toString());
+                        term.setLength(0);
+                    }
+                } else {
+                    term.append(c);
+                }
+            }
+            if (term.length() > 0) {
+                terms.add(term.toString());
+            }
+            return terms;
+        }
+
+        private static long parseTime(String value) {
+            String time = value.trim().replace(' ', 'T');
+            if (time.length() == 10) {
+                time += "T00:00";
+            }
+            return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        private boolean matchesLogger(String name) {
+            return logger == null || name.equals(logger) || name.endsWith("." + logger);
+        }
+
+        private boolean matchesTest(String id) {
+            return test == null || (id != null && id.startsWith(test));
+        }
+    }
+
+    /**
+     * The index of one log file, memory-mapped from its index file.
+     */
+    public static final class FileIndex implements AutoCloseable {
+        private final File log;
+        private final long baseTime;
+        private final int count;
+        private final String[] loggers;
+        private final String[] tests;
+        private final ByteBuffer columns;
+        private final int timesAt;
+        private final int levelsAt;
+        private final int loggersAt;
+        private final int testsAt;
+        private final int millisAt;
+        private MappedLog text;
+
+        private FileIndex(File log, long baseTime, int count, String[] loggers, String[] tests, ByteBuffer columns) {
+            this.log = log;
+            this.baseTime = baseTime;
+            this.count = count;
+            this.loggers = loggers;
+            this.tests = tests;
+            this.columns = columns;
+            this.timesAt = (count + 1) * 8;
+            this.levelsAt = timesAt + count * 4;
+            this.loggersAt = levelsAt + count;
+            this.testsAt = loggersAt + count * 4;
+            this.millisAt = testsAt + count * 4;
+        }
+
+        /**
+         * Opens the index of a log file.
+         *
+         * @param checkCurrent Whether to return null if the log has changed since it was indexed
+         * @return The index, or null if it is missing, of another version or stale
+         */
+        static FileIndex open(File log, File indexFile, boolean checkCurrent) throws IOException {
+            if (!indexFile.isFile()) {
+                return null;
+            }
+            try (RandomAccessFile file = new RandomAccessFile(indexFile, "r"); FileChannel channel = file.getChannel()) {
+                ByteBuffer head = ByteBuffer.allocate(12);
+                channel.read(head, 0);
+                head.flip();
+                if (head.remaining() < 12 || head.getInt() != MAGIC || head.getInt() != VERSION) {
+                    return null;
+                }
+                int headerLength = head.getInt();
+                ByteBuffer header = ByteBuffer.allocate(headerLength);
+                channel.read(header, 12);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+                long length = in.readLong();
+                long modified = in.readLong();
+                // The active log is indexed again once it has been written to
+                if (checkCurrent && (length != log.length() || modified != log.lastModified())) {
+                    return null;
+                }
+                long baseTime = in.readLong();
+                int count = in.readInt();
+                String[] loggers = readStrings(in);
+                String[] tests = readStrings(in);
+                long columnsAt = 12L + headerLength;
+                MappedByteBuffer columns = channel.map(FileChannel.MapMode.READ_ONLY, columnsAt, channel.size() - columnsAt);
+                return new FileIndex(log, baseTime, count, loggers, tests, columns);
+            }
+        }
+
+        private static String[] readStrings(DataInputStream in) throws IOException {
+            String[] values = new String[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readUTF();
+            }
+            return values;
+        }
+
+        /**
+         * Prints the entries matching a query, in the order they were logged.
+         *
+         * @return The number of entries printed
+         */
+        int print(Query query, PrintStream out, int limit) throws IOException {
+            int printed = 0;
+            Matcher matcher = new Matcher(query);
+            for (int i = 0; i < count && printed < limit; i++) {
+                if (matcher.matches(i)) {
+                    out.print(entry(i));
+                    printed++;
+                }
+            }
+            return printed;
+        }
+
+        /**
+         * Adds the entries with the longest durations matching a query to their groups.
+         *
+         * @return The number of matching entries with a duration
+         */
+        int collectSlowest(Query query, Map<String, PriorityQueue<Hit>> groups) throws IOException {
+            int matched = 0;
+            Matcher matcher = new Matcher(query);
+            for (int i = 0; i < count; i++) {
+                int millis = columns.getInt(millisAt + i * 4);
+                if (millis < 0 || !matcher.matches(i)) {
+                    continue;
+                }
+                matched++;
+                PriorityQueue<Hit> group = groups.computeIfAbsent(groupOf(query.per, i),
+                        k -> new PriorityQueue<Hit>((a, b) -> Integer.compare(a.millis, b.millis)));
+                if (group.size() < query.slowest || group.peek().millis < millis) {
+                    String line = entry(i);
+                    int end = line.indexOf('\n');
+                    group.add(new Hit(millis, end >= 0 ? line.substring(0, end) : line));
+                    if (group.size() > query.slowest) {
+                        group.poll();
+                    }
+                }
+            }
+            return matched;
+        }
+
+        private String groupOf(String per, int i) {
+            switch (per) {
+                case "hour":
+                    return HOUR.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time(i)), ZoneId.systemDefault()));
+                case "day":
+                    return DAY.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time(i)), ZoneId.systemDefault()));
+                case "test":
+                    int test = columns.getInt(testsAt + i * 4);
+                    return test >= 0 ? tests[test] : "(no test)";
+                case "logger":
+                    return loggers[columns.getInt(loggersAt + i * 4)];
+                default:
+                    return "Slowest entries";
+            }
+        }
+
+        private long time(int i) {
+            return baseTime + columns.getInt(timesAt + i * 4);
+        }
+
+        private long offset(int i) {
+            return columns.getLong(i * 8);
+        }
+
+        private String entry(int i) throws IOException {
+            return text().decode(offset(i), offset(i + 1));
+        }
+
+        private MappedLog text() throws IOException {
+            if (text == null) {
+                text = MappedLog.map(log);
+            }
+            return text;
+        }
+
+        @Override
+        public void close() {
+            if (text != null) {
+                text.close();
+            }
+        }
+
+        /**
+         * Evaluates a query against the columns, resolving logger and test names once per file.
+         */
+        private final class Matcher {
+            private final Query query;
+            private final boolean[] loggerMatches;
+            private final boolean[] testMatches;
+            private final long from;
+            private final long to;
+
+            Matcher(Query query) {
+                this.query = query;
+                loggerMatches = new boolean[loggers.length];
+                for (int i = 0; i < loggers.length; i++) {
+                    loggerMatches[i] = query.matchesLogger(loggers[i]);
+                }
+                testMatches = new boolean[tests.length];
+                for (int i = 0; i < tests.length; i++) {
+                    testMatches[i] = query.matchesTest(tests[i]);
+                }
+                from = query.from;
+                to = query.to;
+            }
+
+            boolean matches(int i) throws IOException {
+                if (!query.levels[columns.get(levelsAt + i)] || !loggerMatches[columns.getInt(loggersAt + i * 4)]) {
+                    return false;
+                }
+                int test = columns.getInt(testsAt + i * 4);
+                if (query.test != null && (test < 0 || !testMatches[test])) {
+                    return false;
+                }
+                long time = time(i);
+                if (time < from || time >= to) {
+                    return false;
+                }
+                return query.text == null || text().contains(offset(i), offset(i + 1), query.text);
+            }
+        }
+    }
+
+    /**
+     * One of the slowest entries of a group.
+     */
+    private static final class Hit {
+        private final int millis;
+        private final String line;
+
+        Hit(int millis, String line) {
+            this.millis = millis;
+            this.line = line;
+        }
+    }
+
+    /**
+     * A log file mapped into memory, in windows of up to 1 GB so files of any size can be read.
+     */
+    static final class MappedLog implements AutoCloseable {
+        private static final int WINDOW_BITS = 30;
+        private static final int WINDOW_MASK = (1 << WINDOW_BITS) - 1;
+
+        private final RandomAccessFile file;
+        private final MappedByteBuffer[] windows;
+        private final long length;
+
+        private MappedLog(RandomAccessFile file, MappedByteBuffer[] windows, long length) {
+            this.file = file;
+            this.windows = windows;
+            this.length = length;
+        }
+
+        static MappedLog map(File log) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(log, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                long length = channel.size();
+                MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((length >>> WINDOW_BITS) + 1)];
+                for (int i = 0; i < windows.length; i++) {
+                    long start = (long) i << WINDOW_BITS;
+                    windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << WINDOW_BITS, length - start));
+                }
+                return new MappedLog(file, windows, length);
+            } catch (IOException | RuntimeException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        byte get(long position) {
+            return windows[(int) (position >>> WINDOW_BITS)].get((int) (position & WINDOW_MASK));
+        }
+
+        String decode(long start, long end) {
+            byte[] bytes = new byte[(int) Math.min(end - start, Integer.MAX_VALUE - 8)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = get(start + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Searches a range for lower-case bytes, ignoring the case of ASCII letters in the text.
+         */
+        boolean contains(long start, long end, byte[] needle) {
+            long last = end - needle.length;
+            for (long position = start; position <= last; position++) {
+                int i = 0;
+                while (i < needle.length && toLower(get(position + i)) == needle[i]) {
+                    i++;
+                }
+                if (i == needle.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static byte toLower(byte b) {
+            return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+        }
+
+        @Override
+        public void close() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Scans a mapped log into growing index columns.
+     */
+    private static final class Builder {
+        private final MappedLog text;
+        private final Map<String, Integer> loggerIds = new LinkedHashMap<>();
+        private final Map<String, Integer> testIds = new LinkedHashMap<>();
+        private final Map<Long, Long> hourStarts = new HashMap<>();
+        private long[] offsets = new long[1024];
+        private long[] times = new long[1024];
+        private byte[] levels = new byte[1024];
+        private int[] loggers = new int[1024];
+        private int[] tests = new int[1024];
+        private int[] millis = new int[1024];
+        private int count;
+
+        Builder(MappedLog text) {
+            this.text = text;
+        }
+
+        /**
+         * Indexes every complete line.
+         *
+         * @return The length of the indexed text, up to the last line break; a partial last line waits for the next index
+         */
+        long scan() {
+            long end = text.length;
+            while (end > 0 && text.get(end - 1) != '\n') {
+                end--;
+            }
+            long lineStart = 0;
+            while (lineStart < end) {
+                long lineEnd = lineStart;
+                while (text.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (isEntryStart(lineStart, lineEnd)) {
+                    parse(lineStart, lineEnd);
+                }
+                lineStart = lineEnd + 1;
+            }
+            return end;
+        }
+
+        private boolean isEntryStart(long start, long end) {
+            return end - start > 24 && isDigit(start) && text.get(start + 4) == '-' && text.get(start + 7) == '-'
+                    && text.get(start + 10) == ' ' && text.get(start + 13) == ':' && text.get(start + 19) == '.'
+                    && text.get(start + 23) == ' ';
+        }
+
+        private void parse(long start, long end) {
+            ensureCapacity();
+            offsets[count] = start;
+            times[count] = parseTime(start);
+
+            // [thread] LEVEL [testId] logger - message
+            long position = indexOf(start + 24, end, (byte) ']', (byte) ' ') + 2;
+            long levelEnd = position;
+            while (levelEnd < end && text.get(levelEnd) != ' ') {
+                levelEnd++;
+            }
+            levels[count] = (byte) levelIndex(text.get(position));
+            position = levelEnd;
+            while (position < end && text.get(position) == ' ') {
+                position++;
+            }
+            tests[count] = -1;
+            if (position < end && text.get(position) == '[') {
+                long testEnd = indexOf(position + 1, end, (byte) ']', (byte) ' ');
+                tests[count] = id(testIds, text.decode(position + 1, testEnd));
+                position = testEnd + 2;
+            }
+            long loggerEnd = indexOf(position, end, (byte) ' ', (byte) '-');
+            loggers[count] = id(loggerIds, text.decode(position, Math.min(loggerEnd, end)));
+            millis[count] = parseMillis(loggerEnd + 3, end);
+            count++;
+        }
+
+        /**
+         * Converts "yyyy-MM-dd HH:mm:ss.SSS" to epoch milliseconds, converting each hour only once.
+         */
+        private long parseTime(long start) {
+            long hour = number(start, 4) * 1000000L + number(start + 5, 2) * 10000 + number(start + 8, 2) * 100
+                    + number(start + 11, 2);
+            Long hourStart = hourStarts.get(hour);
+            if (hourStart == null) {
+                hourStart = LocalDateTime.of(number(start, 4), number(start + 5, 2), number(start + 8, 2),
+                        number(start + 11, 2), 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                hourStarts.put(hour, hourStart);
+            }
+            return hourStart + number(start + 14, 2) * 60000L + number(start + 17, 2) * 1000L + number(start + 20, 3);
+        }
+
+        /**
+         * Finds the first "N ms" in a message, e.g. "Screen stable after 350 ms".
+         *
+         * @return The duration in milliseconds, or -1 if the message has none
+         */
+        private int parseMillis(long start, long end) {
+            for (long position = start; position + 3 <= end; position++) {
+                if (text.get(position) == ' ' && text.get(position + 1) == 'm' && text.get(position + 2) == 's'
+                        && (position + 3 == end || !Character.isLetter(text.get(position + 3)))
+                        && position > start && isDigit(position - 1)) {
+                    long digits = position - 1;
+                    while (digits > start && isDigit(digits - 1)) {
+                        digits--;
+                    }
+                    long value = 0;
+                    for (long i = digits; i < position && value <= Integer.MAX_VALUE; i++) {
+                        value = value * 10 + (text.get(i) - '0');
+                    }
+                    return (int) Math.min(value, Integer.MAX_VALUE);
+                }
+            }
+            return -1;
+        }
+
+        private long indexOf(long start, long end, byte first, byte second) {
+            for (long position = start; position + 1 < end; position++) {
+                if (text.get(position) == first && text.get(position + 1) == second) {
+                    return position;
+                }
+            }
+            return end;
+        }
+
+        private int number(long start, int digits) {
+            int value = 0;
+            for (int i = 0; i < digits; i++) {
+                value = value * 10 + (text.get(start + i) - '0');
+            }
+            return value;
+        }
+
+        private boolean isDigit(long position) {
+            byte b = text.get(position);
+            return b >= '0' && b <= '9';
+        }
+
+        private static int levelIndex(byte first) {
+            switch (first) {
+                case 'T':
+                    return 0;
+                case 'D':
+                    return 1;
+                case 'W':
+                    return 3;
+                case 'E':
+                    return 4;
+                case 'F':
+                    return 5;
+                default:
+                    return 2;
+            }
+        }
+
+        private static int id(Map<String, Integer> ids, String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = ids.size();
+                ids.put(value, id);
+            }
+            return id;
+        }
+
+        private void ensureCapacity() {
+            if (count < levels.length) {
+                return;
+            }
+            int capacity = levels.length * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            times = Arrays.copyOf(times, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            loggers = Arrays.copyOf(loggers, capacity);
+            tests = Arrays.copyOf(tests, capacity);
+            millis = Arrays.copyOf(millis, capacity);
+        }
+
+        /**
+         * Writes the header, then one column after another, so a query only touches the columns it needs.
+         */
+        void write(File file, long length, long indexedEnd, long modified) throws IOException {
+            long baseTime = count > 0 ? times[0] : 0;
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(headerBytes);
+            // The length of the whole log, so a log without a final line break is not indexed again and again
+            header.writeLong(length);
+            header.writeLong(modified);
+            header.writeLong(baseTime);
+            header.writeInt(count);
+            writeStrings(header, loggerIds.keySet());
+            writeStrings(header, testIds.keySet());
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(headerBytes.size());
+                headerBytes.writeTo(out);
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(offsets[i]);
+                }
+                // The end of the last entry
+                out.writeLong(indexedEnd);
+                for (int i = 0; i < count; i++) {
+                    // An int of milliseconds covers 24 days, far more than one rolled file
+                    out.writeInt((int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, times[i] - baseTime)));
+                }
+                out.write(levels, 0, count);
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(loggers[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(tests[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(millis[i]);
+                }
+            }
+        }
+
+        private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.pattern.ConverterKeys;
+import org.apache.logging.log4j.core.pattern.LogEventPatternConverter;
+import org.apache.logging.log4j.core.pattern.PatternConverter;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.PerformanceSensitive;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Log4j pattern converter {@code %maskedMsg} that writes the log message like {@code %msg},
+ * with the secrets in it masked by {@link SecretMasker}.
+ * <p>
+ * The message is formatted straight into the layout's buffer and masked there, so the
+ * converter allocates nothing per event. The keywords whose values are masked can be
+ * listed as an option, e.g. {@code %maskedMsg{password,token}}; without one,
+ * {@link SecretMasker#DEFAULT_KEYWORDS} are used.
+ */
+@Plugin(name = "MaskedMessageConverter", category = PatternConverter.CATEGORY)
+@ConverterKeys({"maskedMsg", "maskedMessage"})
+@PerformanceSensitive("allocation")
+public final class MaskedMessageConverter extends LogEventPatternConverter {
+    private final SecretMasker masker;
+
+    private MaskedMessageConverter(List<String> keywords) {
+        super("MaskedMessage", "message");
+        this.masker = new SecretMasker(keywords);
+    }
+
+    /**
+     * Creates the converter; called by log4j for each {@code %maskedMsg} in a pattern.
+     *
+     * @param config The logging configuration
+     * @param options The options of the pattern, each a comma-separated list of keywords
+     * @return The converter
+     */
+    public static MaskedMessageConverter newInstance(Configuration config, String[] options) {
+        List<String> keywords = new ArrayList<>();
+        if (options != null) {
+            for (String option : options) {
+                for (String keyword : option.split(",")) {
+                    if (!keyword.trim().isEmpty()) {
+                        keywords.add(keyword.trim());
+                    }
+                }
+            }
+        }
+        return new MaskedMessageConverter(keywords.isEmpty() ? SecretMasker.DEFAULT_KEYWORDS : keywords);
+    }
+
+    @Override
+    public void format(LogEvent event, StringBuilder toAppendTo) {
+        Message message = event.getMessage();
+        if (message == null) {
+            return;
+        }
+        int start = toAppendTo.length();
+        if (message instanceof StringBuilderFormattable) {
+            ((StringBuilderFormattable) message).formatTo(toAppendTo);
+        } else {
+            toAppendTo.append(message.getFormattedMessage());
+        }
+        masker.mask(toAppendTo, start);
+    }
+}
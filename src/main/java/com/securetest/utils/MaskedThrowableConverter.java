@@ -0,0 +1,45 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.pattern.ConverterKeys;
+import org.apache.logging.log4j.core.pattern.PatternConverter;
+import org.apache.logging.log4j.core.pattern.ThrowablePatternConverter;
+
+/**
+ * Log4j pattern converter {@code %maskedEx} that writes the exception of a log event like
+ * {@code %ex}, with the secrets in its messages and stack trace masked by {@link SecretMasker}.
+ * <p>
+ * Takes the same options as {@code %ex}, e.g. {@code %maskedEx{short}}. A pattern containing it
+ * no longer gets log4j's implicit {@code %xEx}, so exceptions are never written unmasked.
+ */
+@Plugin(name = "MaskedThrowableConverter", category = PatternConverter.CATEGORY)
+@ConverterKeys({"maskedEx", "maskedThrowable", "maskedException"})
+public final class MaskedThrowableConverter extends ThrowablePatternConverter {
+    private final SecretMasker masker = new SecretMasker(SecretMasker.DEFAULT_KEYWORDS);
+
+    private MaskedThrowableConverter(Configuration config, String[] options) {
+        super("MaskedThrowable", "throwable", options, config);
+    }
+
+    /**
+     * Creates the converter; called by log4j for each {@code %maskedEx} in a pattern.
+     *
+     * @param config The logging configuration
+     * @param options The options of the pattern, as for {@code %ex}
+     * @return The converter
+     */
+    public static MaskedThrowableConverter newInstance(Configuration config, String[] options) {
+        return new MaskedThrowableConverter(config, options);
+    }
+
+    @Override
+    public void format(LogEvent event, StringBuilder toAppendTo) {
+        int start = toAppendTo.length();
+        super.format(event, toAppendTo);
+        if (toAppendTo.length() > start) {
+            masker.mask(toAppendTo, start);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Manages configuration properties for the test framework.
@@ -16,12 +17,12 @@ public class PropertyManager {
     private static final Logger LOGGER = LogManager.getLogger(PropertyManager.class);
     private static final Properties properties = new Properties();
     private static final String CONFIG_FILE = "src/test/resources/config.properties";
-    private static boolean initialized = false;
+    private static volatile boolean initialized = false;
     
     /**
      * Initialize the property manager by loading configuration from file.
      */
-    public static void init() {
+    public static synchronized void init() {
         if (initialized) {
             return;
         }
@@ -109,6 +110,18 @@ public class PropertyManager {
         }
     }
     
+    /**
+     * Gets the names of all properties defined in the config file.
+     * 
+     * @return The property names
+     */
+    public static Set<String> getPropertyNames() {
+        if (!initialized) {
+            init();
+        }
+        return properties.stringPropertyNames();
+    }
+    
     /**
      * Sets a property value.
      * 
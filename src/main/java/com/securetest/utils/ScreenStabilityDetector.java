@@ -0,0 +1,214 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Detects when a screen has settled after a transition.
+ * Samples a cheap fingerprint of the screen (page source hash or a downscaled
+ * screenshot checksum) at adaptive intervals and reports the screen as stable
+ * once a number of consecutive samples match.
+ */
+public class ScreenStabilityDetector {
+    private static final Logger LOGGER = LogManager.getLogger(ScreenStabilityDetector.class);
+
+    // Number of sample points per axis used for the downscaled screenshot fingerprint
+    private static final int SCREENSHOT_GRID = 32;
+
+    /**
+     * The fingerprint used to compare consecutive samples.
+     */
+    public enum Fingerprint {
+        PAGE_SOURCE,
+        SCREENSHOT
+    }
+
+    /**
+     * Outcome of a stability wait.
+     */
+    public static class Result {
+        private final boolean stable;
+        private final int samples;
+        private final long elapsedMillis;
+
+        Result(boolean stable, int samples, long elapsedMillis) {
+            this.stable = stable;
+            this.samples = samples;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public boolean isStable() {
+            return stable;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private ScreenStabilityDetector() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Waits for the screen to settle using the configured fingerprint and timings.
+     *
+     * @param driver The driver to sample
+     * @return The stability result
+     */
+    @SuppressWarnings("try")
+    public static Result awaitStable(WebDriver driver) {
+        Fingerprint fingerprint;
+        try {
+            fingerprint = Fingerprint.valueOf(
+                    PropertyManager.getProperty("mobile.stability.fingerprint", "PAGE_SOURCE").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown stability fingerprint, defaulting to PAGE_SOURCE");
+            fingerprint = Fingerprint.PAGE_SOURCE;
+        }
+
+        long start = System.nanoTime();
+        Result result;
+        try (TraceRecorder.Span span = TraceRecorder.begin("wait", "screen stability", fingerprint.name());
+             FlightEvents.Scope event = FlightEvents.await("screen stability", fingerprint.name())) {
+            result = awaitStable(driver, fingerprint,
+                    PropertyManager.getIntProperty("mobile.stability.requiredMatches", 2),
+                    PropertyManager.getIntProperty("mobile.stability.minIntervalMs", 100),
+                    PropertyManager.getIntProperty("mobile.stability.maxIntervalMs", 1000),
+                    PropertyManager.getIntProperty("mobile.stability.timeoutMs", 10000));
+            event.setResult(result.isStable() ? "stable" : "timeout");
+        }
+        CommandMetrics.recordWait("screen stability", System.nanoTime() - start, !result.isStable());
+        return result;
+    }
+
+    /**
+     * Waits for the screen to settle.
+     * The sampling interval starts at the minimum and doubles while the screen keeps
+     * changing, so long animations are not hammered with driver round trips.
+     *
+     * @param driver The driver to sample
+     * @param fingerprint The fingerprint strategy
+     * @param requiredMatches Consecutive matching samples needed to report stable
+     * @param minIntervalMs Initial sampling interval in milliseconds
+     * @param maxIntervalMs Upper bound for the sampling interval in milliseconds
+     * @param timeoutMs Maximum time to wait in milliseconds
+     * @return The stability result; not stable if the timeout was reached
+     */
+    public static Result awaitStable(WebDriver driver, Fingerprint fingerprint, int requiredMatches,
+                                     int minIntervalMs, int maxIntervalMs, int timeoutMs) {
+        if (driver == null) {
+            return new Result(false, 0, 0);
+        }
+
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMs;
+        long interval = Math.max(1, minIntervalMs);
+        int samples = 0;
+        int matches = 0;
+
+        Long previous = sample(driver, fingerprint);
+        samples++;
+
+        while (System.currentTimeMillis() < deadline) {
+            sleep(Math.min(interval, Math.max(0, deadline - System.currentTimeMillis())));
+
+            Long current = sample(driver, fingerprint);
+            samples++;
+
+            if (current != null && current.equals(previous)) {
+                matches++;
+                if (matches >= requiredMatches) {
+                    long elapsed = System.currentTimeMillis() - start;
+                    LOGGER.debug("Screen stable after {} ms ({} samples)", elapsed, samples);
+                    return new Result(true, samples, elapsed);
+                }
+            } else {
+                matches = 0;
+                interval = Math.min(maxIntervalMs, interval * 2);
+            }
+            previous = current;
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        LOGGER.warn("Screen did not stabilize within {} ms ({} samples)", elapsed, samples);
+        return new Result(false, samples, elapsed);
+    }
+
+    /**
+     * Takes one fingerprint sample of the current screen.
+     *
+     * @param driver The driver to sample
+     * @param fingerprint The fingerprint strategy
+     * @return The fingerprint, or null if the sample could not be taken
+     */
+    private static Long sample(WebDriver driver, Fingerprint fingerprint) {
+        try {
+            CRC32 crc = new CRC32();
+            if (fingerprint == Fingerprint.SCREENSHOT && driver instanceof TakesScreenshot) {
+                byte[] png = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+                updateWithDownscaledImage(crc, png);
+            } else {
+                String source = driver.getPageSource();
+                if (source == null) {
+                    return null;
+                }
+                crc.update(source.getBytes(StandardCharsets.UTF_8));
+            }
+            return crc.getValue();
+        } catch (Exception e) {
+            LOGGER.debug("Failed to sample screen fingerprint: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Feeds a coarse grid of quantized pixels into the checksum.
+     * Quantizing drops the low bits of each channel so compression noise and
+     * blinking cursors do not keep the screen from ever looking stable.
+     */
+    private static void updateWithDownscaledImage(CRC32 crc, byte[] png) throws java.io.IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null) {
+            crc.update(png);
+            return;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int gy = 0; gy < SCREENSHOT_GRID; gy++) {
+            int y = (int) ((gy + 0.5) * height / SCREENSHOT_GRID);
+            for (int gx = 0; gx < SCREENSHOT_GRID; gx++) {
+                int x = (int) ((gx + 0.5) * width / SCREENSHOT_GRID);
+                int rgb = image.getRGB(x, y) & 0xF0F0F0;
+                crc.update(rgb >> 16);
+                crc.update(rgb >> 8);
+                crc.update(rgb);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
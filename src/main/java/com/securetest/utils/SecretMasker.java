@@ -0,0 +1,381 @@
+package com.securetest.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Masks secrets inside log messages in place, with the same masking as
+ * {@link EncryptionUtil#maskSensitiveValue(String)}. Two kinds of secrets are masked:
+ * <ul>
+ *   <li>values assigned to a sensitive keyword, e.g. {@code password=...} or
+ *       {@code "apiKey": "..."}, whatever the value is;</li>
+ *   <li>values registered with {@link #register(String)}, such as the credentials held by
+ *       {@link SensitiveDataManager}, wherever they appear.</li>
+ * </ul>
+ * Both are found with Aho-Corasick automata compiled to transition tables, so a message
+ * is scanned once per automaton without backtracking or allocation, however many
+ * keywords and secrets there are. Messages that only mention a keyword, such as
+ * "Password field displayed", are logged unchanged.
+ */
+public class SecretMasker {
+    /**
+     * Keywords masked when a converter does not configure its own.
+     */
+    public static final List<String> DEFAULT_KEYWORDS = Arrays.asList(
+            "password", "passwd", "credential", "apikey", "api_key", "api-key", "token", "secret", "authorization");
+
+    // Shorter registered values, like a one-letter test user, would mask ordinary text
+    static final int MIN_REGISTERED_LENGTH = 4;
+
+    // Registered secrets with the number of registrations still holding each one
+    private static final Map<String, Integer> registeredValues = new LinkedHashMap<>();
+    private static volatile Automaton registered = Automaton.compile(new ArrayList<String>(), false);
+
+    private final Automaton keywords;
+
+    /**
+     * Creates a masker for values assigned to the given keywords.
+     *
+     * @param keywords The keywords, matched case-insensitively and also as the start of a longer word
+     */
+    public SecretMasker(Collection<String> keywords) {
+        this.keywords = Automaton.compile(keywords, true);
+    }
+
+    /**
+     * Registers a secret to be masked wherever it appears in a log message.
+     * A secret registered more than once stays masked until each registration is undone.
+     *
+     * @param secret The secret value; values shorter than four characters are ignored
+     */
+    public static synchronized void register(String secret) {
+        if (secret == null || secret.length() < MIN_REGISTERED_LENGTH) {
+            return;
+        }
+        Integer count = registeredValues.get(secret);
+        registeredValues.put(secret, count == null ? 1 : count + 1);
+        if (count == null) {
+            registered = Automaton.compile(registeredValues.keySet(), false);
+        }
+    }
+
+    /**
+     * Undoes one registration of a secret, e.g. when a scenario that stored it ends.
+     *
+     * @param secret The secret value
+     */
+    public static synchronized void unregister(String secret) {
+        Integer count = secret != null ? registeredValues.get(secret) : null;
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            registeredValues.put(secret, count - 1);
+            return;
+        }
+        registeredValues.remove(secret);
+        registered = Automaton.compile(registeredValues.keySet(), false);
+    }
+
+    /**
+     * Forgets all registered secrets, e.g. once the credentials of a run are cleared.
+     */
+    public static synchronized void clearRegistered() {
+        registeredValues.clear();
+        registered = Automaton.compile(registeredValues.keySet(), false);
+    }
+
+    /**
+     * Masks the secrets in the end of a buffer, typically the message just appended by a layout.
+     *
+     * @param buffer The buffer to mask in place
+     * @param from The index at which the message starts
+     */
+    public void mask(StringBuilder buffer, int from) {
+        maskRegistered(buffer, from);
+        maskAssignments(buffer, from);
+    }
+
+    private static void maskRegistered(StringBuilder buffer, int from) {
+        Automaton automaton = registered;
+        if (automaton.isEmpty()) {
+            return;
+        }
+        int state = 0;
+        for (int i = from; i < buffer.length(); i++) {
+            state = automaton.next(state, buffer.charAt(i));
+            int length = automaton.longestMatch(state);
+            if (length > 0) {
+                // The state follows the original text, so a longer secret ending later is still found
+                EncryptionUtil.maskSensitiveValue(buffer, i + 1 - length, i + 1);
+            }
+        }
+    }
+
+    private void maskAssignments(StringBuilder buffer, int from) {
+        int state = 0;
+        int length = buffer.length();
+        for (int i = from; i < length; i++) {
+            state = keywords.next(state, buffer.charAt(i));
+            if (keywords.longestMatch(state) == 0) {
+                continue;
+            }
+            int end = maskAssignedValue(buffer, i + 1);
+            if (end > i + 1) {
+                i = end - 1;
+                state = 0;
+            }
+        }
+    }
+
+    /**
+     * Masks the value assigned after a keyword, e.g. the {@code abc} of
+     * {@code password: abc} or {@code "apiKey":"abc"}.
+     *
+     * @return The index after the masked value, or the start index if nothing was assigned
+     */
+    private static int maskAssignedValue(StringBuilder buffer, int start) {
+        int length = buffer.length();
+        int position = start;
+        while (position < length && isWordChar(buffer.charAt(position))) {
+            position++;
+        }
+        position = skipSpacesAndQuotes(buffer, position);
+        if (position >= length || (buffer.charAt(position) != ':' && buffer.charAt(position) != '=')) {
+            return start;
+        }
+        int valueStart = skipSpacesAndQuotes(buffer, position + 1);
+        int valueEnd = valueEnd(buffer, valueStart);
+        // In "Authorization: Bearer abc" the credential follows the scheme
+        if (isAuthScheme(buffer, valueStart, valueEnd)) {
+            valueStart = skipSpacesAndQuotes(buffer, valueEnd);
+            valueEnd = valueEnd(buffer, valueStart);
+        }
+        // Empty, or a placeholder such as [SECURED] that is masked already
+        if (valueEnd == valueStart || buffer.charAt(valueStart) == '[') {
+            return start;
+        }
+        EncryptionUtil.maskSensitiveValue(buffer, valueStart, valueEnd);
+        return valueEnd;
+    }
+
+    private static int valueEnd(StringBuilder buffer, int start) {
+        int end = start;
+        while (end < buffer.length() && !isValueEnd(buffer.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isAuthScheme(StringBuilder buffer, int start, int end) {
+        return regionEqualsIgnoreCase(buffer, start, end, "bearer") || regionEqualsIgnoreCase(buffer, start, end, "basic");
+    }
+
+    private static boolean regionEqualsIgnoreCase(StringBuilder buffer, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(buffer.charAt(start + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpacesAndQuotes(StringBuilder buffer, int position) {
+        while (position < buffer.length()) {
+            char c = buffer.charAt(position);
+            if (c != ' ' && c != '\t' && c != '"' && c != '\'') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+
+    private static boolean isValueEnd(char c) {
+        return Character.isWhitespace(c) || c == '"' || c == '\'' || c == ',' || c == ';' || c == '&'
+                || c == ')' || c == ']' || c == '}' || c == '<';
+    }
+
+    /**
+     * An Aho-Corasick automaton compiled to a dense transition table over the characters
+     * that occur in its patterns. Any other character leads back to the root.
+     */
+    static final class Automaton {
+        private static final int ASCII = 128;
+
+        // Column of each ASCII character in the table, -1 if it occurs in no pattern
+        private final int[] asciiColumns;
+        // Other characters of the patterns, sorted, with their columns
+        private final char[] otherChars;
+        private final int[] otherColumns;
+        private final int width;
+        // transitions[state * width + column] is the next state
+        private final int[] transitions;
+        // Length of the longest pattern ending in each state, 0 if none
+        private final int[] longest;
+        private final boolean ignoreCase;
+
+        private Automaton(int[] asciiColumns, char[] otherChars, int[] otherColumns, int width,
+                          int[] transitions, int[] longest, boolean ignoreCase) {
+            this.asciiColumns = asciiColumns;
+            this.otherChars = otherChars;
+            this.otherColumns = otherColumns;
+            this.width = width;
+            this.transitions = transitions;
+            this.longest = longest;
+            this.ignoreCase = ignoreCase;
+        }
+
+        /**
+         * Builds the automaton. Only this step allocates; matching never does.
+         *
+         * @param patterns The patterns, empty ones are ignored
+         * @param ignoreCase Whether letters match regardless of case
+         * @return The automaton
+         */
+        static Automaton compile(Collection<String> patterns, boolean ignoreCase) {
+            int[] asciiColumns = new int[ASCII];
+            Arrays.fill(asciiColumns, -1);
+            StringBuilder others = new StringBuilder();
+            int width = 0;
+            for (String pattern : patterns) {
+                for (char c : fold(pattern, ignoreCase).toCharArray()) {
+                    if (c < ASCII) {
+                        if (asciiColumns[c] < 0) {
+                            asciiColumns[c] = width++;
+                        }
+                    } else if (others.indexOf(String.valueOf(c)) < 0) {
+                        others.append(c);
+                    }
+                }
+            }
+            char[] otherChars = others.toString().toCharArray();
+            Arrays.sort(otherChars);
+            int[] otherColumns = new int[otherChars.length];
+            for (int i = 0; i < otherChars.length; i++) {
+                otherColumns[i] = width++;
+            }
+
+            // Trie of the patterns; -1 marks a missing edge until failure links fill it in
+            List<int[]> rows = new ArrayList<>();
+            List<Integer> lengths = new ArrayList<>();
+            rows.add(newRow(width));
+            lengths.add(0);
+            Automaton columns = new Automaton(asciiColumns, otherChars, otherColumns, width, null, null, ignoreCase);
+            for (String pattern : patterns) {
+                String folded = fold(pattern, ignoreCase);
+                if (folded.isEmpty()) {
+                    continue;
+                }
+                int state = 0;
+                for (char c : folded.toCharArray()) {
+                    int column = columns.columnOf(c);
+                    if (rows.get(state)[column] < 0) {
+                        rows.get(state)[column] = rows.size();
+                        rows.add(newRow(width));
+                        lengths.add(0);
+                    }
+                    state = rows.get(state)[column];
+                }
+                lengths.set(state, folded.length());
+            }
+
+            // Breadth-first, so a state's failure state is complete before the state itself
+            int states = rows.size();
+            int[] transitions = new int[Math.max(1, states * width)];
+            int[] longest = new int[states];
+            int[] failure = new int[states];
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int column = 0; column < width; column++) {
+                int child = rows.get(0)[column];
+                transitions[column] = Math.max(child, 0);
+                if (child > 0) {
+                    failure[child] = 0;
+                    queue.add(child);
+                }
+            }
+            longest[0] = lengths.get(0);
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                longest[state] = Math.max(lengths.get(state), longest[failure[state]]);
+                for (int column = 0; column < width; column++) {
+                    int child = rows.get(state)[column];
+                    int fallback = transitions[failure[state] * width + column];
+                    if (child < 0) {
+                        transitions[state * width + column] = fallback;
+                    } else {
+                        transitions[state * width + column] = child;
+                        failure[child] = fallback;
+                        queue.add(child);
+                    }
+                }
+            }
+            return new Automaton(asciiColumns, otherChars, otherColumns, width, transitions, longest, ignoreCase);
+        }
+
+        boolean isEmpty() {
+            return longest.length == 1;
+        }
+
+        /**
+         * Follows the transition for one character of the text.
+         */
+        int next(int state, char c) {
+            int column;
+            if (c < ASCII) {
+                column = asciiColumns[ignoreCase && c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c];
+            } else {
+                column = columnOf(ignoreCase ? Character.toLowerCase(c) : c);
+            }
+            return column < 0 ? 0 : transitions[state * width + column];
+        }
+
+        /**
+         * Gets the length of the longest pattern that ends in a state.
+         */
+        int longestMatch(int state) {
+            return longest[state];
+        }
+
+        private int columnOf(char c) {
+            if (c < ASCII) {
+                return asciiColumns[c];
+            }
+            int index = Arrays.binarySearch(otherChars, c);
+            return index < 0 ? -1 : otherColumns[index];
+        }
+
+        private static int[] newRow(int width) {
+            int[] row = new int[width];
+            Arrays.fill(row, -1);
+            return row;
+        }
+
+        private static String fold(String pattern, boolean ignoreCase) {
+            if (pattern == null) {
+                return "";
+            }
+            if (!ignoreCase) {
+                return pattern;
+            }
+            StringBuilder folded = new StringBuilder(pattern.length());
+            for (int i = 0; i < pattern.length(); i++) {
+                folded.append(Character.toLowerCase(pattern.charAt(i)));
+            }
+            return folded.toString();
+        }
+    }
+}
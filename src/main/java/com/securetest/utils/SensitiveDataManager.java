@@ -1,10 +1,15 @@
 package com.securetest.utils;
 
+import com.securetest.capabilities.CapabilityRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages sensitive data securely in memory.
@@ -12,7 +17,10 @@ import java.util.Map;
  */
 public class SensitiveDataManager {
     private static final Logger LOGGER = LogManager.getLogger(SensitiveDataManager.class);
-    private static final Map<String, String> encryptedData = new HashMap<>();
+    // Concurrent map so parallel test workers can read and store values safely
+    private static final Map<String, String> encryptedData = new ConcurrentHashMap<>();
+    // Values stored while a scenario scope is open stay private to that scenario's thread
+    private static final ThreadLocal<Map<String, String>> scenarioData = new ThreadLocal<>();
     
     // Define keys for sensitive data
     public static final String USERNAME = "username";
@@ -21,6 +29,11 @@ public class SensitiveDataManager {
     public static final String USER_ID = "userId";
     public static final String PHONE_NUMBER = "phoneNumber";
     public static final String DEVICE_NAME = "deviceName";
+    public static final String OTP_SEED = "otpSeed";
+    
+    // Only these values are registered with SecretMasker; device names and one-time codes
+    // are not worth masking and would otherwise pile up in the masker for the whole run
+    private static final Set<String> MASKED_KEYS = new HashSet<>(Arrays.asList(USERNAME, PASSWORD, API_KEY, OTP_SEED));
     
     private SensitiveDataManager() {
         // Private constructor to prevent instantiation
@@ -42,6 +55,7 @@ public class SensitiveDataManager {
         String userId = CommandLineParser.getOptionValue("id");
         String phoneNumber = CommandLineParser.getOptionValue("phone");
         String deviceName = CommandLineParser.getOptionValue("device");
+        String otpSeed = CommandLineParser.getOptionValue("otp");
         
         // Store pre-encrypted values directly
         if (encryptedUsername != null) {
@@ -63,16 +77,47 @@ public class SensitiveDataManager {
         storeSecurely(USER_ID, userId);
         storeSecurely(PHONE_NUMBER, phoneNumber);
         storeSecurely(DEVICE_NAME, deviceName);
+        storeSecurely(OTP_SEED, otpSeed);
         
         // Log success without revealing actual values
         LOGGER.info("Sensitive data initialized successfully from command line");
         if (encryptedUsername != null) LOGGER.info("✓ Username provided");
         if (encryptedPassword != null) LOGGER.info("✓ Password provided");
         if (encryptedApiKey != null) LOGGER.info("✓ API key provided");
+        if (otpSeed != null) LOGGER.info("✓ Authenticator seed provided");
+    }
+    
+    /**
+     * Opens a data scope for the scenario running on the current thread.
+     * Until the scope is closed, stored values are only visible to this thread
+     * and shadow the shared values, so concurrent scenarios cannot see each
+     * other's OTPs or overrides.
+     */
+    public static void beginScenarioScope() {
+        scenarioData.set(new HashMap<String, String>());
+        LOGGER.debug("Opened scenario data scope");
+    }
+    
+    /**
+     * Closes the scenario scope of the current thread and discards its values,
+     * including their registrations with {@link SecretMasker}.
+     */
+    public static void endScenarioScope() {
+        Map<String, String> scoped = scenarioData.get();
+        if (scoped != null) {
+            for (Map.Entry<String, String> entry : scoped.entrySet()) {
+                unregisterMasked(entry.getKey(), entry.getValue());
+            }
+            scoped.clear();
+            scenarioData.remove();
+            LOGGER.debug("Closed scenario data scope");
+        }
     }
     
     /**
      * Stores a value securely by encrypting it first.
+     * Inside a scenario scope the value is only visible to the current scenario.
+     * Credentials and the authenticator seed are also masked in log output.
      * 
      * @param key The key to store the value under
      * @param value The sensitive value to encrypt and store
@@ -84,7 +129,12 @@ public class SensitiveDataManager {
         
         String encrypted = EncryptionUtil.encrypt(value);
         if (encrypted != null) {
-            encryptedData.put(key, encrypted);
+            if (MASKED_KEYS.contains(key)) {
+                SecretMasker.register(value);
+            }
+            Map<String, String> scoped = scenarioData.get();
+            String previous = (scoped != null ? scoped : encryptedData).put(key, encrypted);
+            unregisterMasked(key, previous);
             LOGGER.debug("Stored encrypted value for key: {}", key);
         } else {
             LOGGER.error("Failed to encrypt value for key: {}", key);
@@ -98,12 +148,17 @@ public class SensitiveDataManager {
      * @return The decrypted value or null if not found
      */
     public static String getSecureValue(String key) {
-        String encrypted = encryptedData.get(key);
-        if (encrypted == null) {
-            return null;
+        try (FlightEvents.Scope event = FlightEvents.secureDataRead(key)) {
+            Map<String, String> scoped = scenarioData.get();
+            String encrypted = scoped != null && scoped.containsKey(key) ? scoped.get(key) : encryptedData.get(key);
+            if (encrypted == null) {
+                event.setResult("missing");
+                return null;
+            }
+
+            event.setResult("found");
+            return EncryptionUtil.decrypt(encrypted);
         }
-        
-        return EncryptionUtil.decrypt(encrypted);
     }
     
     /**
@@ -113,7 +168,8 @@ public class SensitiveDataManager {
      * @return true if a value exists, false otherwise
      */
     public static boolean hasSecureValue(String key) {
-        return encryptedData.containsKey(key);
+        Map<String, String> scoped = scenarioData.get();
+        return (scoped != null && scoped.containsKey(key)) || encryptedData.containsKey(key);
     }
     
     /**
@@ -122,16 +178,33 @@ public class SensitiveDataManager {
      * @param key The key to remove
      */
     public static void removeSecureValue(String key) {
-        encryptedData.remove(key);
+        Map<String, String> scoped = scenarioData.get();
+        String previous = (scoped != null ? scoped : encryptedData).remove(key);
+        unregisterMasked(key, previous);
         LOGGER.debug("Removed secure value for key: {}", key);
     }
     
+    /**
+     * Undoes the masking registration of a stored value that is replaced or discarded.
+     * 
+     * @param key The key the value was stored under
+     * @param encrypted The encrypted value, or null if there was none
+     */
+    private static void unregisterMasked(String key, String encrypted) {
+        if (encrypted != null && MASKED_KEYS.contains(key)) {
+            SecretMasker.unregister(EncryptionUtil.decrypt(encrypted));
+        }
+    }
+    
     /**
      * Clears all sensitive data from memory.
      * Should be called at the end of test execution.
      */
     public static void clearAllSecureData() {
         encryptedData.clear();
+        SecretMasker.clearRegistered();
+        TotpGenerator.clearCache();
+        CapabilityRegistry.clearSecureState();
         LOGGER.info("All secure data cleared from memory");
     }
     
@@ -189,6 +262,15 @@ public class SensitiveDataManager {
         return getSecureValue(DEVICE_NAME);
     }
     
+    /**
+     * Gets the securely stored authenticator (TOTP) seed.
+     * 
+     * @return The decrypted Base32 seed, or null if the account is not enrolled
+     */
+    public static String getOtpSeed() {
+        return getSecureValue(OTP_SEED);
+    }
+    
     /**
      * Generic method to get secure data by key.
      * This is the main method used by test classes to retrieve sensitive data.
@@ -0,0 +1,314 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Caches authenticated browser sessions so scenarios that only need a logged-in
+ * user can skip the username, password and OTP flow.
+ * <p>
+ * After one real login, the cookies and local/session storage of the portal are
+ * captured, encrypted with {@link EncryptionUtil} and kept in memory, keyed by a
+ * digest of the account and the environment. Later callers inject the snapshot
+ * into their own driver. Snapshots expire after {@code session.cache.ttlSeconds}
+ * and are dropped as soon as the portal rejects one.
+ */
+public class SessionSnapshotCache {
+    private static final Logger LOGGER = LogManager.getLogger(SessionSnapshotCache.class);
+
+    private static final String READ_STORAGE_SCRIPT =
+            "var s = window[arguments[0]], r = {};"
+            + "for (var i = 0; i < s.length; i++) { var k = s.key(i); r[k] = s.getItem(k); }"
+            + "return JSON.stringify(r);";
+    private static final String WRITE_STORAGE_SCRIPT =
+            "var s = window[arguments[0]], d = JSON.parse(arguments[1]);"
+            + "for (var k in d) { s.setItem(k, d[k]); }";
+
+    private static final Map<String, CachedSnapshot> snapshots = new ConcurrentHashMap<>();
+    // One lock per cache key, so only one scenario logs in while the others wait for its snapshot
+    private static final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * An encrypted snapshot together with its capture time.
+     */
+    private static class CachedSnapshot {
+        private final String encryptedState;
+        private final long capturedAt;
+
+        CachedSnapshot(String encryptedState, long capturedAt) {
+            this.encryptedState = encryptedState;
+            this.capturedAt = capturedAt;
+        }
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - capturedAt > ttlMillis;
+        }
+    }
+
+    private SessionSnapshotCache() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Brings the driver into an authenticated state for an account, restoring a
+     * cached session when possible and otherwise running the real login flow.
+     * Concurrent callers for the same account wait for the first login instead
+     * of all authenticating at once, which would also burn the same OTP window.
+     *
+     * @param driver The driver to authenticate
+     * @param account The account identifier, e.g. the username
+     * @param portalUrl The portal URL the session belongs to
+     * @param landingUrl The page to open after restoring a session
+     * @param login Performs the full login flow on the driver
+     * @param isAuthenticated Checks whether the driver shows an authenticated page
+     * @return true if a cached session was reused, false if the login flow ran
+     */
+    public static boolean authenticate(WebDriver driver, String account, String portalUrl, String landingUrl,
+                                       Runnable login, Predicate<WebDriver> isAuthenticated) {
+        String key = cacheKey(account);
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            if (isEnabled() && restore(driver, key, portalUrl, landingUrl)) {
+                if (isAuthenticated.test(driver)) {
+                    LOGGER.info("Reused cached session, skipping login");
+                    return true;
+                }
+                LOGGER.warn("Cached session was rejected by the portal, logging in again");
+                snapshots.remove(key);
+                clearBrowserState(driver, portalUrl);
+                driver.get(portalUrl);
+            }
+
+            login.run();
+            if (isEnabled()) {
+                capture(driver, key);
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the cached session of an account, e.g. after it has been logged out.
+     *
+     * @param account The account identifier
+     */
+    public static void invalidate(String account) {
+        if (snapshots.remove(cacheKey(account)) != null) {
+            LOGGER.info("Invalidated cached session");
+        }
+    }
+
+    /**
+     * Removes all cached sessions from memory.
+     * Should be called together with {@link SensitiveDataManager#clearAllSecureData()}.
+     */
+    public static void clear() {
+        snapshots.clear();
+    }
+
+    private static void capture(WebDriver driver, String key) {
+        try {
+            JSONArray cookies = new JSONArray();
+            for (Cookie cookie : driver.manage().getCookies()) {
+                JSONObject json = new JSONObject();
+                json.put("name", cookie.getName());
+                json.put("value", cookie.getValue());
+                json.put("path", cookie.getPath());
+                json.put("secure", cookie.isSecure());
+                json.put("httpOnly", cookie.isHttpOnly());
+                if (cookie.getDomain() != null) {
+                    json.put("domain", cookie.getDomain());
+                }
+                if (cookie.getExpiry() != null) {
+                    json.put("expiry", cookie.getExpiry().getTime());
+                }
+                cookies.put(json);
+            }
+
+            JSONObject state = new JSONObject();
+            state.put("cookies", cookies);
+            state.put("localStorage", readStorage(driver, "localStorage"));
+            state.put("sessionStorage", readStorage(driver, "sessionStorage"));
+
+            String encrypted = EncryptionUtil.encrypt(state.toString());
+            if (encrypted == null) {
+                LOGGER.warn("Failed to encrypt session snapshot, not caching it");
+                return;
+            }
+            snapshots.put(key, new CachedSnapshot(encrypted, System.currentTimeMillis()));
+            LOGGER.info("Cached authenticated session with {} cookie(s)", cookies.length());
+        } catch (Exception e) {
+            LOGGER.warn("Failed to capture session snapshot: {}", e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("try")
+    private static boolean restore(WebDriver driver, String key, String portalUrl, String landingUrl) {
+        CachedSnapshot snapshot = snapshots.get(key);
+        if (snapshot == null) {
+            return false;
+        }
+        if (snapshot.isExpired(getTtlMillis())) {
+            LOGGER.info("Cached session expired, logging in again");
+            snapshots.remove(key);
+            return false;
+        }
+
+        String decrypted = EncryptionUtil.decrypt(snapshot.encryptedState);
+        if (decrypted == null) {
+            snapshots.remove(key);
+            return false;
+        }
+
+        try (TraceRecorder.Span span = TraceRecorder.begin("navigation", "restore session", landingUrl)) {
+            JSONObject state = new JSONObject(decrypted);
+
+            // Cookies and storage can only be set for the origin that is currently open
+            if (!isSameOrigin(portalUrl, driver.getCurrentUrl())) {
+                driver.get(portalUrl);
+            }
+            JSONArray cookies = state.getJSONArray("cookies");
+            for (int i = 0; i < cookies.length(); i++) {
+                JSONObject json = cookies.getJSONObject(i);
+                driver.manage().addCookie(new Cookie(json.getString("name"), json.getString("value"),
+                        json.optString("domain", null), json.optString("path", "/"),
+                        json.has("expiry") ? new Date(json.getLong("expiry")) : null,
+                        json.optBoolean("secure"), json.optBoolean("httpOnly")));
+            }
+            writeStorage(driver, "localStorage", state.getJSONObject("localStorage"));
+            writeStorage(driver, "sessionStorage", state.getJSONObject("sessionStorage"));
+
+            driver.get(landingUrl);
+            return true;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to restore session snapshot: {}", e.getMessage());
+            snapshots.remove(key);
+            return false;
+        }
+    }
+
+    private static JSONObject readStorage(WebDriver driver, String storage) {
+        Object json = ((JavascriptExecutor) driver).executeScript(READ_STORAGE_SCRIPT, storage);
+        return json == null ? new JSONObject() : new JSONObject(json.toString());
+    }
+
+    private static void writeStorage(WebDriver driver, String storage, JSONObject values) {
+        if (values.length() > 0) {
+            ((JavascriptExecutor) driver).executeScript(WRITE_STORAGE_SCRIPT, storage, values.toString());
+        }
+    }
+
+    /**
+     * Removes cookies and web storage of the currently open origin and of the portal.
+     * WebDriver only reaches the cookies and storage of the open origin, so the
+     * portal is opened first when another page, e.g. about:blank, is showing.
+     *
+     * @param driver The driver to reset
+     * @param portalUrl The portal URL whose session must not leak, may be null
+     */
+    static void clearBrowserState(WebDriver driver, String portalUrl) {
+        String currentUrl = driver.getCurrentUrl();
+        if (isWebOrigin(currentUrl)) {
+            clearOpenOrigin(driver);
+        }
+        if (portalUrl != null && !portalUrl.isEmpty() && !isSameOrigin(portalUrl, currentUrl)) {
+            driver.get(originOf(portalUrl));
+            clearOpenOrigin(driver);
+        }
+    }
+
+    private static void clearOpenOrigin(WebDriver driver) {
+        driver.manage().deleteAllCookies();
+        try {
+            ((JavascriptExecutor) driver).executeScript("window.localStorage.clear(); window.sessionStorage.clear();");
+        } catch (Exception e) {
+            // Pages such as error pages may have no web storage
+            LOGGER.debug("Could not clear web storage: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Checks whether two URLs share scheme, host and port, e.g. the portal root and a page below it.
+     *
+     * @param first The first URL
+     * @param second The second URL
+     * @return true if both URLs have the same origin, false otherwise or if either is not a web URL
+     */
+    static boolean isSameOrigin(String first, String second) {
+        String origin = originOf(first);
+        return origin != null && origin.equals(originOf(second));
+    }
+
+    private static boolean isWebOrigin(String url) {
+        return originOf(url) != null;
+    }
+
+    /**
+     * Gets the origin of an http or https URL as scheme://host:port/, with the default port filled in.
+     *
+     * @param url The URL
+     * @return The origin, or null for other URLs such as about:blank or data:
+     */
+    static String originOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url.trim());
+            String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+            if ((!"http".equals(scheme) && !"https".equals(scheme)) || uri.getHost() == null) {
+                return null;
+            }
+            int port = uri.getPort() >= 0 ? uri.getPort() : ("https".equals(scheme) ? 443 : 80);
+            return scheme + "://" + uri.getHost().toLowerCase(Locale.ROOT) + ":" + port + "/";
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean isEnabled() {
+        return PropertyManager.getBooleanProperty("session.cache.enabled", true);
+    }
+
+    private static long getTtlMillis() {
+        return PropertyManager.getIntProperty("session.cache.ttlSeconds", 600) * 1000L;
+    }
+
+    /**
+     * Builds the cache key from the environment and a digest of the account,
+     * so account names never appear in memory dumps of the cache.
+     */
+    private static String cacheKey(String account) {
+        String environment = PropertyManager.getProperty("environment", "default");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.valueOf(account).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return environment + ":" + hex;
+        } catch (Exception e) {
+            LOGGER.error("Failed to derive session cache key: {}", e.getMessage());
+            throw new RuntimeException("Failed to derive session cache key", e);
+        }
+    }
+}
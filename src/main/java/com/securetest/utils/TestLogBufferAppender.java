@@ -0,0 +1,168 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.pattern.PatternFormatter;
+import org.apache.logging.log4j.core.pattern.PatternParser;
+
+import java.util.List;
+
+/**
+ * Log4j appender that keeps the most recent lines of the running test in memory, so
+ * debug detail can go into the report of a failed test instead of a shared log file.
+ * <p>
+ * A test is marked with {@link #startTest(String)}, which puts its id into the
+ * {@code testId} ThreadContext key. Every event logged on that thread is formatted into
+ * a ring of {@code lines} line buffers, allocated once per thread and reused, so a
+ * passing test costs no I/O and no garbage. {@link #finishTest(boolean)} returns the
+ * lines of a failed test and discards those of any other. Events without a test id,
+ * e.g. from the runner or background threads, are ignored.
+ * <p>
+ * Loggers must be synchronous, as each test's lines are held by the thread that logs them.
+ */
+@Plugin(name = "TestLogBuffer", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public final class TestLogBufferAppender extends AbstractAppender {
+    /**
+     * ThreadContext key holding the id of the test running on a thread.
+     */
+    public static final String TEST_ID = "testId";
+    private static final String DEFAULT_PATTERN = "%d{HH:mm:ss.SSS} %-5level %logger{36} - %maskedMsg%n%maskedEx";
+
+    private static final ThreadLocal<Ring> rings = new ThreadLocal<>();
+    private static volatile int capacity = 2000;
+
+    private final PatternFormatter[] formatters;
+
+    private TestLogBufferAppender(String name, Filter filter, PatternFormatter[] formatters) {
+        super(name, filter, null, true, Property.EMPTY_ARRAY);
+        this.formatters = formatters;
+    }
+
+    /**
+     * Creates the appender from its {@code <TestLogBuffer>} element.
+     *
+     * @param name The appender name
+     * @param lines The number of lines kept per test; older lines are overwritten
+     * @param pattern The layout pattern of each line
+     * @param filter An optional filter, e.g. a ThresholdFilter
+     * @param config The logging configuration
+     * @return The appender
+     */
+    @PluginFactory
+    public static TestLogBufferAppender createAppender(@PluginAttribute("name") String name,
+                                                       @PluginAttribute(value = "lines", defaultInt = 2000) int lines,
+                                                       @PluginAttribute(value = "pattern", defaultString = DEFAULT_PATTERN) String pattern,
+                                                       @PluginElement("Filter") Filter filter,
+                                                       @PluginConfiguration Configuration config) {
+        capacity = Math.max(1, lines);
+        PatternParser parser = PatternLayout.createPatternParser(config);
+        List<PatternFormatter> formatters = parser.parse(pattern, true, true, true);
+        return new TestLogBufferAppender(name != null ? name : "TestLogBuffer",
+                filter, formatters.toArray(new PatternFormatter[0]));
+    }
+
+    /**
+     * Marks the current thread as running a test and starts an empty buffer for it.
+     *
+     * @param testId The id of the test, also shown by {@code %X{testId}} in other layouts
+     */
+    public static void startTest(String testId) {
+        ThreadContext.put(TEST_ID, testId);
+        Ring ring = rings.get();
+        if (ring != null) {
+            ring.reset(testId);
+        }
+    }
+
+    /**
+     * Ends the test running on the current thread.
+     *
+     * @param keep true to return the buffered lines, e.g. because the test failed
+     * @return The lines logged during the test, oldest first, or null if they were discarded or none were logged
+     */
+    public static String finishTest(boolean keep) {
+        String testId = ThreadContext.get(TEST_ID);
+        ThreadContext.remove(TEST_ID);
+        Ring ring = rings.get();
+        if (ring == null || testId == null || !testId.equals(ring.testId)) {
+            return null;
+        }
+        String lines = keep ? ring.toText() : null;
+        ring.reset(null);
+        return lines;
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        String testId = event.getContextData().getValue(TEST_ID);
+        if (testId == null) {
+            return;
+        }
+        Ring ring = rings.get();
+        if (ring == null || ring.lines.length != capacity) {
+            ring = new Ring(capacity);
+            rings.set(ring);
+        }
+        if (!testId.equals(ring.testId)) {
+            ring.reset(testId);
+        }
+        StringBuilder line = ring.next();
+        for (PatternFormatter formatter : formatters) {
+            formatter.format(event, line);
+        }
+    }
+
+    /**
+     * The line buffers of one thread, overwritten oldest first once all are used.
+     */
+    private static final class Ring {
+        private final StringBuilder[] lines;
+        private String testId;
+        private long written;
+
+        Ring(int capacity) {
+            lines = new StringBuilder[capacity];
+            for (int i = 0; i < capacity; i++) {
+                lines[i] = new StringBuilder(128);
+            }
+        }
+
+        void reset(String id) {
+            testId = id;
+            written = 0;
+        }
+
+        StringBuilder next() {
+            StringBuilder line = lines[(int) (written++ % lines.length)];
+            line.setLength(0);
+            return line;
+        }
+
+        String toText() {
+            if (written == 0) {
+                return null;
+            }
+            StringBuilder text = new StringBuilder();
+            long first = Math.max(0, written - lines.length);
+            if (first > 0) {
+                text.append("... ").append(first).append(" earlier line(s) dropped\n");
+            }
+            for (long i = first; i < written; i++) {
+                text.append(lines[(int) (i % lines.length)]);
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process TOTP generator (RFC 6238, built on the RFC 4226 HOTP algorithm).
+ * Lets accounts enrolled with an authenticator seed produce OTP codes without
+ * any device automation. The seed itself is kept in {@link SensitiveDataManager}.
+ */
+public class TotpGenerator {
+    private static final Logger LOGGER = LogManager.getLogger(TotpGenerator.class);
+    private static final String BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+    private static final int[] DIGITS_POWER = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000};
+
+    // Initialized HMAC instances keyed by algorithm and seed. Each Mac already holds the
+    // decoded key, so the map keeps nothing the Mac does not; clearCache() drops both.
+    private static final Map<String, Mac> macCache = new ConcurrentHashMap<>();
+
+    private TotpGenerator() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Generates the TOTP code for the current time window using the seed
+     * stored in {@link SensitiveDataManager}.
+     *
+     * @return The OTP code, or null if no seed has been stored
+     */
+    public static String generateCurrentOtp() {
+        String seed = SensitiveDataManager.getOtpSeed();
+        if (seed == null) {
+            LOGGER.warn("No authenticator seed available in secure storage");
+            return null;
+        }
+
+        if (PropertyManager.getBooleanProperty("otp.totp.awaitNextWindow", true)) {
+            awaitNextWindowIfNearBoundary(PropertyManager.getIntProperty("otp.totp.minRemainingSeconds", 3));
+        }
+
+        String otp = generate(seed, System.currentTimeMillis());
+        LOGGER.info("Generated TOTP code: {}", EncryptionUtil.maskSensitiveValue(otp));
+        return otp;
+    }
+
+    /**
+     * Generates the TOTP code for the given point in time.
+     *
+     * @param base32Seed The Base32 encoded authenticator seed
+     * @param timeMillis The time to generate the code for, in epoch milliseconds
+     * @return The OTP code, zero padded to the configured number of digits
+     */
+    public static String generate(String base32Seed, long timeMillis) {
+        return generate(base32Seed, timeMillis,
+                PropertyManager.getProperty("otp.totp.algorithm", "HmacSHA1"), getDigits(), getPeriodSeconds());
+    }
+
+    /**
+     * Generates the TOTP code for the given point in time with explicit parameters
+     * instead of the configured ones.
+     *
+     * @param base32Seed The Base32 encoded authenticator seed
+     * @param timeMillis The time to generate the code for, in epoch milliseconds
+     * @param algorithm The HMAC algorithm, e.g. HmacSHA1, HmacSHA256 or HmacSHA512
+     * @param digits The number of digits, 6 to 8
+     * @param periodSeconds The length of a time window in seconds
+     * @return The OTP code, zero padded to the requested number of digits
+     */
+    public static String generate(String base32Seed, long timeMillis, String algorithm, int digits, int periodSeconds) {
+        if (digits < 6 || digits > 8) {
+            throw new IllegalArgumentException("TOTP digits must be between 6 and 8: " + digits);
+        }
+        long timeStep = (timeMillis / 1000L) / Math.max(1, periodSeconds);
+        return generateForCounter(base32Seed, timeStep, algorithm, digits);
+    }
+
+    /**
+     * Gets the number of seconds left before the current time window rolls over.
+     *
+     * @return Remaining seconds in the current window
+     */
+    public static int getSecondsRemainingInWindow() {
+        long periodMillis = getPeriodSeconds() * 1000L;
+        long elapsed = System.currentTimeMillis() % periodMillis;
+        return (int) ((periodMillis - elapsed) / 1000L);
+    }
+
+    /**
+     * Sleeps until the next time window starts when the current one is about to expire.
+     * Avoids submitting a code the portal rejects because it rolled over in transit.
+     *
+     * @param minRemainingSeconds Minimum seconds that must remain in the window
+     */
+    public static void awaitNextWindowIfNearBoundary(int minRemainingSeconds) {
+        long periodMillis = getPeriodSeconds() * 1000L;
+        long now = System.currentTimeMillis();
+        long remainingMillis = periodMillis - (now % periodMillis);
+
+        if (remainingMillis >= minRemainingSeconds * 1000L) {
+            return;
+        }
+
+        LOGGER.info("TOTP window closes in {} ms, waiting for the next window", remainingMillis);
+        try {
+            Thread.sleep(remainingMillis + 50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for the next TOTP window");
+        }
+    }
+
+    /**
+     * Clears all cached HMAC instances.
+     * Should be called together with {@link SensitiveDataManager#clearAllSecureData()}.
+     */
+    public static void clearCache() {
+        macCache.clear();
+    }
+
+    /**
+     * Generates the HOTP code for a given counter value (RFC 4226).
+     *
+     * @param base32Seed The Base32 encoded authenticator seed
+     * @param counter The moving factor
+     * @param algorithm The HMAC algorithm
+     * @param digits The number of digits
+     * @return The OTP code
+     */
+    private static String generateForCounter(String base32Seed, long counter, String algorithm, int digits) {
+        byte[] message = new byte[8];
+        long value = counter;
+        for (int i = 7; i >= 0; i--) {
+            message[i] = (byte) (value & 0xff);
+            value >>>= 8;
+        }
+
+        Mac mac = getMac(base32Seed, algorithm);
+        byte[] hash;
+        // Mac instances are not thread-safe, so each cached instance is used under its own lock
+        synchronized (mac) {
+            hash = mac.doFinal(message);
+        }
+
+        int offset = hash[hash.length - 1] & 0x0f;
+        int binary = ((hash[offset] & 0x7f) << 24)
+                | ((hash[offset + 1] & 0xff) << 16)
+                | ((hash[offset + 2] & 0xff) << 8)
+                | (hash[offset + 3] & 0xff);
+
+        StringBuilder otp = new StringBuilder(Integer.toString(binary % DIGITS_POWER[digits]));
+        while (otp.length() < digits) {
+            otp.insert(0, '0');
+        }
+        return otp.toString();
+    }
+
+    /**
+     * Gets a cached HMAC instance for the seed, creating it on first use.
+     * The seed is only decoded and keyed once per algorithm.
+     *
+     * @param base32Seed The Base32 encoded authenticator seed
+     * @param algorithm The HMAC algorithm
+     * @return An initialized Mac instance
+     */
+    private static Mac getMac(String base32Seed, String algorithm) {
+        String cacheKey = algorithm + ":" + base32Seed;
+
+        Mac mac = macCache.get(cacheKey);
+        if (mac != null) {
+            return mac;
+        }
+
+        try {
+            mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(decodeBase32(base32Seed), "RAW"));
+        } catch (Exception e) {
+            LOGGER.error("Failed to initialize TOTP HMAC: {}", e.getMessage());
+            throw new RuntimeException("Failed to initialize TOTP HMAC", e);
+        }
+
+        Mac existing = macCache.putIfAbsent(cacheKey, mac);
+        return existing != null ? existing : mac;
+    }
+
+    /**
+     * Decodes a Base32 (RFC 4648) string, ignoring spaces, dashes and padding.
+     *
+     * @param value The Base32 string
+     * @return The decoded bytes
+     */
+    static byte[] decodeBase32(String value) {
+        String normalized = value.replace(" ", "").replace("-", "").replace("=", "").toUpperCase();
+        byte[] result = new byte[normalized.length() * 5 / 8];
+
+        int buffer = 0;
+        int bitsLeft = 0;
+        int index = 0;
+        for (int i = 0; i < normalized.length(); i++) {
+            int charValue = BASE32_ALPHABET.indexOf(normalized.charAt(i));
+            if (charValue < 0) {
+                throw new IllegalArgumentException("Authenticator seed is not valid Base32");
+            }
+            buffer = (buffer << 5) | charValue;
+            bitsLeft += 5;
+            if (bitsLeft >= 8) {
+                result[index++] = (byte) (buffer >> (bitsLeft - 8));
+                bitsLeft -= 8;
+            }
+        }
+        return result;
+    }
+
+    private static int getPeriodSeconds() {
+        return Math.max(1, PropertyManager.getIntProperty("otp.totp.period", 30));
+    }
+
+    private static int getDigits() {
+        int digits = PropertyManager.getIntProperty("otp.totp.digits", 6);
+        return Math.min(8, Math.max(6, digits));
+    }
+}
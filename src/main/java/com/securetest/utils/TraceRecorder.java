@@ -0,0 +1,285 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the phases of each test (driver launch, navigation, waits, OTP retrieval,
+ * report writes) as timed spans and exports them in the Chrome Trace Event format,
+ * which chrome://tracing and Perfetto open with one lane per thread.
+ * <p>
+ * Every thread appends to its own buffer, so recording a span takes no lock. Buffers
+ * are only read by {@link #export(File)} once the run is over. Timestamps are taken
+ * with {@link System#nanoTime()} and written as microseconds since the epoch, so the
+ * traces of distributed workers line up with the coordinator's.
+ * Recording is off until {@link #start()} is called and a disabled span costs nothing.
+ */
+public class TraceRecorder {
+    private static final Logger LOGGER = LogManager.getLogger(TraceRecorder.class);
+    public static final String DEFAULT_FILE = "test-output/trace.json";
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final Span DISABLED = new Span(null, null, null, null, 0);
+    private static final Queue<Buffer> buffers = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger threadIds = new AtomicInteger();
+    private static final ThreadLocal<Buffer> localBuffer = new ThreadLocal<>();
+    private static volatile boolean enabled;
+    private static volatile int generation;
+    private static volatile int maxEventsPerThread;
+    private static volatile long originNanos;
+    private static volatile long originEpochMicros;
+
+    private TraceRecorder() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Starts recording, discarding spans of a previous recording.
+     */
+    public static synchronized void start() {
+        buffers.clear();
+        generation++;
+        maxEventsPerThread = Math.max(1, PropertyManager.getIntProperty("trace.maxEventsPerThread", 100000));
+        originEpochMicros = System.currentTimeMillis() * 1000;
+        originNanos = System.nanoTime();
+        enabled = true;
+        LOGGER.info("Recording trace spans");
+    }
+
+    /**
+     * Checks whether spans are being recorded.
+     *
+     * @return true between {@link #start()} and {@link #export(File)}
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens a span on the current thread. Close it, typically with try-with-resources,
+     * when the phase ends; spans closed on the same thread nest in the trace viewer.
+     *
+     * @param category The phase category, e.g. driver, navigation, wait, otp, report or test
+     * @param name The span name
+     * @return The open span
+     */
+    public static Span begin(String category, String name) {
+        return begin(category, name, null);
+    }
+
+    /**
+     * Opens a span on the current thread with a detail shown in the viewer's arguments.
+     *
+     * @param category The phase category, e.g. driver, navigation, wait, otp, report or test
+     * @param name The span name
+     * @param detail Additional information such as a URL or locator, must not be sensitive
+     * @return The open span
+     */
+    public static Span begin(String category, String name, String detail) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        return new Span(currentBuffer(), category, name, detail, System.nanoTime());
+    }
+
+    /**
+     * Stops recording and writes all recorded spans as a Chrome trace.
+     *
+     * @param file The trace file to write
+     * @return The number of spans written
+     */
+    public static synchronized int export(File file) {
+        enabled = false;
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        int written = 0;
+        int dropped = 0;
+        long pid = processId();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            writer.write(metadata(pid, 0, "process_name", "name", "SecureTestSuite " + pid));
+            for (Buffer buffer : buffers) {
+                writer.write(",\n");
+                writer.write(metadata(pid, buffer.threadId, "thread_name", "name", buffer.threadName));
+                writer.write(",\n");
+                writer.write(metadata(pid, buffer.threadId, "thread_sort_index", "sort_index",
+                        String.valueOf(buffer.threadId)));
+                int size = buffer.size;
+                for (int i = 0; i < size; i++) {
+                    writer.write(",\n");
+                    writeSpan(writer, pid, buffer, i);
+                }
+                written += size;
+                dropped += buffer.dropped;
+            }
+            writer.write("\n]}\n");
+        } catch (IOException e) {
+            LOGGER.error("Failed to write trace {}: {}", file, e.getMessage());
+            return 0;
+        }
+        if (dropped > 0) {
+            LOGGER.warn("Dropped {} span(s) beyond trace.maxEventsPerThread", dropped);
+        }
+        LOGGER.info("Wrote {} span(s) from {} thread(s) to {}", written, buffers.size(), file);
+        buffers.clear();
+        return written;
+    }
+
+    private static Buffer currentBuffer() {
+        Buffer buffer = localBuffer.get();
+        // Threads outlive a recording in daemon mode
+        if (buffer == null || buffer.generation != generation) {
+            Thread thread = Thread.currentThread();
+            buffer = new Buffer(generation, threadIds.incrementAndGet(), thread.getName());
+            localBuffer.set(buffer);
+            buffers.add(buffer);
+        }
+        return buffer;
+    }
+
+    private static void writeSpan(Writer writer, long pid, Buffer buffer, int index) throws IOException {
+        Object[] labels = buffer.labels[index / CHUNK_SIZE];
+        long[] times = buffer.times[index / CHUNK_SIZE];
+        int slot = index % CHUNK_SIZE;
+        String detail = (String) labels[slot * 3 + 2];
+        long startNanos = times[slot * 2];
+        long endNanos = times[slot * 2 + 1];
+
+        writer.write("{\"ph\":\"X\",\"pid\":" + pid + ",\"tid\":" + buffer.threadId);
+        writer.write(",\"cat\":" + JSONObject.quote((String) labels[slot * 3])
+                + ",\"name\":" + JSONObject.quote((String) labels[slot * 3 + 1]));
+        writer.write(",\"ts\":" + timestamp(startNanos) + ",\"dur\":" + toMicros(endNanos - startNanos));
+        if (detail != null) {
+            writer.write(",\"args\":{\"detail\":" + JSONObject.quote(detail) + "}");
+        }
+        writer.write("}");
+    }
+
+    private static String metadata(long pid, int tid, String name, String argument, String value) {
+        return "{\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + tid + ",\"name\":\"" + name
+                + "\",\"args\":{\"" + argument + "\":" + (argument.equals("name") ? JSONObject.quote(value) : value) + "}}";
+    }
+
+    private static String timestamp(long nanos) {
+        long elapsed = Math.max(0, nanos - originNanos);
+        return (originEpochMicros + elapsed / 1000) + "." + fraction(elapsed);
+    }
+
+    private static String toMicros(long nanos) {
+        return (nanos / 1000) + "." + fraction(nanos);
+    }
+
+    /**
+     * Formats the sub-microsecond part of a duration without depending on the default locale.
+     */
+    private static String fraction(long nanos) {
+        String digits = "00" + (nanos % 1000);
+        return digits.substring(digits.length() - 3);
+    }
+
+    /**
+     * Gets the id of this JVM process, which identifies its lanes in a combined trace.
+     *
+     * @return The process id, or 1 if it cannot be determined
+     */
+    public static long processId() {
+        // RuntimeMXBean names the JVM pid@host
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return Long.parseLong(name.substring(0, name.indexOf('@')));
+        } catch (RuntimeException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * A phase being timed. Closing it records the span; closing it again has no effect.
+     */
+    public static final class Span implements AutoCloseable {
+        private final Buffer buffer;
+        private final String category;
+        private final String name;
+        private final String detail;
+        private final long startNanos;
+        private boolean closed;
+
+        private Span(Buffer buffer, String category, String name, String detail, long startNanos) {
+            this.buffer = buffer;
+            this.category = category;
+            this.name = name;
+            this.detail = detail;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void close() {
+            if (buffer == null || closed) {
+                return;
+            }
+            closed = true;
+            buffer.add(category, name, detail, startNanos, System.nanoTime());
+        }
+    }
+
+    /**
+     * Spans recorded by one thread, stored in fixed-size chunks so growing never copies.
+     * Only the owning thread writes; the volatile size publishes complete entries to the exporter.
+     */
+    private static final class Buffer {
+        private final int generation;
+        private final int threadId;
+        private final String threadName;
+        // Category, name and detail of each span
+        private final Object[][] labels;
+        // Start and end nanos of each span
+        private final long[][] times;
+        private volatile int size;
+        private int dropped;
+
+        Buffer(int generation, int threadId, String threadName) {
+            this.generation = generation;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            int chunks = (maxEventsPerThread + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            this.labels = new Object[chunks][];
+            this.times = new long[chunks][];
+        }
+
+        void add(String category, String name, String detail, long startNanos, long endNanos) {
+            int index = size;
+            if (index >= labels.length * CHUNK_SIZE) {
+                dropped++;
+                return;
+            }
+            int chunk = index / CHUNK_SIZE;
+            int slot = index % CHUNK_SIZE;
+            if (slot == 0) {
+                labels[chunk] = new Object[CHUNK_SIZE * 3];
+                times[chunk] = new long[CHUNK_SIZE * 2];
+            }
+            labels[chunk][slot * 3] = category;
+            labels[chunk][slot * 3 + 1] = name;
+            labels[chunk][slot * 3 + 2] = detail;
+            times[chunk][slot * 2] = startNanos;
+            times[chunk][slot * 2 + 1] = endNanos;
+            size = index + 1;
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package com.securetest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compares screenshots against stored baselines.
+ * <p>
+ * Images are decoded once into {@code int[]} ARGB rasters and split into square
+ * tiles, which are compared in parallel on a fork/join pool. Identical tiles
+ * are recognized by a raw row comparison that stops at the first difference.
+ * Tiles that differ are then compared by an 8x8 average hash, which accepts
+ * rendering noise such as anti-aliasing. Only tiles whose hashes differ too,
+ * or that overlap an ignore region, get an exact per-pixel count. Hashes of
+ * baselines are cached with the decoded baseline.
+ * Baselines are stored per browser or device, see {@link #baselineKey(WebDriver)}.
+ */
+public class VisualComparator {
+    private static final Logger LOGGER = LogManager.getLogger(VisualComparator.class);
+    public static final String BASELINE_DIR = "src/test/resources/visual-baselines";
+    public static final String FAILURE_DIR = "test-output/visual";
+
+    // Cells per tile axis for the average hash, giving a 64-bit hash
+    private static final int HASH_GRID = 8;
+    // Tiles compared by one fork/join task before it stops splitting
+    private static final int TILES_PER_TASK = 16;
+    // Tiles with an ignored pixel or no usable hash
+    private static final long NO_HASH = Long.MIN_VALUE;
+
+    private static final Map<String, Baseline> baselineCache = new ConcurrentHashMap<>();
+    private static ForkJoinPool pool;
+
+    /**
+     * A decoded image as ARGB pixels, row by row.
+     */
+    public static class Raster {
+        private final int width;
+        private final int height;
+        private final int[] pixels;
+
+        public Raster(int width, int height, int[] pixels) {
+            if (pixels.length != width * height) {
+                throw new IllegalArgumentException("Expected " + width * height + " pixels, got " + pixels.length);
+            }
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int[] getPixels() {
+            return pixels;
+        }
+    }
+
+    /**
+     * Outcome of a comparison.
+     */
+    public static class Result {
+        private final boolean matched;
+        private final int totalTiles;
+        private final int unchangedTiles;
+        private final List<Rectangle> mismatchedTiles;
+        private final long differentPixels;
+        private final long elapsedMillis;
+        private final String message;
+
+        Result(boolean matched, int totalTiles, int unchangedTiles, List<Rectangle> mismatchedTiles,
+               long differentPixels, long elapsedMillis, String message) {
+            this.matched = matched;
+            this.totalTiles = totalTiles;
+            this.unchangedTiles = unchangedTiles;
+            this.mismatchedTiles = mismatchedTiles;
+            this.differentPixels = differentPixels;
+            this.elapsedMillis = elapsedMillis;
+            this.message = message;
+        }
+
+        public boolean isMatched() {
+            return matched;
+        }
+
+        public int getTotalTiles() {
+            return totalTiles;
+        }
+
+        /**
+         * Gets the number of tiles found identical or hash-equal without counting pixels.
+         *
+         * @return The number of tiles
+         */
+        public int getUnchangedTiles() {
+            return unchangedTiles;
+        }
+
+        public List<Rectangle> getMismatchedTiles() {
+            return mismatchedTiles;
+        }
+
+        public long getDifferentPixels() {
+            return differentPixels;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * A baseline raster with its tile hashes, cached until the file changes.
+     */
+    private static class Baseline {
+        private final long lastModified;
+        private final int tileSize;
+        private final Raster raster;
+        private final long[] hashes;
+
+        Baseline(long lastModified, int tileSize, Raster raster, long[] hashes) {
+            this.lastModified = lastModified;
+            this.tileSize = tileSize;
+            this.raster = raster;
+            this.hashes = hashes;
+        }
+    }
+
+    private VisualComparator() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Decodes a PNG or JPEG image into a raster.
+     *
+     * @param image The encoded image, e.g. from {@link DriverFactory#captureScreenshot(WebDriver)}
+     * @return The raster
+     * @throws IllegalArgumentException If the bytes are not a readable image
+     */
+    public static Raster decode(byte[] image) {
+        try {
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(image));
+            if (decoded == null) {
+                throw new IllegalArgumentException("Not a readable image");
+            }
+            int width = decoded.getWidth();
+            int height = decoded.getHeight();
+            return new Raster(width, height, decoded.getRGB(0, 0, width, height, null, 0, width));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to decode image: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compares a screenshot of the driver with the stored baseline of the same name.
+     * Without a baseline, or with {@code visual.updateBaselines=true}, the screenshot
+     * becomes the baseline and the comparison passes. On a mismatch, the screenshot
+     * and a copy with the differing tiles outlined are written to {@value #FAILURE_DIR}.
+     *
+     * @param driver The WebDriver or AppiumDriver
+     * @param name The screen name, e.g. "dashboard"
+     * @param ignoreRegions Regions in screenshot pixels to leave out, e.g. clocks or balances,
+     *                      in addition to those configured as {@code visual.ignore.<name>}
+     * @return The comparison result
+     */
+    public static Result compareWithBaseline(WebDriver driver, String name, Rectangle... ignoreRegions) {
+        byte[] screenshot = DriverFactory.captureScreenshot(driver);
+        if (screenshot == null) {
+            return new Result(false, 0, 0, new ArrayList<Rectangle>(), 0, 0, "Driver could not take a screenshot");
+        }
+        String key = baselineKey(driver);
+        File baselineFile = new File(new File(BASELINE_DIR, key), name + ".png");
+        try {
+            if (!baselineFile.exists() || PropertyManager.getBooleanProperty("visual.updateBaselines", false)) {
+                baselineFile.getParentFile().mkdirs();
+                Files.write(baselineFile.toPath(), screenshot);
+                baselineCache.remove(baselineFile.getAbsolutePath());
+                LOGGER.warn("Recorded visual baseline {} for {}", baselineFile, key);
+                return new Result(true, 0, 0, new ArrayList<Rectangle>(), 0, 0, "Baseline recorded: " + baselineFile);
+            }
+
+            int tileSize = getTileSize();
+            Baseline baseline = loadBaseline(baselineFile, tileSize);
+            Raster actual = decode(screenshot);
+            List<Rectangle> ignored = new ArrayList<>(configuredIgnoreRegions(name));
+            ignored.addAll(Arrays.asList(ignoreRegions));
+            Result result = compare(baseline.raster, baseline.hashes, actual, ignored, tileSize);
+            LOGGER.info("Visual check {} ({}): {} in {} ms, {} of {} tiles unchanged without counting pixels",
+                    name, key, result.getMessage(), result.getElapsedMillis(), result.getUnchangedTiles(),
+                    result.getTotalTiles());
+            if (!result.isMatched()) {
+                writeFailure(key, name, screenshot, actual, result);
+            }
+            return result;
+        } catch (IOException e) {
+            LOGGER.error("Visual check {} failed: {}", name, e.getMessage());
+            throw new RuntimeException("Visual check failed: " + name, e);
+        }
+    }
+
+    /**
+     * Compares two rasters tile by tile.
+     *
+     * @param baseline The expected image
+     * @param actual The image to check
+     * @param ignoreRegions Regions to leave out
+     * @return The comparison result
+     */
+    public static Result compare(Raster baseline, Raster actual, List<Rectangle> ignoreRegions) {
+        return compare(baseline, null, actual, ignoreRegions, getTileSize());
+    }
+
+    /**
+     * Derives the baseline directory from the driver's capabilities: the platform and
+     * device for Appium drivers, the browser and platform for browsers.
+     *
+     * @param driver The driver
+     * @return A file name safe key, e.g. "chrome-linux" or "android-pixel_7"
+     */
+    public static String baselineKey(WebDriver driver) {
+        String key = "default";
+        if (driver instanceof HasCapabilities) {
+            Capabilities capabilities = ((HasCapabilities) driver).getCapabilities();
+            Object device = capabilities.getCapability("deviceName");
+            Object platform = capabilities.getCapability("platformName");
+            if (device != null) {
+                key = platform + "-" + device;
+            } else {
+                key = capabilities.getBrowserName() + "-" + capabilities.getPlatform();
+            }
+        }
+        return key.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9.-]+", "_");
+    }
+
+    private static Result compare(Raster baseline, long[] baselineHashes, Raster actual,
+                                  List<Rectangle> ignoreRegions, int tileSize) {
+        long start = System.currentTimeMillis();
+        if (baseline.getWidth() != actual.getWidth() || baseline.getHeight() != actual.getHeight()) {
+            return new Result(false, 0, 0, new ArrayList<Rectangle>(), (long) actual.getWidth() * actual.getHeight(),
+                    System.currentTimeMillis() - start, String.format("size %dx%d differs from baseline %dx%d",
+                    actual.getWidth(), actual.getHeight(), baseline.getWidth(), baseline.getHeight()));
+        }
+
+        TileComparison comparison = new TileComparison(baseline, baselineHashes, actual, ignoreRegions, tileSize,
+                PropertyManager.getIntProperty("visual.channelTolerance", 16),
+                PropertyManager.getIntProperty("visual.hashTolerance", 0));
+        getPool().invoke(comparison.task(0, comparison.tileCount()));
+
+        List<Rectangle> mismatched = new ArrayList<>();
+        long differentPixels = 0;
+        int unchanged = 0;
+        for (int tile = 0; tile < comparison.tileCount(); tile++) {
+            if (comparison.differences[tile] > 0) {
+                mismatched.add(comparison.bounds(tile));
+                differentPixels += comparison.differences[tile];
+            } else if (comparison.differences[tile] < 0) {
+                unchanged++;
+            }
+        }
+        boolean matched = differentPixels <= PropertyManager.getIntProperty("visual.maxDiffPixels", 0);
+        String message = matched
+                ? "matched"
+                : String.format("%d pixel(s) differ in %d tile(s)", differentPixels, mismatched.size());
+        return new Result(matched, comparison.tileCount(), unchanged, mismatched, differentPixels,
+                System.currentTimeMillis() - start, message);
+    }
+
+    private static Baseline loadBaseline(File file, int tileSize) throws IOException {
+        String path = file.getAbsolutePath();
+        Baseline cached = baselineCache.get(path);
+        if (cached != null && cached.lastModified == file.lastModified() && cached.tileSize == tileSize) {
+            return cached;
+        }
+        Raster raster = decode(Files.readAllBytes(file.toPath()));
+        Baseline baseline = new Baseline(file.lastModified(), tileSize, raster, hashTiles(raster, tileSize));
+        baselineCache.put(path, baseline);
+        return baseline;
+    }
+
+    private static long[] hashTiles(Raster raster, int tileSize) {
+        TileComparison hashing = new TileComparison(raster, null, raster, new ArrayList<Rectangle>(), tileSize, 0, 0);
+        long[] hashes = new long[hashing.tileCount()];
+        for (int tile = 0; tile < hashes.length; tile++) {
+            hashes[tile] = averageHash(raster, hashing.bounds(tile));
+        }
+        return hashes;
+    }
+
+    /**
+     * Computes a 64-bit average hash of a region: one bit per cell of an 8x8 grid,
+     * set when the cell's mean luminance is above the region's mean.
+     */
+    private static long averageHash(Raster raster, Rectangle region) {
+        if (region.width < HASH_GRID || region.height < HASH_GRID) {
+            return NO_HASH;
+        }
+        int[] pixels = raster.getPixels();
+        long[] cells = new long[HASH_GRID * HASH_GRID];
+        long total = 0;
+        for (int cellY = 0; cellY < HASH_GRID; cellY++) {
+            int y0 = region.y + cellY * region.height / HASH_GRID;
+            int y1 = region.y + (cellY + 1) * region.height / HASH_GRID;
+            for (int cellX = 0; cellX < HASH_GRID; cellX++) {
+                int x0 = region.x + cellX * region.width / HASH_GRID;
+                int x1 = region.x + (cellX + 1) * region.width / HASH_GRID;
+                long sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    int row = y * raster.getWidth();
+                    for (int x = x0; x < x1; x++) {
+                        sum += luminance(pixels[row + x]);
+                    }
+                }
+                // Compare cell means scaled by the cell area, which differs by at most one pixel row or column
+                long mean = sum * 1024 / ((long) (y1 - y0) * (x1 - x0));
+                cells[cellY * HASH_GRID + cellX] = mean;
+                total += mean;
+            }
+        }
+        long average = total / cells.length;
+        long hash = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] > average) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    private static int luminance(int argb) {
+        return (((argb >> 16) & 0xff) * 299 + ((argb >> 8) & 0xff) * 587 + (argb & 0xff) * 114) / 1000;
+    }
+
+    private static void writeFailure(String key, String name, byte[] screenshot, Raster actual, Result result)
+            throws IOException {
+        File dir = new File(FAILURE_DIR, key);
+        dir.mkdirs();
+        Files.write(new File(dir, name + "-actual.png").toPath(), screenshot);
+
+        BufferedImage diff = new BufferedImage(actual.getWidth(), actual.getHeight(), BufferedImage.TYPE_INT_RGB);
+        diff.setRGB(0, 0, actual.getWidth(), actual.getHeight(), actual.getPixels(), 0, actual.getWidth());
+        Graphics2D graphics = diff.createGraphics();
+        graphics.setColor(Color.RED);
+        for (Rectangle tile : result.getMismatchedTiles()) {
+            graphics.drawRect(tile.x, tile.y, tile.width - 1, tile.height - 1);
+        }
+        graphics.dispose();
+        File diffFile = new File(dir, name + "-diff.png");
+        ImageIO.write(diff, "png", diffFile);
+        LOGGER.warn("Visual mismatch for {} written to {}", name, diffFile);
+    }
+
+    /**
+     * Gets the region of an element in screenshot pixels, e.g. to ignore it in a comparison.
+     * Browser element positions are in CSS pixels and are scaled by the device pixel ratio.
+     *
+     * @param driver The driver that found the element
+     * @param element The element
+     * @return The region of the element
+     */
+    public static Rectangle regionOf(WebDriver driver, WebElement element) {
+        org.openqa.selenium.Rectangle rect = element.getRect();
+        double ratio = 1.0;
+        if (driver instanceof JavascriptExecutor) {
+            try {
+                Object value = ((JavascriptExecutor) driver).executeScript("return window.devicePixelRatio");
+                if (value instanceof Number) {
+                    ratio = ((Number) value).doubleValue();
+                }
+            } catch (WebDriverException e) {
+                // Native app contexts have no window; their positions are in screenshot pixels already
+            }
+        }
+        return new Rectangle((int) Math.floor(rect.getX() * ratio), (int) Math.floor(rect.getY() * ratio),
+                (int) Math.ceil(rect.getWidth() * ratio), (int) Math.ceil(rect.getHeight() * ratio));
+    }
+
+    /**
+     * Reads the ignore regions configured for a baseline, e.g.
+     * {@code visual.ignore.dashboard=0,0,1280,64;900,200,300,40} as x,y,width,height in screenshot pixels.
+     */
+    private static List<Rectangle> configuredIgnoreRegions(String name) {
+        List<Rectangle> regions = new ArrayList<>();
+        String value = PropertyManager.getProperty("visual.ignore." + name);
+        if (value == null || value.trim().isEmpty()) {
+            return regions;
+        }
+        for (String region : value.split(";")) {
+            String[] bounds = region.trim().split("\\s*,\\s*");
+            try {
+                if (bounds.length != 4) {
+                    throw new NumberFormatException("expected x,y,width,height");
+                }
+                regions.add(new Rectangle(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]),
+                        Integer.parseInt(bounds[2]), Integer.parseInt(bounds[3])));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Ignoring invalid region '{}' in visual.ignore.{}: {}", region, name, e.getMessage());
+            }
+        }
+        return regions;
+    }
+
+    private static int getTileSize() {
+        return Math.max(HASH_GRID, PropertyManager.getIntProperty("visual.tileSize", 32));
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Math.max(1, PropertyManager.getIntProperty("visual.parallelism",
+                    Runtime.getRuntime().availableProcessors())));
+        }
+        return pool;
+    }
+
+    /**
+     * The state of one comparison, shared by the fork/join tasks. Each task writes
+     * only the entries of its own tiles: -1 if the tile is identical or its hashes
+     * matched, otherwise the number of differing pixels.
+     */
+    private static class TileComparison {
+        private final Raster baseline;
+        private final long[] baselineHashes;
+        private final Raster actual;
+        private final List<Rectangle> ignoreRegions;
+        private final int tileSize;
+        private final int channelTolerance;
+        private final int hashTolerance;
+        private final int columns;
+        private final int rows;
+        private final long[] differences;
+
+        TileComparison(Raster baseline, long[] baselineHashes, Raster actual, List<Rectangle> ignoreRegions,
+                       int tileSize, int channelTolerance, int hashTolerance) {
+            this.baseline = baseline;
+            this.baselineHashes = baselineHashes;
+            this.actual = actual;
+            this.ignoreRegions = ignoreRegions;
+            this.tileSize = tileSize;
+            this.channelTolerance = channelTolerance;
+            this.hashTolerance = hashTolerance;
+            this.columns = (actual.getWidth() + tileSize - 1) / tileSize;
+            this.rows = (actual.getHeight() + tileSize - 1) / tileSize;
+            this.differences = new long[columns * rows];
+        }
+
+        int tileCount() {
+            return columns * rows;
+        }
+
+        Rectangle bounds(int tile) {
+            int x = (tile % columns) * tileSize;
+            int y = (tile / columns) * tileSize;
+            return new Rectangle(x, y, Math.min(tileSize, actual.getWidth() - x), Math.min(tileSize, actual.getHeight() - y));
+        }
+
+        RecursiveAction task(int from, int to) {
+            return new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    if (to - from <= TILES_PER_TASK) {
+                        for (int tile = from; tile < to; tile++) {
+                            differences[tile] = compareTile(tile);
+                        }
+                        return;
+                    }
+                    int middle = (from + to) >>> 1;
+                    invokeAll(task(from, middle), task(middle, to));
+                }
+            };
+        }
+
+        private long compareTile(int tile) {
+            Rectangle bounds = bounds(tile);
+            List<Rectangle> ignored = new ArrayList<>();
+            for (Rectangle region : ignoreRegions) {
+                if (region.contains(bounds)) {
+                    return 0;
+                }
+                if (region.intersects(bounds)) {
+                    ignored.add(region);
+                }
+            }
+            if (ignored.isEmpty()) {
+                if (isIdentical(bounds)) {
+                    return -1;
+                }
+                // A negative tolerance turns the hash pass off, so every changed tile is counted exactly
+                long expectedHash = hashTolerance < 0 ? NO_HASH
+                        : baselineHashes != null ? baselineHashes[tile] : averageHash(baseline, bounds);
+                if (expectedHash != NO_HASH
+                        && Long.bitCount(averageHash(actual, bounds) ^ expectedHash) <= hashTolerance) {
+                    return -1;
+                }
+            }
+            return countDifferences(bounds, ignored);
+        }
+
+        private boolean isIdentical(Rectangle bounds) {
+            int[] expected = baseline.getPixels();
+            int[] pixels = actual.getPixels();
+            int width = actual.getWidth();
+            for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+                int row = y * width;
+                for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+                    if (expected[row + x] != pixels[row + x]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private long countDifferences(Rectangle bounds, List<Rectangle> ignored) {
+            int[] expected = baseline.getPixels();
+            int[] pixels = actual.getPixels();
+            int width = actual.getWidth();
+            long different = 0;
+            for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+                int row = y * width;
+                for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+                    int a = expected[row + x];
+                    int b = pixels[row + x];
+                    if (a == b || isIgnored(ignored, x, y)) {
+                        continue;
+                    }
+                    if (Math.abs(((a >> 16) & 0xff) - ((b >> 16) & 0xff)) > channelTolerance
+                            || Math.abs(((a >> 8) & 0xff) - ((b >> 8) & 0xff)) > channelTolerance
+                            || Math.abs((a & 0xff) - (b & 0xff)) > channelTolerance) {
+                        different++;
+                    }
+                }
+            }
+            return different;
+        }
+
+        private static boolean isIgnored(List<Rectangle> ignored, int x, int y) {
+            for (Rectangle region : ignored) {
+                if (region.contains(x, y)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
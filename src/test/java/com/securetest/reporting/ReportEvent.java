@@ -0,0 +1,126 @@
+package com.securetest.reporting;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * One entry of the report event log: a test being created, a log line, a
+ * category, a table, a block of text, a screenshot or a piece of system information. Events
+ * are written to disk as one JSON object per line.
+ */
+public class ReportEvent {
+
+    /**
+     * Kinds of report events.
+     */
+    public enum Type {
+        TEST,
+        LOG,
+        CATEGORY,
+        TABLE,
+        CODE_BLOCK,
+        SCREENSHOT,
+        SYSTEM_INFO
+    }
+
+    private final Type type;
+    private final long testId;
+    private final long parentId;
+    private final long time;
+    private final String status;
+    private final String text;
+    private final String value;
+    private final String[][] rows;
+
+    ReportEvent(Type type, long testId, long parentId, long time, String status, String text, String value,
+                String[][] rows) {
+        this.type = type;
+        this.testId = testId;
+        this.parentId = parentId;
+        this.time = time;
+        this.status = status;
+        this.text = text;
+        this.value = value;
+        this.rows = rows;
+    }
+
+    /**
+     * Parses an event from its log line.
+     *
+     * @param line The JSON line
+     * @return The event
+     * @throws org.json.JSONException If the line is not a valid event, e.g. cut off by a crash
+     */
+    public static ReportEvent fromJson(String line) {
+        JSONObject json = new JSONObject(line);
+        String[][] rows = null;
+        JSONArray table = json.optJSONArray("rows");
+        if (table != null) {
+            rows = new String[table.length()][];
+            for (int i = 0; i < table.length(); i++) {
+                JSONArray row = table.getJSONArray(i);
+                rows[i] = new String[row.length()];
+                for (int j = 0; j < row.length(); j++) {
+                    rows[i][j] = row.getString(j);
+                }
+            }
+        }
+        return new ReportEvent(Type.valueOf(json.getString("type")), json.optLong("id"), json.optLong("parent"),
+                json.optLong("time"), json.optString("status", null), json.optString("text", null),
+                json.optString("value", null), rows);
+    }
+
+    /**
+     * Serializes the event as a single JSON line, without the line break.
+     *
+     * @return The JSON line
+     */
+    public String toJson() {
+        JSONObject json = new JSONObject();
+        json.put("type", type.name());
+        json.put("id", testId);
+        if (parentId != 0) {
+            json.put("parent", parentId);
+        }
+        json.put("time", time);
+        json.putOpt("status", status);
+        json.putOpt("text", text);
+        json.putOpt("value", value);
+        if (rows != null) {
+            json.put("rows", new JSONArray(rows));
+        }
+        return json.toString();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTestId() {
+        return testId;
+    }
+
+    public long getParentId() {
+        return parentId;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String[][] getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,165 @@
+package com.securetest.reporting;
+
+import com.securetest.utils.TraceRecorder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects report events from all test threads and streams them to an event log on disk.
+ * <p>
+ * Test threads only append to a lock-free queue. A single writer thread drains
+ * the queue, appends each event as a JSON line and flushes whenever the queue
+ * is empty. The report therefore never accumulates in heap, however many tests
+ * run, and everything published before a crash is on disk.
+ * {@link ReportRenderer} turns the event log into the HTML report.
+ */
+public class ReportEventBus {
+    private static final Logger LOGGER = LogManager.getLogger(ReportEventBus.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final File eventLog;
+    private final Queue<ReportEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final Thread writerThread;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    /**
+     * Creates the bus and starts its writer thread. An existing event log is replaced.
+     *
+     * @param eventLog The event log to write, or null to discard all events
+     */
+    public ReportEventBus(File eventLog) {
+        this.eventLog = eventLog;
+        this.writerThread = new Thread(this::writeEvents, "report-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        // Write out what is still queued if the JVM is stopped before close()
+        this.shutdownHook = new Thread(this::close, "report-writer-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Creates a top-level test entry.
+     *
+     * @param name The test name
+     * @return The test
+     */
+    public ReportTest createTest(String name) {
+        return createTest(name, 0);
+    }
+
+    ReportTest createTest(String name, long parentId) {
+        long id = ids.incrementAndGet();
+        publish(new ReportEvent(ReportEvent.Type.TEST, id, parentId, System.currentTimeMillis(), null, name, null, null));
+        return new ReportTest(this, id);
+    }
+
+    /**
+     * Records a piece of system information shown on the report dashboard.
+     *
+     * @param key The name
+     * @param value The value
+     */
+    public void setSystemInfo(String key, String value) {
+        publish(new ReportEvent(ReportEvent.Type.SYSTEM_INFO, 0, 0, System.currentTimeMillis(), null, key, value, null));
+    }
+
+    void publish(ReportEvent event) {
+        if (closed) {
+            LOGGER.debug("Report event published after close, dropped: {}", event.getType());
+            return;
+        }
+        queue.offer(event);
+        LockSupport.unpark(writerThread);
+    }
+
+    /**
+     * Writes all queued events and stops the writer thread.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, which is when the hook itself calls close()
+        }
+    }
+
+    public File getEventLog() {
+        return eventLog;
+    }
+
+    private void writeEvents() {
+        if (eventLog == null) {
+            discardEvents();
+            return;
+        }
+        File parent = eventLog.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        long written = 0;
+        // One span per batch written between two idle periods
+        TraceRecorder.Span batch = null;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(eventLog, false), StandardCharsets.UTF_8))) {
+            while (true) {
+                ReportEvent event = queue.poll();
+                if (event != null) {
+                    if (batch == null) {
+                        batch = TraceRecorder.begin("report", "write events");
+                    }
+                    writer.write(event.toJson());
+                    writer.write('\n');
+                    written++;
+                    continue;
+                }
+                writer.flush();
+                if (batch != null) {
+                    batch.close();
+                    batch = null;
+                }
+                if (closed && queue.isEmpty()) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to write report event log {}: {}", eventLog, e.getMessage());
+            discardEvents();
+            return;
+        }
+        LOGGER.debug("Wrote {} report event(s) to {}", written, eventLog);
+    }
+
+    private void discardEvents() {
+        while (!closed || !queue.isEmpty()) {
+            if (queue.poll() == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.securetest.reporting;
+
+import com.aventstack.extentreports.ExtentReports;
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.MediaEntityBuilder;
+import com.aventstack.extentreports.Status;
+import com.aventstack.extentreports.markuputils.MarkupHelper;
+import com.aventstack.extentreports.model.Log;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the event log written by {@link ReportEventBus} into an
+ * {@link ExtentReports} instance, keeping the original timestamps.
+ * A log cut off by a crash renders up to its last complete event.
+ */
+public class ReportRenderer {
+    private static final Logger LOGGER = LogManager.getLogger(ReportRenderer.class);
+
+    private ReportRenderer() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Replays an event log into a report. The caller flushes the report.
+     *
+     * @param eventLog The event log
+     * @param extentReports The report with its reporters attached
+     * @return The number of tests rendered
+     * @throws IOException If the event log cannot be read
+     */
+    public static int render(File eventLog, ExtentReports extentReports) throws IOException {
+        Map<Long, ExtentTest> tests = new HashMap<>();
+        int skipped = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(eventLog), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    apply(ReportEvent.fromJson(line), extentReports, tests);
+                } catch (JSONException | IllegalArgumentException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            LOGGER.warn("Skipped {} incomplete or unreadable event(s) in {}", skipped, eventLog);
+        }
+        LOGGER.info("Rendered {} report entries from {}", tests.size(), eventLog);
+        return tests.size();
+    }
+
+    private static void apply(ReportEvent event, ExtentReports extentReports, Map<Long, ExtentTest> tests) {
+        Date time = new Date(event.getTime());
+        if (event.getType() == ReportEvent.Type.SYSTEM_INFO) {
+            extentReports.setSystemInfo(event.getText(), event.getValue());
+            return;
+        }
+        if (event.getType() == ReportEvent.Type.TEST) {
+            ExtentTest parent = tests.get(event.getParentId());
+            ExtentTest test = parent != null ? parent.createNode(event.getText()) : extentReports.createTest(event.getText());
+            test.getModel().setStartTime(time);
+            test.getModel().setEndTime(time);
+            tests.put(event.getTestId(), test);
+            return;
+        }
+
+        ExtentTest test = tests.get(event.getTestId());
+        if (test == null) {
+            return;
+        }
+        switch (event.getType()) {
+            case CATEGORY:
+                test.assignCategory(event.getText());
+                break;
+            case TABLE:
+                test.log(Status.INFO, MarkupHelper.createTable(event.getRows()));
+                stamp(test, time);
+                break;
+            case CODE_BLOCK:
+                test.log(Status.valueOf(event.getStatus()), MarkupHelper.createCodeBlock(escapeHtml(event.getText())));
+                stamp(test, time);
+                break;
+            case SCREENSHOT:
+                test.log(Status.valueOf(event.getStatus()), event.getText(),
+                        MediaEntityBuilder.createScreenCaptureFromPath(event.getValue(), event.getText()).build());
+                stamp(test, time);
+                break;
+            default:
+                test.log(Status.valueOf(event.getStatus()), event.getText());
+                stamp(test, time);
+                break;
+        }
+    }
+
+    /**
+     * Escapes text for the code block template, which inserts it into the page as it is.
+     */
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Moves the log just added, and the test's end time, to the time the event was published.
+     */
+    private static void stamp(ExtentTest test, Date time) {
+        List<Log> logs = test.getModel().getLogs();
+        if (!logs.isEmpty()) {
+            logs.get(logs.size() - 1).setTimestamp(time);
+        }
+        if (time.after(test.getModel().getEndTime())) {
+            test.getModel().setEndTime(time);
+        }
+    }
+}
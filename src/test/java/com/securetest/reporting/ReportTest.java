@@ -0,0 +1,118 @@
+package com.securetest.reporting;
+
+import com.aventstack.extentreports.Status;
+
+/**
+ * Handle to one test entry of the report. Every call publishes an event to the
+ * {@link ReportEventBus} and returns immediately; nothing is kept in memory,
+ * so handles may be used from any thread.
+ */
+public class ReportTest {
+    private final ReportEventBus bus;
+    private final long id;
+
+    ReportTest(ReportEventBus bus, long id) {
+        this.bus = bus;
+        this.id = id;
+    }
+
+    /**
+     * Creates a child entry, e.g. one per test method of a class.
+     *
+     * @param name The node name
+     * @return The node
+     */
+    public ReportTest createNode(String name) {
+        return bus.createTest(name, id);
+    }
+
+    /**
+     * Logs a message with a status.
+     *
+     * @param status The status
+     * @param message The message
+     * @return This test
+     */
+    public ReportTest log(Status status, String message) {
+        bus.publish(new ReportEvent(ReportEvent.Type.LOG, id, 0, System.currentTimeMillis(),
+                status.name(), message, null, null));
+        return this;
+    }
+
+    public ReportTest info(String message) {
+        return log(Status.INFO, message);
+    }
+
+    public ReportTest pass(String message) {
+        return log(Status.PASS, message);
+    }
+
+    public ReportTest fail(String message) {
+        return log(Status.FAIL, message);
+    }
+
+    public ReportTest skip(String message) {
+        return log(Status.SKIP, message);
+    }
+
+    public ReportTest warning(String message) {
+        return log(Status.WARNING, message);
+    }
+
+    /**
+     * Adds the test to one or more categories.
+     *
+     * @param categories The category names
+     * @return This test
+     */
+    public ReportTest assignCategory(String... categories) {
+        for (String category : categories) {
+            bus.publish(new ReportEvent(ReportEvent.Type.CATEGORY, id, 0, System.currentTimeMillis(),
+                    null, category, null, null));
+        }
+        return this;
+    }
+
+    /**
+     * Logs a table, the first row being the header.
+     *
+     * @param rows The table cells
+     * @return This test
+     */
+    public ReportTest table(String[][] rows) {
+        bus.publish(new ReportEvent(ReportEvent.Type.TABLE, id, 0, System.currentTimeMillis(),
+                Status.INFO.name(), null, null, rows));
+        return this;
+    }
+
+    /**
+     * Logs a block of preformatted text, such as the log lines of a failed test.
+     *
+     * @param status The status
+     * @param text The text, shown as it is
+     * @return This test
+     */
+    public ReportTest codeBlock(Status status, String text) {
+        bus.publish(new ReportEvent(ReportEvent.Type.CODE_BLOCK, id, 0, System.currentTimeMillis(),
+                status.name(), text, null, null));
+        return this;
+    }
+
+    /**
+     * Logs a screenshot stored next to the report, see {@link ScreenshotPipeline}.
+     *
+     * @param status The status
+     * @param title The caption
+     * @param path The image path relative to the report
+     * @return This test
+     */
+    public ReportTest attachScreenshot(Status status, String title, String path) {
+        bus.publish(new ReportEvent(ReportEvent.Type.SCREENSHOT, id, 0, System.currentTimeMillis(),
+                status.name(), title, path, null));
+        return this;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
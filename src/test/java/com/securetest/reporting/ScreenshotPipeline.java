@@ -0,0 +1,198 @@
+package com.securetest.reporting;
+
+import com.aventstack.extentreports.Status;
+import com.securetest.utils.PropertyManager;
+import com.securetest.utils.TraceRecorder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores screenshots and attaches them to the report off the test thread.
+ * <p>
+ * Test threads hand over the raw PNG bytes grabbed from the driver. A small
+ * background pool hashes them, re-encodes them if {@code report.screenshot.format}
+ * is {@code jpg}, writes them through NIO and attaches them to the report.
+ * Files are named by the SHA-256 of the captured bytes, so an identical screen
+ * is only encoded and written once and later captures link to the same file.
+ * The work queue is bounded: when it is full the test thread processes its own
+ * screenshot, which slows down capturing instead of buffering without limit.
+ */
+public class ScreenshotPipeline {
+    private static final Logger LOGGER = LogManager.getLogger(ScreenshotPipeline.class);
+    public static final String DIRECTORY = "test-output/extent-reports/screenshots";
+    // Screenshots are linked relative to extent-report.html
+    private static final String REPORT_PATH = "screenshots/";
+
+    private static final Map<String, String> stored = new ConcurrentHashMap<>();
+    private static final AtomicInteger written = new AtomicInteger();
+    private static final AtomicInteger duplicates = new AtomicInteger();
+    private static ThreadPoolExecutor executor;
+
+    private ScreenshotPipeline() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Queues a screenshot for storage and attachment to a report entry.
+     *
+     * @param test The report entry
+     * @param status The status to log the screenshot with
+     * @param title The caption
+     * @param png The PNG bytes from the driver, may be null if capturing failed
+     */
+    public static void submit(ReportTest test, Status status, String title, byte[] png) {
+        if (test == null || png == null || png.length == 0) {
+            return;
+        }
+        getExecutor().execute(() -> store(test, status, title, png));
+    }
+
+    /**
+     * Waits until all queued screenshots are written and attached, e.g. before the report is rendered.
+     */
+    public static void awaitCompletion() {
+        ThreadPoolExecutor current;
+        synchronized (ScreenshotPipeline.class) {
+            current = executor;
+            executor = null;
+        }
+        if (current == null) {
+            return;
+        }
+        current.shutdown();
+        try {
+            if (!current.awaitTermination(PropertyManager.getIntProperty("report.screenshot.awaitSeconds", 60),
+                    TimeUnit.SECONDS)) {
+                LOGGER.warn("Dropped {} screenshot(s) that were still queued", current.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Stored {} screenshot(s), {} duplicate(s) linked to existing files",
+                written.getAndSet(0), duplicates.getAndSet(0));
+        stored.clear();
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int threads = Math.max(1, PropertyManager.getIntProperty("report.screenshot.threads", 1));
+            int queueSize = Math.max(1, PropertyManager.getIntProperty("report.screenshot.queueSize", 16));
+            executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize), new ScreenshotThreadFactory(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
+
+    @SuppressWarnings("try")
+    private static void store(ReportTest test, Status status, String title, byte[] png) {
+        try (TraceRecorder.Span span = TraceRecorder.begin("report", "store screenshot", title)) {
+            String hash = sha256(png);
+            String fileName = stored.get(hash);
+            if (fileName != null) {
+                duplicates.incrementAndGet();
+            } else {
+                fileName = write(hash, png);
+                stored.put(hash, fileName);
+            }
+            test.attachScreenshot(status, title, REPORT_PATH + fileName);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to store screenshot '{}': {}", title, e.getMessage());
+        }
+    }
+
+    private static String write(String hash, byte[] png) throws IOException {
+        boolean jpeg = "jpg".equalsIgnoreCase(PropertyManager.getProperty("report.screenshot.format", "png"));
+        String fileName = hash + (jpeg ? ".jpg" : ".png");
+        Path target = Paths.get(DIRECTORY, fileName);
+        // Also written by an earlier run or by another thread that captured the same screen
+        if (Files.exists(target)) {
+            duplicates.incrementAndGet();
+            return fileName;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.write(target, jpeg ? toJpeg(png) : png, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            written.incrementAndGet();
+        } catch (FileAlreadyExistsException e) {
+            duplicates.incrementAndGet();
+        }
+        return fileName;
+    }
+
+    private static byte[] toJpeg(byte[] png) throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(png));
+        if (source == null) {
+            throw new IOException("Screenshot is not a readable image");
+        }
+        // JPEG has no alpha channel
+        BufferedImage rgb = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(source, 0, 0, null);
+        graphics.dispose();
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(PropertyManager.getIntProperty("report.screenshot.jpegQuality", 80) / 100f);
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Names the encoder threads and keeps them from holding the JVM open.
+     */
+    private static class ScreenshotThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "screenshot-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.securetest.runner;
+
+import com.securetest.reporting.ReportEventBus;
+import com.securetest.utils.PropertyManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the number of concurrently running work items during a run, using
+ * additive increase and multiplicative decrease (AIMD).
+ * <p>
+ * Each time a window of items completes (as many items as the current limit),
+ * the controller checks three signals:
+ * <ul>
+ *     <li>how much slower tests ran than their recorded average duration;</li>
+ *     <li>the share of infrastructure failures, i.e. timeouts, refused connections and blocked tests;</li>
+ *     <li>the available memory left for more browsers.</li>
+ * </ul>
+ * If any signal is unhealthy the limit is halved. Otherwise it grows by one
+ * worker. The limit always stays between the configured minimum and maximum.
+ * Every decision is kept and written to the report as a time series.
+ */
+public class AdaptiveConcurrencyController {
+    private static final Logger LOGGER = LogManager.getLogger(AdaptiveConcurrencyController.class);
+
+    /**
+     * One evaluation of a completed window.
+     */
+    public static class Decision {
+        private final long elapsedMillis;
+        private final int previousLimit;
+        private final int limit;
+        private final double latencyRatio;
+        private final double infrastructureFailureRate;
+        private final long freeMemoryMb;
+        private final String reason;
+
+        Decision(long elapsedMillis, int previousLimit, int limit, double latencyRatio,
+                 double infrastructureFailureRate, long freeMemoryMb, String reason) {
+            this.elapsedMillis = elapsedMillis;
+            this.previousLimit = previousLimit;
+            this.limit = limit;
+            this.latencyRatio = latencyRatio;
+            this.infrastructureFailureRate = infrastructureFailureRate;
+            this.freeMemoryMb = freeMemoryMb;
+            this.reason = reason;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public int getPreviousLimit() {
+            return previousLimit;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * @return Median of wall time over recorded average duration, or 0 if no item in the window had history
+         */
+        public double getLatencyRatio() {
+            return latencyRatio;
+        }
+
+        public double getInfrastructureFailureRate() {
+            return infrastructureFailureRate;
+        }
+
+        public long getFreeMemoryMb() {
+            return freeMemoryMb;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    private final DurationHistory history;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final double maxLatencyRatio;
+    private final double maxFailureRate;
+    private final long minFreeMemoryMb;
+    private final long startedAt = System.nanoTime();
+    private final List<Decision> decisions = new ArrayList<>();
+    private final List<Double> windowLatencies = new ArrayList<>();
+    private int windowCompleted;
+    private int windowFailures;
+    private int limit;
+
+    /**
+     * Creates a controller.
+     *
+     * @param history Recorded durations that latencies are compared with, or null
+     * @param initialWorkers The limit to start with
+     * @param minWorkers The lowest limit
+     * @param maxWorkers The highest limit
+     * @param maxLatencyRatio Slowdown over the recorded duration above which the limit is halved
+     * @param maxFailureRate Share of infrastructure failures above which the limit is halved
+     * @param minFreeMemoryMb Free memory below which the limit is halved, 0 to ignore memory
+     */
+    public AdaptiveConcurrencyController(DurationHistory history, int initialWorkers, int minWorkers, int maxWorkers,
+                                         double maxLatencyRatio, double maxFailureRate, long minFreeMemoryMb) {
+        this.history = history;
+        this.minWorkers = Math.max(1, minWorkers);
+        this.maxWorkers = Math.max(this.minWorkers, maxWorkers);
+        this.maxLatencyRatio = maxLatencyRatio;
+        this.maxFailureRate = maxFailureRate;
+        this.minFreeMemoryMb = minFreeMemoryMb;
+        this.limit = Math.min(this.maxWorkers, Math.max(this.minWorkers, initialWorkers));
+    }
+
+    /**
+     * Creates a controller from the test.parallel.adaptive.* properties.
+     *
+     * @param history Recorded durations that latencies are compared with, or null
+     * @param initialWorkers The limit to start with
+     * @return The controller
+     */
+    public static AdaptiveConcurrencyController fromConfig(DurationHistory history, int initialWorkers) {
+        int maxWorkers = PropertyManager.getIntProperty("test.parallel.adaptive.maxThreads",
+                Math.max(initialWorkers, Runtime.getRuntime().availableProcessors()));
+        return new AdaptiveConcurrencyController(history, initialWorkers,
+                PropertyManager.getIntProperty("test.parallel.adaptive.minThreads", 1),
+                maxWorkers,
+                PropertyManager.getIntProperty("test.parallel.adaptive.maxLatencyPercent", 150) / 100.0,
+                PropertyManager.getIntProperty("test.parallel.adaptive.maxFailurePercent", 20) / 100.0,
+                PropertyManager.getIntProperty("test.parallel.adaptive.minFreeMemoryMb", 512));
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public synchronized List<Decision> getDecisions() {
+        return new ArrayList<>(decisions);
+    }
+
+    /**
+     * Records a completed work item and re-evaluates the limit once the window is full.
+     *
+     * @param item The work item
+     * @param wallMillis The item's wall time
+     * @param infrastructureFailure true if the item failed because an environment was unreachable
+     */
+    public synchronized void recordCompletion(TestWorkItem item, long wallMillis, boolean infrastructureFailure) {
+        windowCompleted++;
+        if (infrastructureFailure) {
+            windowFailures++;
+        }
+        long expectedMillis = history != null ? history.estimateMillis(item, 0) : 0;
+        if (expectedMillis > 0) {
+            windowLatencies.add((double) wallMillis / expectedMillis);
+        }
+        if (windowCompleted >= limit) {
+            evaluate();
+        }
+    }
+
+    private void evaluate() {
+        double latencyRatio = median(windowLatencies);
+        double failureRate = (double) windowFailures / windowCompleted;
+        long freeMemoryMb = freeMemoryMb();
+
+        String reason = null;
+        if (failureRate > maxFailureRate) {
+            reason = String.format("infrastructure failure rate %.0f%%", failureRate * 100);
+        } else if (latencyRatio > maxLatencyRatio) {
+            reason = String.format("tests %.1fx slower than recorded", latencyRatio);
+        } else if (minFreeMemoryMb > 0 && freeMemoryMb < minFreeMemoryMb) {
+            reason = "only " + freeMemoryMb + " MB free memory";
+        }
+
+        int previous = limit;
+        if (reason != null) {
+            limit = Math.max(minWorkers, limit / 2);
+        } else {
+            limit = Math.min(maxWorkers, limit + 1);
+            reason = limit > previous ? "healthy window" : "healthy window, at maximum";
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        decisions.add(new Decision(elapsedMillis, previous, limit, latencyRatio, failureRate, freeMemoryMb, reason));
+
+        if (limit != previous) {
+            LOGGER.info("Concurrency {} -> {} worker(s): {}", previous, limit, reason);
+        } else {
+            LOGGER.debug("Concurrency stays at {} worker(s): {}", limit, reason);
+        }
+
+        windowCompleted = 0;
+        windowFailures = 0;
+        windowLatencies.clear();
+    }
+
+    /**
+     * Adds the concurrency decisions of the run to the report as a table.
+     *
+     * @param report The report, may be null
+     */
+    public void report(ReportEventBus report) {
+        List<Decision> series = getDecisions();
+        if (report == null || series.isEmpty()) {
+            return;
+        }
+        String[][] rows = new String[series.size() + 1][];
+        rows[0] = new String[] {"Elapsed (s)", "Workers", "Latency ratio", "Infra failures", "Free memory (MB)", "Reason"};
+        for (int i = 0; i < series.size(); i++) {
+            Decision decision = series.get(i);
+            rows[i + 1] = new String[] {
+                    String.format("%.1f", decision.getElapsedMillis() / 1000.0),
+                    decision.getPreviousLimit() + " -> " + decision.getLimit(),
+                    decision.getLatencyRatio() > 0 ? String.format("%.2f", decision.getLatencyRatio()) : "-",
+                    String.format("%.0f%%", decision.getInfrastructureFailureRate() * 100),
+                    String.valueOf(decision.getFreeMemoryMb()),
+                    decision.getReason()
+            };
+        }
+        report.createTest("Adaptive concurrency")
+                .assignCategory("Runner")
+                .info(String.format("Workers between %d and %d, %d decision(s)", minWorkers, maxWorkers, series.size()))
+                .table(rows);
+    }
+
+    private static double median(List<Double> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * Gets the smaller of the available physical memory, which browsers start in, and the free JVM heap.
+     */
+    private static long freeMemoryMb() {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long physical = availablePhysicalMemory();
+        if (physical >= 0) {
+            free = Math.min(free, physical);
+        }
+        return free / (1024 * 1024);
+    }
+
+    /**
+     * Gets the physical memory new processes can use without swapping. On Linux this is
+     * MemAvailable, which unlike MemFree counts the page cache the kernel can reclaim,
+     * so a warm file cache does not look like memory pressure.
+     *
+     * @return Available memory in bytes, or -1 if unknown
+     */
+    @SuppressWarnings("deprecation")
+    private static long availablePhysicalMemory() {
+        File meminfo = new File("/proc/meminfo");
+        if (meminfo.canRead()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(meminfo), StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("MemAvailable:")) {
+                        String[] fields = line.trim().split("\\s+");
+                        return Long.parseLong(fields[1]) * 1024;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Could not read MemAvailable from {}: {}", meminfo.getPath(), e.getMessage());
+            }
+        }
+        // Kernels before 3.14 and other platforms: free memory is the closest estimate
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getFreePhysicalMemorySize();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,139 @@
+package com.securetest.runner;
+
+import com.securetest.utils.TraceRecorder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the runner's setup steps concurrently, starting each step as soon as the
+ * steps it depends on have finished. Callers only wait for the steps they need,
+ * so slow steps such as a browser launch can keep running in the background.
+ * Every step logs its duration and is recorded by {@link StartupTimer}.
+ */
+public class BootstrapGraph {
+    private static final Logger LOGGER = LogManager.getLogger(BootstrapGraph.class);
+
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+    private long startNanos;
+
+    /**
+     * A named setup task together with the names of the steps it needs.
+     */
+    private static class Step {
+        private final Runnable task;
+        private final String[] dependencies;
+
+        Step(Runnable task, String[] dependencies) {
+            this.task = task;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * Adds a step. Dependencies must have been added before.
+     *
+     * @param name The step name, used in logs and the startup history
+     * @param task The setup work
+     * @param dependencies Names of the steps that must finish first
+     * @return This graph
+     */
+    public BootstrapGraph add(String name, Runnable task, String... dependencies) {
+        for (String dependency : dependencies) {
+            if (!steps.containsKey(dependency)) {
+                throw new IllegalArgumentException("Unknown bootstrap dependency '" + dependency + "' of " + name);
+            }
+        }
+        steps.put(name, new Step(task, dependencies));
+        return this;
+    }
+
+    /**
+     * Starts all steps. Returns immediately.
+     */
+    public void start() {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, steps.size()), new BootstrapThreadFactory());
+        startNanos = System.nanoTime();
+
+        for (Map.Entry<String, Step> entry : steps.entrySet()) {
+            final String name = entry.getKey();
+            final Step step = entry.getValue();
+            List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+            for (String dependency : step.dependencies) {
+                dependencies.add(futures.get(dependency));
+            }
+            CompletableFuture<Void> future = CompletableFuture
+                    .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                    .thenRunAsync(() -> runTimed(name, step.task), executor);
+            futures.put(name, future);
+        }
+
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .whenComplete((result, error) -> executor.shutdown());
+    }
+
+    /**
+     * Waits for the given steps.
+     *
+     * @param names The steps to wait for
+     * @throws RuntimeException If one of the steps or its dependencies failed
+     */
+    public void await(String... names) {
+        for (String name : names) {
+            CompletableFuture<Void> future = futures.get(name);
+            if (future == null) {
+                throw new IllegalArgumentException("Unknown bootstrap step: " + name);
+            }
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException("Bootstrap step " + name + " failed", cause);
+            }
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void runTimed(String name, Runnable task) {
+        long started = System.nanoTime();
+        try (TraceRecorder.Span span = TraceRecorder.begin("bootstrap", name)) {
+            task.run();
+            long millis = (System.nanoTime() - started) / 1000000;
+            LOGGER.info("Bootstrap step {} finished in {} ms (started at +{} ms)",
+                    name, millis, (started - startNanos) / 1000000);
+            StartupTimer.recordStep(name, millis);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Bootstrap step {} failed after {} ms: {}",
+                    name, (System.nanoTime() - started) / 1000000, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Names bootstrap threads and keeps them from holding the JVM open.
+     */
+    private static class BootstrapThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "bootstrap-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.securetest.runner;
+
+import io.cucumber.core.cli.Main;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the Cucumber feature files, executing scenarios concurrently.
+ * Each scenario runs start to finish on one worker thread, which is what the
+ * thread-confined drivers and scenario data scopes rely on.
+ */
+public class CucumberScenarioRunner {
+    private static final Logger LOGGER = LogManager.getLogger(CucumberScenarioRunner.class);
+    public static final String FEATURES = "classpath:features";
+    public static final String GLUE = "com.securetest.steps";
+    private static final String JSON_REPORT = "test-output/cucumber/cucumber.json";
+
+    private CucumberScenarioRunner() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Runs all scenarios matching a tag expression.
+     *
+     * @param tags Cucumber tag expression, e.g. "@smoke or @otp"; null or empty runs every scenario
+     * @param threads Number of scenarios executed concurrently
+     * @return true if any scenario failed, false otherwise
+     */
+    public static boolean run(String tags, int threads) {
+        List<String> args = new ArrayList<>();
+        args.add("--glue");
+        args.add(GLUE);
+        args.add("--threads");
+        args.add(String.valueOf(Math.max(1, threads)));
+        if (tags != null && !tags.trim().isEmpty()) {
+            args.add("--tags");
+            args.add(toTagExpression(tags));
+        }
+        args.add("--plugin");
+        args.add("summary");
+        args.add("--plugin");
+        args.add(ScenarioFailureTracker.class.getName());
+        args.add("--plugin");
+        args.add("json:" + JSON_REPORT);
+        args.add(FEATURES);
+
+        LOGGER.info("Running Cucumber scenarios with tags '{}' on {} thread(s)",
+                tags == null ? "" : tags, Math.max(1, threads));
+        byte exitStatus = Main.run(args.toArray(new String[0]), Thread.currentThread().getContextClassLoader());
+        LOGGER.info("Cucumber run finished with exit status {}", exitStatus);
+        return exitStatus != 0;
+    }
+
+    /**
+     * Accepts either a full tag expression or a comma-separated list of tags,
+     * which selects scenarios carrying any of them.
+     */
+    private static String toTagExpression(String tags) {
+        String trimmed = tags.trim();
+        if (!trimmed.contains(",")) {
+            return trimmed;
+        }
+        StringBuilder expression = new StringBuilder();
+        for (String tag : trimmed.split(",")) {
+            if (tag.trim().isEmpty()) {
+                continue;
+            }
+            if (expression.length() > 0) {
+                expression.append(" or ");
+            }
+            expression.append(tag.trim());
+        }
+        return expression.toString();
+    }
+}
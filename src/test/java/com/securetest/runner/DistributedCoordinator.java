@@ -0,0 +1,444 @@
+package com.securetest.runner;
+
+import com.securetest.reporting.ReportEventBus;
+import com.securetest.reporting.ReportTest;
+import com.securetest.utils.CommandMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coordinator of a distributed run. Owns the queue of test IDs and hands them
+ * out to worker JVMs that connect over TCP.
+ * <p>
+ * Every worker connection gets its own deque, refilled in batches from the
+ * shared queue. Once the shared queue is empty, an idle worker steals from the
+ * tail of the fullest deque, so no worker sits idle while another still has a
+ * backlog. Items in flight on a connection that drops, or that sends a malformed
+ * result, are put back in the queue. When no worker is left to run them, because
+ * every local worker process has exited or none connected within the worker
+ * timeout, or the run timeout has passed, the remaining items are given up.
+ * <p>
+ * Protocol (one line per message, tab-separated fields):
+ * <pre>
+ * worker: HELLO name token      coordinator: OK | DENIED
+ * worker: NEXT                  coordinator: RUN id | WAIT | DONE
+ * worker: RESULT id status wallMillis message
+ * </pre>
+ */
+public class DistributedCoordinator {
+    private static final Logger LOGGER = LogManager.getLogger(DistributedCoordinator.class);
+    private static final Logger RESULTS = LogManager.getLogger("TestResults");
+
+    // Smallest number of items moved from the shared queue to a worker deque at once
+    private static final int MIN_BATCH = 1;
+
+    private final int port;
+    private final String token;
+    private final ReportEventBus report;
+    private final RetryPolicy retryPolicy;
+    private final Deque<TestWorkItem> sharedQueue = new ArrayDeque<>();
+    private final Map<String, Deque<TestWorkItem>> workerDeques = new LinkedHashMap<>();
+    private final Map<String, TestWorkItem> inFlight = new HashMap<>();
+    private final Map<String, Long> dispatchedAt = new HashMap<>();
+    private final List<TestOutcome> outcomes = new ArrayList<>();
+    private final AtomicInteger connectionCounter = new AtomicInteger();
+    private final List<Process> localWorkers = new ArrayList<>();
+
+    private long startedAt;
+    private long lastConnectedAt;
+    private long workerTimeoutMillis;
+    private long runTimeoutMillis;
+    private int remaining;
+
+    /**
+     * Creates a coordinator for the given work items.
+     *
+     * @param port The TCP port to listen on
+     * @param token Shared secret workers must present, or null to accept any worker
+     * @param items The work items, in scheduling order
+     * @param report The report that worker results are published to
+     * @param retryPolicy Decides which failed items are queued again
+     */
+    public DistributedCoordinator(int port, String token, List<TestWorkItem> items, ReportEventBus report,
+                                  RetryPolicy retryPolicy) {
+        this.port = port;
+        this.token = token;
+        this.report = report;
+        this.retryPolicy = retryPolicy;
+        for (TestWorkItem item : items) {
+            sharedQueue.addLast(item);
+        }
+        this.remaining = items.size();
+    }
+
+    /**
+     * Sets how long the run waits for workers. Without timeouts it waits until every item has a result.
+     *
+     * @param workerTimeoutMillis How long to wait while no worker is connected, 0 for no limit
+     * @param runTimeoutMillis The longest the whole run may take, 0 for no limit
+     */
+    public void setTimeouts(long workerTimeoutMillis, long runTimeoutMillis) {
+        this.workerTimeoutMillis = workerTimeoutMillis;
+        this.runTimeoutMillis = runTimeoutMillis;
+    }
+
+    /**
+     * Watches the worker processes started for this run. Once all of them have exited
+     * and no other worker is connected, the remaining items are given up.
+     *
+     * @param processes The local worker processes
+     */
+    public synchronized void watchLocalWorkers(List<Process> processes) {
+        localWorkers.addAll(processes);
+    }
+
+    /**
+     * Accepts workers and serves work until every item has a result or no worker is left to run them.
+     *
+     * @param bindAddress The address to listen on, e.g. loopback or all interfaces
+     * @param listening Callback invoked with the bound port once the server is listening
+     * @return The outcomes of all work items
+     * @throws IOException If the server socket cannot be opened
+     */
+    public List<TestOutcome> run(InetAddress bindAddress, PortListener listening) throws IOException {
+        startedAt = System.nanoTime();
+        lastConnectedAt = startedAt;
+        try (ServerSocket server = new ServerSocket(port, 50, bindAddress)) {
+            LOGGER.info("Coordinator listening on {}:{} with {} work item(s)",
+                    bindAddress.getHostAddress(), server.getLocalPort(), remaining);
+            if (listening != null) {
+                listening.onListening(server.getLocalPort());
+            }
+
+            server.setSoTimeout(1000);
+            while (!isFinished()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread handler = new Thread(() -> serve(socket),
+                            "coordinator-conn-" + connectionCounter.incrementAndGet());
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (java.net.SocketTimeoutException e) {
+                    // Periodic wake-up to re-check completion and liveness
+                }
+                String reason = checkLiveness();
+                if (reason != null) {
+                    giveUpRemaining(reason);
+                }
+            }
+        }
+
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        RESULTS.info("Distributed run finished: {} work item(s) in {} ms across {} connection(s)",
+                outcomes.size(), totalMillis, connectionCounter.get());
+        synchronized (this) {
+            return new ArrayList<>(outcomes);
+        }
+    }
+
+    /**
+     * Serves one worker connection until the run is done or the worker disconnects.
+     */
+    private void serve(Socket socket) {
+        String connectionId = null;
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+
+            String[] hello = split(in.readLine());
+            if (hello.length < 2 || !"HELLO".equals(hello[0]) || !isTokenValid(hello.length > 2 ? hello[2] : "")) {
+                LOGGER.warn("Rejected worker connection from {}", s.getRemoteSocketAddress());
+                out.println("DENIED");
+                return;
+            }
+            connectionId = hello[1] + s.getRemoteSocketAddress();
+            registerWorker(connectionId);
+            out.println("OK");
+            LOGGER.info("Worker {} connected", connectionId);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] message = split(line);
+                if ("NEXT".equals(message[0])) {
+                    TestWorkItem item = nextFor(connectionId);
+                    if (item != null) {
+                        out.println("RUN\t" + item.getId());
+                    } else {
+                        out.println(isFinished() ? "DONE" : "WAIT");
+                        if (isFinished()) {
+                            return;
+                        }
+                    }
+                } else if ("RESULT".equals(message[0])) {
+                    complete(connectionId, message);
+                } else {
+                    LOGGER.warn("Unexpected message from worker {}: {}", connectionId, message[0]);
+                }
+            }
+        } catch (SocketException e) {
+            LOGGER.warn("Worker {} disconnected: {}", connectionId, e.getMessage());
+        } catch (IOException e) {
+            LOGGER.error("Error serving worker {}: {}", connectionId, e.getMessage());
+        } finally {
+            if (connectionId != null) {
+                unregisterWorker(connectionId);
+            }
+        }
+    }
+
+    private synchronized void registerWorker(String connectionId) {
+        workerDeques.put(connectionId, new ArrayDeque<TestWorkItem>());
+    }
+
+    /**
+     * Returns the in-flight item and any unstarted items of a lost worker to the shared queue.
+     */
+    private synchronized void unregisterWorker(String connectionId) {
+        Deque<TestWorkItem> deque = workerDeques.remove(connectionId);
+        TestWorkItem lost = inFlight.remove(connectionId);
+        if (lost != null) {
+            LOGGER.warn("Re-queueing {} after worker {} went away", lost.getId(), connectionId);
+            sharedQueue.addFirst(lost);
+        }
+        if (deque != null) {
+            while (!deque.isEmpty()) {
+                sharedQueue.addFirst(deque.pollLast());
+            }
+        }
+    }
+
+    /**
+     * Picks the next item for a worker: own deque first, then a batch from the
+     * shared queue, then a steal from the tail of the fullest other deque.
+     *
+     * @throws IOException If the worker still has an item in flight; the connection is then closed and the item re-queued
+     */
+    private synchronized TestWorkItem nextFor(String connectionId) throws IOException {
+        Deque<TestWorkItem> own = workerDeques.get(connectionId);
+        if (own == null) {
+            return null;
+        }
+        // A worker runs one item at a time, so replacing its in-flight item would lose it
+        TestWorkItem running = inFlight.get(connectionId);
+        if (running != null) {
+            throw new IOException("Worker asked for more work while " + running.getId() + " is in flight");
+        }
+
+        if (own.isEmpty() && !sharedQueue.isEmpty()) {
+            int batch = Math.max(MIN_BATCH, sharedQueue.size() / (2 * Math.max(1, workerDeques.size())));
+            for (int i = 0; i < batch && !sharedQueue.isEmpty(); i++) {
+                own.addLast(sharedQueue.pollFirst());
+            }
+        }
+
+        TestWorkItem item = own.pollFirst();
+        if (item == null) {
+            item = stealFor(connectionId);
+        }
+        if (item != null) {
+            inFlight.put(connectionId, item);
+            dispatchedAt.put(item.getId(), System.nanoTime());
+        }
+        return item;
+    }
+
+    private TestWorkItem stealFor(String thief) {
+        Deque<TestWorkItem> victim = null;
+        String victimId = null;
+        for (Map.Entry<String, Deque<TestWorkItem>> entry : workerDeques.entrySet()) {
+            if (!entry.getKey().equals(thief)
+                    && (victim == null || entry.getValue().size() > victim.size())) {
+                victim = entry.getValue();
+                victimId = entry.getKey();
+            }
+        }
+        if (victim == null || victim.isEmpty()) {
+            return null;
+        }
+        TestWorkItem stolen = victim.pollLast();
+        LOGGER.debug("Worker {} stole {} from {}", thief, stolen.getId(), victimId);
+        return stolen;
+    }
+
+    /**
+     * Records the result of a worker's in-flight item.
+     *
+     * @throws IOException If the result is malformed or not for the in-flight item; the connection is
+     *                     then closed and its item re-queued
+     */
+    private void complete(String connectionId, String[] message) throws IOException {
+        // Parsed before the item leaves inFlight, so a bad message is handled like a lost connection
+        TestOutcome.Status status;
+        long wallMillis;
+        try {
+            if (message.length < 4) {
+                throw new IllegalArgumentException("expected at least 4 fields, got " + message.length);
+            }
+            status = TestOutcome.Status.valueOf(message[2]);
+            wallMillis = Long.parseLong(message[3]);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed result from worker: " + e.getMessage(), e);
+        }
+
+        TestOutcome outcome;
+        synchronized (this) {
+            TestWorkItem item = inFlight.get(connectionId);
+            if (item == null || !item.getId().equals(message[1])) {
+                throw new IOException("Result for " + message[1] + " from worker, but "
+                        + (item == null ? "no item" : item.getId()) + " is in flight");
+            }
+            inFlight.remove(connectionId);
+
+            long queueMillis = TimeUnit.NANOSECONDS.toMillis(dispatchedAt.remove(item.getId()) - startedAt);
+            String failureMessage = message.length > 4 && !message[4].isEmpty() ? message[4] : null;
+            outcome = new TestOutcome(item, status, queueMillis, wallMillis, failureMessage);
+            outcomes.add(outcome);
+            remaining--;
+
+            // Retries go to the tail of the shared queue, behind all first-pass work
+            if (retryPolicy.shouldRetry(outcome)) {
+                TestWorkItem retry = item.nextAttempt();
+                CommandMetrics.recordRetry(item.getClassName());
+                LOGGER.info("Re-queueing failed test {} for attempt {}", item.getId(), retry.getAttempt());
+                sharedQueue.addLast(retry);
+                remaining++;
+            }
+        }
+        report(outcome, connectionId);
+    }
+
+    private void report(TestOutcome outcome, String connectionId) {
+        RESULTS.info("{} {} on {} (queue {} ms, wall {} ms)", outcome.getStatus(), outcome.getItem().getId(),
+                connectionId, outcome.getQueueMillis(), outcome.getWallMillis());
+        if (report == null) {
+            return;
+        }
+        ReportTest test = report.createTest(outcome.getItem().getDisplayName());
+        test.info("Worker: " + connectionId);
+        test.info(String.format("Queue time: %d ms, wall time: %d ms",
+                outcome.getQueueMillis(), outcome.getWallMillis()));
+        switch (outcome.getStatus()) {
+            case PASSED:
+                test.pass("Test passed");
+                break;
+            case FAILED:
+                test.fail(String.valueOf(outcome.getMessage()));
+                break;
+            case BLOCKED:
+                test.assignCategory("Blocked").warning("Blocked: " + outcome.getMessage());
+                break;
+            default:
+                test.skip(String.valueOf(outcome.getMessage()));
+                break;
+        }
+    }
+
+    /**
+     * Checks whether the remaining items can still get a result.
+     *
+     * @return Why they cannot, or null while they can
+     */
+    private synchronized String checkLiveness() {
+        if (isFinished()) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (runTimeoutMillis > 0 && now - startedAt > TimeUnit.MILLISECONDS.toNanos(runTimeoutMillis)) {
+            return "Distributed run timed out after " + runTimeoutMillis / 1000 + " s";
+        }
+        if (!workerDeques.isEmpty()) {
+            lastConnectedAt = now;
+            return null;
+        }
+        if (!localWorkers.isEmpty()) {
+            List<Integer> exitCodes = new ArrayList<>();
+            for (Process process : localWorkers) {
+                if (process.isAlive()) {
+                    return null;
+                }
+                exitCodes.add(process.exitValue());
+            }
+            return "All local workers exited (exit codes " + exitCodes + ") with no worker connected";
+        }
+        if (workerTimeoutMillis > 0 && now - lastConnectedAt > TimeUnit.MILLISECONDS.toNanos(workerTimeoutMillis)) {
+            return "No worker connected for " + workerTimeoutMillis / 1000 + " s";
+        }
+        return null;
+    }
+
+    /**
+     * Ends the run without the remaining items: those in flight fail, those never started are blocked.
+     */
+    private void giveUpRemaining(String reason) {
+        List<TestOutcome> givenUp = new ArrayList<>();
+        List<String> connections = new ArrayList<>();
+        synchronized (this) {
+            LOGGER.error("{}; giving up {} remaining work item(s)", reason, remaining);
+            long queueMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            for (Map.Entry<String, TestWorkItem> entry : inFlight.entrySet()) {
+                givenUp.add(new TestOutcome(entry.getValue(), TestOutcome.Status.FAILED, queueMillis, 0,
+                        reason + " while the test was running"));
+                connections.add(entry.getKey());
+            }
+            inFlight.clear();
+            List<TestWorkItem> unstarted = new ArrayList<>(sharedQueue);
+            sharedQueue.clear();
+            for (Deque<TestWorkItem> deque : workerDeques.values()) {
+                unstarted.addAll(deque);
+                deque.clear();
+            }
+            for (TestWorkItem item : unstarted) {
+                givenUp.add(new TestOutcome(item, TestOutcome.Status.BLOCKED, queueMillis, 0, reason));
+                connections.add("no worker");
+            }
+            outcomes.addAll(givenUp);
+            remaining = 0;
+        }
+        for (int i = 0; i < givenUp.size(); i++) {
+            report(givenUp.get(i), connections.get(i));
+        }
+    }
+
+    private synchronized boolean isFinished() {
+        return remaining <= 0;
+    }
+
+    private boolean isTokenValid(String presented) {
+        if (token == null || token.isEmpty()) {
+            return true;
+        }
+        return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] split(String line) {
+        return line == null ? new String[] {""} : line.split("\t", -1);
+    }
+
+    /**
+     * Notified once the coordinator socket is bound, e.g. to start local workers.
+     */
+    public interface PortListener {
+        void onListening(int port);
+    }
+}
@@ -0,0 +1,126 @@
+package com.securetest.runner;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker side of a distributed run. Each worker slot holds one connection to
+ * the {@link DistributedCoordinator}, pulls test IDs, runs them through the
+ * local {@link ParallelTestEngine} and streams the results back.
+ */
+public class DistributedWorker {
+    private static final Logger LOGGER = LogManager.getLogger(DistributedWorker.class);
+
+    // Pause before asking again when the coordinator has nothing to hand out yet
+    private static final long WAIT_BACKOFF_MILLIS = 500;
+
+    private final String host;
+    private final int port;
+    private final String token;
+    private final ParallelTestEngine engine;
+
+    /**
+     * Creates a worker.
+     *
+     * @param host The coordinator host
+     * @param port The coordinator port
+     * @param token The shared secret expected by the coordinator, may be null
+     * @param engine The engine used to execute work items locally
+     */
+    public DistributedWorker(String host, int port, String token, ParallelTestEngine engine) {
+        this.host = host;
+        this.port = port;
+        this.token = token;
+        this.engine = engine;
+    }
+
+    /**
+     * Runs the given number of worker slots, each on its own connection,
+     * and returns when the coordinator reports that all work is done.
+     *
+     * @param slots Number of tests this worker JVM runs concurrently
+     * @return The number of work items executed by this JVM
+     */
+    public int run(int slots) {
+        final String name = ManagementFactory.getRuntimeMXBean().getName();
+        final int[] executed = new int[Math.max(1, slots)];
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < executed.length; i++) {
+            final int slot = i;
+            Thread thread = new Thread(() -> executed[slot] = serveSlot(name + "#" + slot), "test-worker-" + (slot + 1));
+            threads.add(thread);
+            thread.start();
+        }
+
+        int total = 0;
+        for (int i = 0; i < threads.size(); i++) {
+            try {
+                threads.get(i).join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            total += executed[i];
+        }
+        LOGGER.info("Worker finished after executing {} work item(s)", total);
+        return total;
+    }
+
+    private int serveSlot(String slotName) {
+        int executed = 0;
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+
+            out.println("HELLO\t" + slotName.replace('\t', ' ') + "\t" + (token == null ? "" : token));
+            if (!"OK".equals(in.readLine())) {
+                LOGGER.error("Coordinator at {}:{} rejected worker {}", host, port, slotName);
+                return executed;
+            }
+            LOGGER.info("Worker slot {} connected to coordinator {}:{}", slotName, host, port);
+
+            while (true) {
+                out.println("NEXT");
+                String reply = in.readLine();
+                if (reply == null || "DONE".equals(reply)) {
+                    break;
+                }
+                if ("WAIT".equals(reply)) {
+                    Thread.sleep(WAIT_BACKOFF_MILLIS);
+                    continue;
+                }
+                if (!reply.startsWith("RUN\t")) {
+                    LOGGER.warn("Unexpected coordinator reply: {}", reply);
+                    continue;
+                }
+
+                TestWorkItem item = TestWorkItem.fromId(reply.substring(4));
+                TestOutcome outcome = engine.execute(item, System.nanoTime());
+                out.println("RESULT\t" + item.getId() + "\t" + outcome.getStatus() + "\t"
+                        + outcome.getWallMillis() + "\t" + sanitize(outcome.getMessage()));
+                executed++;
+            }
+        } catch (IOException e) {
+            LOGGER.error("Worker slot {} lost the coordinator: {}", slotName, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return executed;
+    }
+
+    private static String sanitize(String message) {
+        return message == null ? "" : message.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+}
@@ -0,0 +1,290 @@
+package com.securetest.runner;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only on-disk store of per-test durations and outcomes.
+ * Each line records one execution: timestamp, test ID, status and wall time.
+ * Blocked executions update a test's last status but not its duration.
+ * Used to schedule long and recently failed tests first and to estimate run time.
+ */
+public class DurationHistory {
+    private static final Logger LOGGER = LogManager.getLogger(DurationHistory.class);
+    public static final String DEFAULT_FILE = "test-output/history/durations.log";
+
+    // Weight of the newest sample in the moving average of a test's duration
+    private static final double SMOOTHING = 0.5;
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Aggregated history of a single test ID.
+     */
+    public static class Entry {
+        private double averageMillis;
+        private TestOutcome.Status lastStatus;
+        private long lastRunAt;
+        private int runs;
+
+        public long getAverageMillis() {
+            return Math.round(averageMillis);
+        }
+
+        public TestOutcome.Status getLastStatus() {
+            return lastStatus;
+        }
+
+        public long getLastRunAt() {
+            return lastRunAt;
+        }
+
+        /**
+         * Gets the number of executions that ran, i.e. not counting blocked ones.
+         */
+        public int getRuns() {
+            return runs;
+        }
+
+        void add(long timestamp, TestOutcome.Status status, long wallMillis) {
+            // A blocked test did not run, so its near-zero wall time says nothing about its duration
+            if (status == TestOutcome.Status.BLOCKED) {
+                lastStatus = status;
+                lastRunAt = timestamp;
+                return;
+            }
+            averageMillis = runs == 0 ? wallMillis : SMOOTHING * wallMillis + (1 - SMOOTHING) * averageMillis;
+            lastStatus = status;
+            lastRunAt = timestamp;
+            runs++;
+        }
+    }
+
+    /**
+     * Creates a history backed by the given file. Call {@link #load()} to read it.
+     *
+     * @param file The history file
+     */
+    public DurationHistory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the default history file.
+     *
+     * @return The loaded history
+     */
+    public static DurationHistory loadDefault() {
+        DurationHistory history = new DurationHistory(new File(DEFAULT_FILE));
+        history.load();
+        return history;
+    }
+
+    /**
+     * Reads all recorded executions from disk. Malformed lines are skipped.
+     */
+    public synchronized void load() {
+        entries.clear();
+        if (!file.exists()) {
+            LOGGER.info("No duration history found at {}", file.getPath());
+            return;
+        }
+
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 4) {
+                    continue;
+                }
+                try {
+                    apply(Long.parseLong(fields[0]), fields[1], TestOutcome.Status.valueOf(fields[2]),
+                            Long.parseLong(fields[3]));
+                    lines++;
+                } catch (IllegalArgumentException e) {
+                    LOGGER.debug("Skipping malformed history line: {}", line);
+                }
+            }
+            LOGGER.info("Loaded {} recorded executions for {} tests from {}", lines, entries.size(), file.getPath());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read duration history: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the outcomes of a run to the history file and to the in-memory view.
+     *
+     * @param outcomes The outcomes to record
+     */
+    public synchronized void record(List<TestOutcome> outcomes) {
+        record(outcomes, file);
+    }
+
+    /**
+     * Appends the outcomes of a run to a separate file, e.g. one per shard, so the
+     * history every shard partitions from stays identical until the run is merged.
+     *
+     * @param outcomes The outcomes to record
+     * @param target The file to append to
+     */
+    public synchronized void record(List<TestOutcome> outcomes, File target) {
+        if (outcomes.isEmpty()) {
+            return;
+        }
+
+        File parent = target.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        long now = System.currentTimeMillis();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(target, true), StandardCharsets.UTF_8))) {
+            for (TestOutcome outcome : outcomes) {
+                // A reused result did not run, its recorded time is already in the history
+                if (outcome.isReused()) {
+                    continue;
+                }
+                String id = outcome.getItem().getId();
+                writer.write(now + "\t" + id + "\t" + outcome.getStatus() + "\t" + outcome.getWallMillis() + "\n");
+                apply(now, id, outcome.getStatus(), outcome.getWallMillis());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to append to duration history: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the contents of other history files (e.g. written by shards) to this
+     * history and deletes them, so each execution is only counted once.
+     *
+     * @param partials The files to fold into this history
+     */
+    public synchronized void mergeFrom(List<File> partials) {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+            for (File partial : partials) {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(partial), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        writer.write(line);
+                        writer.write("\n");
+                    }
+                }
+                if (!partial.delete()) {
+                    LOGGER.warn("Failed to delete merged history file {}", partial.getPath());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to merge partial duration history: {}", e.getMessage());
+        }
+        load();
+    }
+
+    /**
+     * Gets the aggregated history of a test ID.
+     *
+     * @param id The test ID
+     * @return The entry, or null if the test has never been recorded
+     */
+    public synchronized Entry get(String id) {
+        return entries.get(id);
+    }
+
+    /**
+     * Estimates the duration of a work item. Class-level items without their own
+     * history are estimated from the sum of their recorded methods.
+     *
+     * @param item The work item
+     * @param defaultMillis Estimate to use when nothing is known about the item
+     * @return Estimated wall time in milliseconds
+     */
+    public synchronized long estimateMillis(TestWorkItem item, long defaultMillis) {
+        Entry entry = entries.get(item.getId());
+        if (entry != null && entry.getRuns() > 0) {
+            return entry.getAverageMillis();
+        }
+
+        if (!item.isMethod()) {
+            String prefix = item.getClassName() + "#";
+            long sum = 0;
+            boolean found = false;
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (candidate.getKey().startsWith(prefix) && candidate.getValue().getRuns() > 0) {
+                    sum += candidate.getValue().getAverageMillis();
+                    found = true;
+                }
+            }
+            if (found) {
+                return sum;
+            }
+        }
+        return defaultMillis;
+    }
+
+    /**
+     * Checks whether the most recent recorded execution of an item failed or was blocked.
+     *
+     * @param item The work item
+     * @return true if the last recorded run failed or was blocked
+     */
+    public synchronized boolean failedLastRun(TestWorkItem item) {
+        Entry entry = entries.get(item.getId());
+        return entry != null && (entry.getLastStatus() == TestOutcome.Status.FAILED
+                || entry.getLastStatus() == TestOutcome.Status.BLOCKED);
+    }
+
+    /**
+     * Gets the median of all recorded average durations, used for unknown tests.
+     *
+     * @param fallbackMillis Value to return when the history is empty
+     * @return The median duration in milliseconds
+     */
+    public synchronized long medianMillis(long fallbackMillis) {
+        List<Long> durations = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.getRuns() > 0) {
+                durations.add(entry.getAverageMillis());
+            }
+        }
+        if (durations.isEmpty()) {
+            return fallbackMillis;
+        }
+        Collections.sort(durations);
+        return durations.get(durations.size() / 2);
+    }
+
+    private void apply(long timestamp, String id, TestOutcome.Status status, long wallMillis) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(id, entry);
+        }
+        entry.add(timestamp, status, wallMillis);
+    }
+}
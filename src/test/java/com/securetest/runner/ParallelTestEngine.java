@@ -0,0 +1,385 @@
+package com.securetest.runner;
+
+import com.aventstack.extentreports.Status;
+import com.securetest.reporting.ReportEventBus;
+import com.securetest.reporting.ReportTest;
+import com.securetest.utils.CommandMetrics;
+import com.securetest.utils.EnvironmentCircuitBreaker;
+import com.securetest.utils.EnvironmentUnavailableException;
+import com.securetest.utils.FlightEvents;
+import com.securetest.utils.TestLogBufferAppender;
+import com.securetest.utils.TraceRecorder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes JUnit work items on a bounded pool of worker threads.
+ * Each item is run through its own {@link JUnitCore} and published to the
+ * shared {@link ReportEventBus}, together with its queue and wall time.
+ */
+public class ParallelTestEngine {
+    private static final Logger LOGGER = LogManager.getLogger(ParallelTestEngine.class);
+    private static final Logger RESULTS = LogManager.getLogger("TestResults");
+
+    private final ReportEventBus report;
+    private final int threads;
+    private final RetryPolicy retryPolicy;
+    private final AdaptiveConcurrencyController controller;
+
+    /**
+     * Creates an execution engine without retries.
+     *
+     * @param report The report that all results are published to
+     * @param threads Maximum number of concurrently running work items
+     */
+    public ParallelTestEngine(ReportEventBus report, int threads) {
+        this(report, threads, RetryPolicy.none());
+    }
+
+    /**
+     * Creates an execution engine.
+     *
+     * @param report The report that all results are published to
+     * @param threads Maximum number of concurrently running work items
+     * @param retryPolicy Decides which failed items are re-run
+     */
+    public ParallelTestEngine(ReportEventBus report, int threads, RetryPolicy retryPolicy) {
+        this(report, threads, retryPolicy, null);
+    }
+
+    /**
+     * Creates an execution engine whose concurrency is adjusted during the run.
+     *
+     * @param report The report that all results are published to
+     * @param threads Maximum number of concurrently running work items without a controller
+     * @param retryPolicy Decides which failed items are re-run
+     * @param controller Decides how many items run at a time, or null for a fixed number of threads
+     */
+    public ParallelTestEngine(ReportEventBus report, int threads, RetryPolicy retryPolicy,
+                              AdaptiveConcurrencyController controller) {
+        this.report = report;
+        this.threads = Math.max(1, controller != null ? controller.getMaxWorkers() : threads);
+        this.retryPolicy = retryPolicy;
+        this.controller = controller;
+    }
+
+    /**
+     * Runs all work items and waits for them to finish.
+     * Failed items that the retry policy allows are queued again behind all
+     * pending first-pass items, so retries never delay first-pass throughput.
+     * With a concurrency controller, items are only dispatched while fewer than
+     * its current limit are running.
+     *
+     * @param items The work items to execute
+     * @return The outcomes of every attempt, in completion order
+     */
+    public List<TestOutcome> run(List<TestWorkItem> items) {
+        LOGGER.info("Executing {} work items on {} worker thread(s){}, up to {} retr(ies) per test",
+                items.size(), threads, controller != null ? " (adaptive, starting at " + controller.getLimit() + ")" : "",
+                retryPolicy.getMaxRetries());
+        long start = System.nanoTime();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        CompletionService<TestOutcome> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<TestOutcome>, TestWorkItem> pending = new HashMap<>();
+        Deque<QueuedItem> backlog = new ArrayDeque<>();
+        List<TestOutcome> outcomes = new ArrayList<>();
+
+        try {
+            for (TestWorkItem item : items) {
+                backlog.add(new QueuedItem(item));
+            }
+            dispatch(completion, backlog, pending);
+
+            while (!pending.isEmpty()) {
+                Future<TestOutcome> future = completion.take();
+                TestWorkItem item = pending.remove(future);
+                TestOutcome outcome;
+                try {
+                    outcome = future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.error("Work item {} crashed the worker: {}", item, e.getCause().getMessage());
+                    outcome = new TestOutcome(item, TestOutcome.Status.FAILED, 0, 0, String.valueOf(e.getCause()));
+                }
+                outcomes.add(outcome);
+
+                if (retryPolicy.shouldRetry(outcome)) {
+                    TestWorkItem retry = item.nextAttempt();
+                    CommandMetrics.recordRetry(item.getClassName());
+                    LOGGER.info("Re-queueing failed test {} for attempt {}", item.getId(), retry.getAttempt());
+                    backlog.add(new QueuedItem(retry));
+                }
+                dispatch(completion, backlog, pending);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Test execution interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        logSummary(outcomes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return outcomes;
+    }
+
+    /**
+     * Submits queued items until the concurrency limit is reached.
+     */
+    private void dispatch(CompletionService<TestOutcome> completion, Deque<QueuedItem> backlog,
+                          Map<Future<TestOutcome>, TestWorkItem> pending) {
+        int limit = controller != null ? controller.getLimit() : threads;
+        while (!backlog.isEmpty() && pending.size() < limit) {
+            final QueuedItem queued = backlog.poll();
+            pending.put(completion.submit(() -> execute(queued.item, queued.queuedAt)), queued.item);
+        }
+    }
+
+    /**
+     * Executes one work item on the current thread.
+     *
+     * @param item The work item
+     * @param submittedAt The System.nanoTime() at which the item was queued
+     * @return The outcome
+     */
+    TestOutcome execute(TestWorkItem item, long submittedAt) {
+        StartupTimer.markFirstTest();
+        long startedAt = System.nanoTime();
+        long queueMillis = TimeUnit.NANOSECONDS.toMillis(startedAt - submittedAt);
+        TraceRecorder.Span span = TraceRecorder.begin("test", item.getDisplayName(), "attempt " + item.getAttempt());
+        FlightEvents.Scope event = FlightEvents.test(item.getDisplayName(), item.getAttempt());
+
+        ReportTest test = createReportTest(item.getDisplayName());
+        TestRunner.setCurrentTest(test);
+        TestLogBufferAppender.startTest(item.getDisplayName());
+
+        TestOutcome outcome = null;
+        try {
+            Class<?> testClass = Class.forName(item.getClassName(), true, Thread.currentThread().getContextClassLoader());
+            Request request = item.isMethod()
+                    ? Request.method(testClass, item.getMethodName())
+                    : Request.aClass(testClass);
+
+            JUnitCore core = new JUnitCore();
+            core.addListener(new ReportingListener(test, !item.isMethod()));
+            EnvironmentCircuitBreaker.startTracking();
+            Result result = core.run(request);
+            Throwable failure = result.getFailureCount() > 0 ? result.getFailures().get(0).getException() : null;
+            EnvironmentCircuitBreaker.recordResult(failure);
+
+            long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            if (controller != null) {
+                controller.recordCompletion(item, wallMillis,
+                        failure != null && EnvironmentCircuitBreaker.isInfrastructureFailure(failure));
+            }
+            outcome = toOutcome(item, result, queueMillis, wallMillis);
+            event.setResult(outcome.getStatus().name());
+            report(test, outcome, false);
+            return outcome;
+        } catch (ClassNotFoundException | LinkageError e) {
+            // LinkageError covers a failing static initializer (ExceptionInInitializerError)
+            // and missing dependencies (NoClassDefFoundError): the test fails, the run goes on
+            long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            String message;
+            if (e instanceof ClassNotFoundException) {
+                message = "Test class not found: " + item.getClassName();
+            } else {
+                message = "Test class could not be loaded: " + (e.getCause() != null ? e.getCause() : e);
+                LOGGER.error("Failed to load test class {}", item.getClassName(), e);
+            }
+            outcome = new TestOutcome(item, TestOutcome.Status.FAILED, queueMillis, wallMillis, message);
+            event.setResult(outcome.getStatus().name());
+            report(test, outcome, true);
+            return outcome;
+        } finally {
+            TestRunner.setCurrentTest(null);
+            if (outcome == null) {
+                // Not reported, so the test's log buffer has not been finished yet
+                TestLogBufferAppender.finishTest(false);
+            }
+            event.close();
+            span.close();
+        }
+    }
+
+    private TestOutcome toOutcome(TestWorkItem item, Result result, long queueMillis, long wallMillis) {
+        if (result.getFailureCount() > 0) {
+            Failure first = result.getFailures().get(0);
+            EnvironmentUnavailableException unavailable = EnvironmentCircuitBreaker.findUnavailable(first.getException());
+            if (unavailable != null) {
+                return new TestOutcome(item, TestOutcome.Status.BLOCKED, queueMillis, wallMillis, unavailable.getMessage());
+            }
+            return new TestOutcome(item, TestOutcome.Status.FAILED, queueMillis, wallMillis, first.getMessage());
+        }
+        if (result.getRunCount() == 0) {
+            return new TestOutcome(item, TestOutcome.Status.SKIPPED, queueMillis, wallMillis, "No tests were run");
+        }
+        return new TestOutcome(item, TestOutcome.Status.PASSED, queueMillis, wallMillis, null);
+    }
+
+    private ReportTest createReportTest(String name) {
+        return report != null ? report.createTest(name) : null;
+    }
+
+    private void report(ReportTest test, TestOutcome outcome, boolean logStatus) {
+        // The debug lines of the test are only kept if it failed
+        String testLog = TestLogBufferAppender.finishTest(outcome.getStatus() == TestOutcome.Status.FAILED);
+        RESULTS.info("{} {} (queue {} ms, wall {} ms)", outcome.getStatus(), outcome.getItem().getId(),
+                outcome.getQueueMillis(), outcome.getWallMillis());
+
+        if (test == null) {
+            return;
+        }
+        test.info(String.format("Queue time: %d ms, wall time: %d ms",
+                outcome.getQueueMillis(), outcome.getWallMillis()));
+        if (logStatus && outcome.getStatus() == TestOutcome.Status.FAILED) {
+            test.fail(String.valueOf(outcome.getMessage()));
+        } else if (outcome.getStatus() == TestOutcome.Status.SKIPPED) {
+            test.skip(outcome.getMessage());
+        } else if (outcome.isBlocked()) {
+            test.assignCategory("Blocked").warning("Blocked: " + outcome.getMessage());
+        }
+        if (testLog != null) {
+            test.info("Log of the failed test:").codeBlock(Status.INFO, testLog);
+        }
+    }
+
+    private void logSummary(List<TestOutcome> outcomes, long totalMillis) {
+        int passed = 0;
+        int failed = 0;
+        int skipped = 0;
+        int blocked = 0;
+        int flaky = 0;
+        long busyMillis = 0;
+        long queueMillis = 0;
+        for (TestOutcome outcome : TestOutcome.finalAttempts(outcomes)) {
+            switch (outcome.getStatus()) {
+                case PASSED:
+                    passed++;
+                    if (outcome.getItem().getAttempt() > 1) {
+                        flaky++;
+                    }
+                    break;
+                case FAILED:
+                    failed++;
+                    break;
+                case BLOCKED:
+                    blocked++;
+                    break;
+                default:
+                    skipped++;
+                    break;
+            }
+        }
+        for (TestOutcome outcome : outcomes) {
+            busyMillis += outcome.getWallMillis();
+            queueMillis += outcome.getQueueMillis();
+        }
+
+        RESULTS.info("Run summary: {} passed ({} flaky), {} failed, {} blocked, {} skipped in {} ms wall time",
+                passed, flaky, failed, blocked, skipped, totalMillis);
+        RESULTS.info("{} attempt(s), total test time {} ms, total queue time {} ms across {} worker(s)",
+                outcomes.size(), busyMillis, queueMillis, threads);
+    }
+
+    /**
+     * Mirrors JUnit notifications into the report, one node per method for class-level items.
+     */
+    private class ReportingListener extends RunListener {
+        private final ReportTest test;
+        private final boolean perMethodNodes;
+        private final ThreadLocal<Boolean> failed = new ThreadLocal<>();
+
+        ReportingListener(ReportTest test, boolean perMethodNodes) {
+            this.test = test;
+            this.perMethodNodes = perMethodNodes;
+        }
+
+        @Override
+        public void testStarted(Description description) {
+            failed.set(Boolean.FALSE);
+        }
+
+        @Override
+        public void testFailure(Failure failure) {
+            failed.set(Boolean.TRUE);
+            log(failure.getDescription(), Status.FAIL, failure.getMessage());
+        }
+
+        @Override
+        public void testAssumptionFailure(Failure failure) {
+            failed.set(Boolean.TRUE);
+            log(failure.getDescription(), Status.SKIP, failure.getMessage());
+        }
+
+        @Override
+        public void testIgnored(Description description) {
+            log(description, Status.SKIP, "Test ignored");
+        }
+
+        @Override
+        public void testFinished(Description description) {
+            if (!Boolean.TRUE.equals(failed.get())) {
+                log(description, Status.PASS, "Test passed");
+            }
+        }
+
+        private void log(Description description, Status status, String message) {
+            if (test == null) {
+                return;
+            }
+            ReportTest target = perMethodNodes && description.getMethodName() != null
+                    ? test.createNode(description.getMethodName())
+                    : test;
+            target.log(status, String.valueOf(message));
+        }
+    }
+
+    /**
+     * A work item waiting for a free worker, with the time it was queued.
+     */
+    private static class QueuedItem {
+        private final TestWorkItem item;
+        private final long queuedAt = System.nanoTime();
+
+        QueuedItem(TestWorkItem item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * Names worker threads so parallel log lines can be told apart.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "test-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
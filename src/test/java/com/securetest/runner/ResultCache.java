@@ -0,0 +1,169 @@
+package com.securetest.runner;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * On-disk record of the last passing result of each test together with the
+ * {@link TestFingerprint} of its inputs at the time. A test whose fingerprint is
+ * unchanged can reuse its result instead of running again. Only passes are
+ * recorded, so failed and skipped tests always run again.
+ * Each line records: test ID, fingerprint, timestamp and wall time.
+ */
+public class ResultCache {
+    private static final Logger LOGGER = LogManager.getLogger(ResultCache.class);
+    public static final String DEFAULT_FILE = "test-output/history/result-cache.log";
+
+    private final File file;
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * The recorded pass of a single test ID.
+     */
+    public static class Entry {
+        private final String fingerprint;
+        private final long recordedAt;
+        private final long wallMillis;
+
+        Entry(String fingerprint, long recordedAt, long wallMillis) {
+            this.fingerprint = fingerprint;
+            this.recordedAt = recordedAt;
+            this.wallMillis = wallMillis;
+        }
+
+        public long getRecordedAt() {
+            return recordedAt;
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+    }
+
+    /**
+     * Creates a cache backed by the given file. Call {@link #load()} to read it.
+     *
+     * @param file The cache file
+     */
+    public ResultCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the default cache file.
+     *
+     * @return The loaded cache
+     */
+    public static ResultCache loadDefault() {
+        ResultCache cache = new ResultCache(new File(DEFAULT_FILE));
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Reads all recorded results from disk. Malformed lines are skipped.
+     */
+    public synchronized void load() {
+        entries.clear();
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 4) {
+                    continue;
+                }
+                try {
+                    entries.put(fields[0], new Entry(fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                } catch (NumberFormatException e) {
+                    LOGGER.debug("Skipping malformed result cache line: {}", line);
+                }
+            }
+            LOGGER.info("Loaded {} cached result(s) from {}", entries.size(), file.getPath());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read result cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Looks up a reusable result.
+     *
+     * @param id The test ID
+     * @param fingerprint The current fingerprint of the test's inputs
+     * @return The recorded pass, or null if there is none or the inputs have changed
+     */
+    public synchronized Entry find(String id, String fingerprint) {
+        Entry entry = entries.get(id);
+        return entry != null && entry.fingerprint.equals(fingerprint) ? entry : null;
+    }
+
+    /**
+     * Records the final outcomes of a run: passes are stored with their
+     * fingerprint, any other result removes the test from the cache.
+     *
+     * @param outcomes The final outcome of every executed test
+     * @param fingerprints Provides the fingerprint of each work item
+     */
+    public synchronized void update(List<TestOutcome> outcomes, TestFingerprint fingerprints) {
+        long now = System.currentTimeMillis();
+        for (TestOutcome outcome : outcomes) {
+            // Keep the original record of a reused pass, including when it was recorded
+            if (outcome.isReused()) {
+                continue;
+            }
+            String id = outcome.getItem().getId();
+            // A pass that needed a retry is flaky, so it runs again next time
+            if (outcome.getStatus() == TestOutcome.Status.PASSED && outcome.getItem().getAttempt() == 1) {
+                entries.put(id, new Entry(fingerprints.of(outcome.getItem()), now, outcome.getWallMillis()));
+            } else {
+                entries.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Writes the cache to disk, replacing the previous file.
+     */
+    public synchronized void save() {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(entry.getKey() + "\t" + value.fingerprint + "\t" + value.recordedAt
+                        + "\t" + value.wallMillis + "\n");
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write result cache: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to replace result cache: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.securetest.runner;
+
+import com.securetest.utils.PropertyManager;
+
+/**
+ * Decides whether a failed work item is re-run in the same JVM.
+ * Driven by {@code test.retry.count}, the number of extra attempts per test.
+ */
+public class RetryPolicy {
+    private final int maxRetries;
+    
+    /**
+     * Creates a retry policy.
+     * 
+     * @param maxRetries Number of extra attempts a failed test gets
+     */
+    public RetryPolicy(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+    
+    /**
+     * Creates the retry policy configured by test.retry.count.
+     * 
+     * @return The configured policy
+     */
+    public static RetryPolicy fromConfig() {
+        return new RetryPolicy(PropertyManager.getIntProperty("test.retry.count", 0));
+    }
+    
+    /**
+     * Creates a policy that never retries.
+     * 
+     * @return A policy with no retries
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy(0);
+    }
+    
+    /**
+     * Checks whether an outcome should be retried.
+     * 
+     * @param outcome The outcome of the latest attempt
+     * @return true if the test failed and has attempts left
+     */
+    public boolean shouldRetry(TestOutcome outcome) {
+        return outcome.isFailed() && outcome.getItem().getAttempt() <= maxRetries;
+    }
+    
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+}
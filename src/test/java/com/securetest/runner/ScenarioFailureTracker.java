@@ -0,0 +1,41 @@
+package com.securetest.runner;
+
+import io.cucumber.plugin.ConcurrentEventListener;
+import io.cucumber.plugin.event.EventPublisher;
+import io.cucumber.plugin.event.Result;
+import io.cucumber.plugin.event.Status;
+import io.cucumber.plugin.event.TestCaseStarted;
+import io.cucumber.plugin.event.TestStepFinished;
+
+/**
+ * Cucumber plugin that keeps the error of the first failed step of the scenario
+ * running on each thread. The scenario object handed to hooks only tells whether
+ * a scenario failed; the circuit breaker needs the error to tell an unreachable
+ * environment from a failing test.
+ * <p>
+ * Events of a scenario are published on the thread that runs it, so the error
+ * is available to the scenario's own {@code @After} hooks.
+ */
+public class ScenarioFailureTracker implements ConcurrentEventListener {
+    private static final ThreadLocal<Throwable> failure = new ThreadLocal<>();
+
+    @Override
+    public void setEventPublisher(EventPublisher publisher) {
+        publisher.registerHandlerFor(TestCaseStarted.class, event -> failure.remove());
+        publisher.registerHandlerFor(TestStepFinished.class, event -> {
+            Result result = event.getResult();
+            if (result.getStatus() == Status.FAILED && result.getError() != null && failure.get() == null) {
+                failure.set(result.getError());
+            }
+        });
+    }
+
+    /**
+     * Gets the error of the first failed step of the scenario on the current thread.
+     *
+     * @return The error, or null if no step has failed or the plugin is not registered
+     */
+    public static Throwable getFailure() {
+        return failure.get();
+    }
+}
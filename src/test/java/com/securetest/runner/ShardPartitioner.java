@@ -0,0 +1,174 @@
+package com.securetest.runner;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Splits work items into balanced shards for cross-JVM execution.
+ * <p>
+ * Every test has a deterministic shard preference order derived from its class
+ * name (rendezvous hashing), so the methods of a class stay together. Tests are
+ * placed heaviest first into the most preferred shard that still has capacity,
+ * and adding a test only moves the few tests that no longer fit.
+ * <p>
+ * Without a scheduler every test weighs the same, so the partition only depends
+ * on the selected tests and every agent computes the same one. With a scheduler
+ * the shards are balanced by estimated duration, which is only consistent when
+ * every agent estimates from the same history.
+ */
+public class ShardPartitioner {
+    private static final Logger LOGGER = LogManager.getLogger(ShardPartitioner.class);
+
+    // Shards may exceed the ideal (total / count) load by this fraction before tests spill over
+    private static final double CAPACITY_TOLERANCE = 0.10;
+
+    private final TestScheduler scheduler;
+
+    /**
+     * Creates a partitioner that balances the number of tests per shard.
+     */
+    public ShardPartitioner() {
+        this(null);
+    }
+
+    /**
+     * Creates a partitioner that balances using the scheduler's duration estimates.
+     *
+     * @param scheduler The scheduler providing per-item estimates, or null to weigh all tests the same
+     */
+    public ShardPartitioner(TestScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Partitions work items into the given number of shards.
+     *
+     * @param items The work items
+     * @param shardCount The number of shards
+     * @return One list of work items per shard
+     */
+    public List<List<TestWorkItem>> partition(List<TestWorkItem> items, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+
+        List<TestWorkItem> sorted = new ArrayList<>(items);
+        Collections.sort(sorted, new Comparator<TestWorkItem>() {
+            @Override
+            public int compare(TestWorkItem a, TestWorkItem b) {
+                int byDuration = Long.compare(weight(b), weight(a));
+                return byDuration != 0 ? byDuration : a.getId().compareTo(b.getId());
+            }
+        });
+
+        long total = 0;
+        long largest = 0;
+        for (TestWorkItem item : sorted) {
+            long estimate = weight(item);
+            total += estimate;
+            largest = Math.max(largest, estimate);
+        }
+        // Rounded down, so a small suite is still spread over all shards
+        long capacity = Math.max(largest, Math.max((total + shardCount - 1) / shardCount,
+                (long) Math.floor(total * (1 + CAPACITY_TOLERANCE) / shardCount)));
+
+        List<List<TestWorkItem>> shards = new ArrayList<>();
+        long[] loads = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<TestWorkItem>());
+        }
+
+        for (TestWorkItem item : sorted) {
+            long estimate = weight(item);
+            int target = -1;
+            for (int shard : preferenceOrder(item.getClassName(), shardCount)) {
+                if (loads[shard] + estimate <= capacity) {
+                    target = shard;
+                    break;
+                }
+            }
+            if (target < 0) {
+                target = leastLoaded(loads);
+            }
+            shards.get(target).add(item);
+            loads[target] += estimate;
+        }
+
+        for (int i = 0; i < shardCount; i++) {
+            LOGGER.debug("Shard {}/{}: {} item(s), weight {}", i, shardCount, shards.get(i).size(), loads[i]);
+        }
+        return shards;
+    }
+
+    /**
+     * Selects the work items belonging to one shard.
+     *
+     * @param items All work items
+     * @param shardIndex Zero-based index of the shard
+     * @param shardCount The number of shards
+     * @return The work items of that shard
+     */
+    public List<TestWorkItem> select(List<TestWorkItem> items, int shardIndex, int shardCount) {
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Shard index must be between 0 and " + (shardCount - 1));
+        }
+        List<TestWorkItem> selected = partition(items, shardCount).get(shardIndex);
+        LOGGER.info("Shard {}/{} selected {} of {} work item(s)", shardIndex, shardCount, selected.size(), items.size());
+        return selected;
+    }
+
+    private long weight(TestWorkItem item) {
+        return scheduler != null ? scheduler.estimate(item) : 1;
+    }
+
+    /**
+     * Orders shards by their rendezvous score for a key, highest first.
+     */
+    private static List<Integer> preferenceOrder(String key, int shardCount) {
+        final long idHash = fnv1a(key);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compareUnsigned(score(idHash, b), score(idHash, a));
+            }
+        });
+        return order;
+    }
+
+    private static long score(long idHash, int shard) {
+        // SplitMix64 finalizer over the combined ID hash and shard index
+        long z = idHash + (shard + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int leastLoaded(long[] loads) {
+        int best = 0;
+        for (int i = 1; i < loads.length; i++) {
+            if (loads[i] < loads[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,173 @@
+package com.securetest.runner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ShardPartitioner} assigns every test exactly once, the same way on every agent.
+ */
+public class ShardPartitionerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void assignsEveryTestToExactlyOneShard() {
+        List<TestWorkItem> items = classes(30);
+
+        List<List<TestWorkItem>> shards = new ShardPartitioner().partition(items, 3);
+
+        assertEquals(3, shards.size());
+        Set<String> assigned = new HashSet<>();
+        int total = 0;
+        for (List<TestWorkItem> shard : shards) {
+            total += shard.size();
+            // Capacity is the ideal 10 tests plus 10%
+            assertTrue("Shard too large: " + shard.size(), shard.size() <= 11);
+            for (TestWorkItem item : shard) {
+                assigned.add(item.getId());
+            }
+        }
+        assertEquals(30, total);
+        assertEquals(30, assigned.size());
+    }
+
+    @Test
+    public void spreadsASmallSuiteOverAllShards() {
+        List<List<TestWorkItem>> shards = new ShardPartitioner().partition(classes(2), 2);
+
+        assertEquals(1, shards.get(0).size());
+        assertEquals(1, shards.get(1).size());
+    }
+
+    @Test
+    public void partitionDoesNotDependOnInputOrder() {
+        List<TestWorkItem> items = classes(25);
+        List<TestWorkItem> shuffled = new ArrayList<>(items);
+        Collections.reverse(shuffled);
+
+        assertEquals(ids(new ShardPartitioner().partition(items, 4)),
+                ids(new ShardPartitioner().partition(shuffled, 4)));
+    }
+
+    @Test
+    public void keepsTheMethodsOfAClassTogether() {
+        List<TestWorkItem> items = new ArrayList<>();
+        for (int c = 0; c < 6; c++) {
+            for (int m = 0; m < 3; m++) {
+                items.add(new TestWorkItem("suite.Class" + c, "method" + m));
+            }
+        }
+
+        // 18 methods of 6 classes on 2 shards leaves room for whole classes
+        Map<String, Integer> shardOfClass = new HashMap<>();
+        List<List<TestWorkItem>> shards = new ShardPartitioner().partition(items, 2);
+        int moved = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (TestWorkItem item : shards.get(shard)) {
+                Integer previous = shardOfClass.put(item.getClassName(), shard);
+                if (previous != null && previous != shard) {
+                    moved++;
+                }
+            }
+        }
+        assertTrue("Methods split from their class: " + moved, moved <= 1);
+    }
+
+    @Test
+    public void addingATestMovesFewOthers() {
+        List<TestWorkItem> items = classes(40);
+        List<List<String>> before = ids(new ShardPartitioner().partition(items, 4));
+        items.add(new TestWorkItem("suite.Added"));
+        List<List<String>> after = ids(new ShardPartitioner().partition(items, 4));
+
+        int moved = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            for (String id : before.get(shard)) {
+                if (!after.get(shard).contains(id)) {
+                    moved++;
+                }
+            }
+        }
+        assertTrue("Too many tests moved: " + moved, moved <= 4);
+    }
+
+    @Test
+    public void balancesByDurationWithASharedHistory() throws IOException {
+        List<String> lines = new ArrayList<>();
+        List<TestWorkItem> items = classes(12);
+        for (int i = 0; i < items.size(); i++) {
+            lines.add("1\t" + items.get(i).getId() + "\tPASSED\t" + ((i + 1) * 1000));
+        }
+        File file = folder.newFile();
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        DurationHistory history = new DurationHistory(file);
+        history.load();
+        TestScheduler scheduler = new TestScheduler(history);
+
+        List<List<TestWorkItem>> shards = new ShardPartitioner(scheduler).partition(items, 3);
+
+        // 78 seconds in total, so 26 per shard plus 10%
+        for (List<TestWorkItem> shard : shards) {
+            long load = 0;
+            for (TestWorkItem item : shard) {
+                load += scheduler.estimate(item);
+            }
+            assertTrue("Shard too slow: " + load, load <= 28600);
+        }
+    }
+
+    @Test
+    public void selectsOneShardOfThePartition() {
+        List<TestWorkItem> items = classes(10);
+        ShardPartitioner partitioner = new ShardPartitioner();
+
+        List<List<TestWorkItem>> shards = partitioner.partition(items, 2);
+        assertEquals(shards.get(1), partitioner.select(items, 1, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShardIndexOutOfRange() {
+        new ShardPartitioner().select(classes(3), 2, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroShards() {
+        new ShardPartitioner().partition(classes(3), 0);
+    }
+
+    private static List<TestWorkItem> classes(int count) {
+        List<TestWorkItem> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(new TestWorkItem("suite.Test" + i));
+        }
+        return items;
+    }
+
+    private static List<List<String>> ids(List<List<TestWorkItem>> shards) {
+        List<List<String>> ids = new ArrayList<>();
+        for (List<TestWorkItem> shard : shards) {
+            List<String> shardIds = new ArrayList<>();
+            for (TestWorkItem item : shard) {
+                shardIds.add(item.getId());
+            }
+            ids.add(shardIds);
+        }
+        return ids;
+    }
+}
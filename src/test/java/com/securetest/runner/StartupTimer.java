@@ -0,0 +1,159 @@
+package com.securetest.runner;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the time from JVM start (or from a daemon request) to the first test
+ * starting, and appends it to a history file together with the current commit,
+ * so startup regressions show up across commits.
+ * Each line records: timestamp, commit, mode (cold, cds or daemon) and milliseconds.
+ * Bootstrap steps are recorded the same way, with the mode {@code bootstrap:<step>}.
+ */
+public class StartupTimer {
+    private static final Logger LOGGER = LogManager.getLogger(StartupTimer.class);
+    public static final String DEFAULT_FILE = "test-output/history/startup.log";
+
+    private static final AtomicBoolean recorded = new AtomicBoolean();
+    private static volatile long originMillis = -1;
+    private static volatile String mode;
+
+    private StartupTimer() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Restarts the measurement, e.g. when a daemon receives a new run request.
+     *
+     * @param requestMode The mode recorded with the next measurement
+     */
+    public static void restart(String requestMode) {
+        originMillis = System.currentTimeMillis();
+        mode = requestMode;
+        recorded.set(false);
+    }
+
+    /**
+     * Records the time to first test. Only the first call after start or
+     * {@link #restart(String)} is recorded, so every test runner may call it.
+     */
+    public static void markFirstTest() {
+        if (!recorded.compareAndSet(false, true)) {
+            return;
+        }
+
+        long origin = originMillis >= 0 ? originMillis : ManagementFactory.getRuntimeMXBean().getStartTime();
+        long elapsed = System.currentTimeMillis() - origin;
+        String currentMode = mode != null ? mode : (isUsingSharedArchive() ? "cds" : "cold");
+        String commit = currentCommit();
+
+        File file = new File(DEFAULT_FILE);
+        String previous = lastEntry(file, currentMode);
+        if (previous != null) {
+            LOGGER.info("Time to first test: {} ms ({}), previously {}", elapsed, currentMode, previous);
+        } else {
+            LOGGER.info("Time to first test: {} ms ({})", elapsed, currentMode);
+        }
+
+        append(file, commit, currentMode, elapsed);
+    }
+
+    /**
+     * Records the duration of one bootstrap step.
+     *
+     * @param step The step name
+     * @param millis The step duration in milliseconds
+     */
+    public static void recordStep(String step, long millis) {
+        append(new File(DEFAULT_FILE), currentCommit(), "bootstrap:" + step, millis);
+    }
+
+    private static synchronized void append(File file, String commit, String entryMode, long millis) {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+            writer.write(System.currentTimeMillis() + "\t" + commit + "\t" + entryMode + "\t" + millis + "\n");
+        } catch (IOException e) {
+            LOGGER.warn("Failed to record startup timing: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isUsingSharedArchive() {
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-XX:SharedArchiveFile")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the most recent entry of the same mode, formatted for logging.
+     */
+    private static String lastEntry(File file, String entryMode) {
+        if (!file.exists()) {
+            return null;
+        }
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length >= 4 && fields[2].equals(entryMode)) {
+                    last = fields[3] + " ms at " + fields[1];
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to read startup history: {}", e.getMessage());
+        }
+        return last;
+    }
+
+    /**
+     * Reads the checked-out commit from .git without starting a git process.
+     */
+    private static String currentCommit() {
+        try {
+            File gitDir = new File(".git");
+            String head = new String(Files.readAllBytes(new File(gitDir, "HEAD").toPath()), StandardCharsets.UTF_8).trim();
+            if (!head.startsWith("ref: ")) {
+                return abbreviate(head);
+            }
+            String ref = head.substring(5);
+            File refFile = new File(gitDir, ref);
+            if (refFile.exists()) {
+                return abbreviate(new String(Files.readAllBytes(refFile.toPath()), StandardCharsets.UTF_8).trim());
+            }
+            for (String line : Files.readAllLines(new File(gitDir, "packed-refs").toPath(), StandardCharsets.UTF_8)) {
+                if (line.endsWith(" " + ref)) {
+                    return abbreviate(line.substring(0, line.indexOf(' ')));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not determine current commit: {}", e.getMessage());
+        }
+        return "unknown";
+    }
+
+    private static String abbreviate(String commit) {
+        return commit.length() > 10 ? commit.substring(0, 10) : commit;
+    }
+}
@@ -0,0 +1,305 @@
+package com.securetest.runner;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.WriterAppender;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.filter.AbstractFilterable;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resident test server that keeps the JVM, parsed configuration and pooled
+ * browsers warm between runs.
+ * <p>
+ * The daemon only listens on the loopback interface and writes its port and a
+ * random token to a state file readable by the current user only. Requests are
+ * executed one at a time. Test and step classes are loaded through a fresh
+ * class loader per request from the class path directories, e.g. target/test-classes,
+ * so recompiled tests are picked up without a restart. Classes that are only in a
+ * jar are loaded once, like all other classes.
+ * <p>
+ * Protocol (one line per message, tab-separated fields):
+ * <pre>
+ * client: TOKEN token
+ * client: ARG value              (once per command line argument)
+ * client: RUN | STOP
+ * daemon: log lines ... then EXIT status
+ * </pre>
+ */
+public class TestDaemon {
+    private static final Logger LOGGER = LogManager.getLogger(TestDaemon.class);
+    public static final String STATE_FILE = "test-output/daemon/daemon.properties";
+
+    // Packages whose classes are reloaded for every request
+    private static final String[] RELOADABLE_PACKAGES = {"com.securetest.tests.", "com.securetest.steps."};
+    // Used when log4j2.xml defines no LOG_PATTERN; %maskedMsg and %maskedEx mask secrets like the console does
+    private static final String DEFAULT_LOG_PATTERN = "%d{HH:mm:ss.SSS} [%t] %-5level %logger{36} - %maskedMsg%n%maskedEx";
+
+    private final int port;
+    private final File stateFile;
+    private volatile boolean stopped;
+
+    /**
+     * Runs a single test request inside the daemon.
+     */
+    public interface RequestHandler {
+        /**
+         * @param args The command line arguments of the request
+         * @return true if any test failed
+         */
+        boolean run(String[] args);
+    }
+
+    /**
+     * Creates a daemon.
+     *
+     * @param port The loopback port to listen on, 0 for any free port
+     * @param stateFile The file the port and token are published in
+     */
+    public TestDaemon(int port, File stateFile) {
+        this.port = port;
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * Serves requests until a client sends STOP.
+     *
+     * @param handler Executes the runs
+     * @throws IOException If the socket or state file cannot be created
+     */
+    public void serve(RequestHandler handler) throws IOException {
+        String token = new BigInteger(128, new SecureRandom()).toString(16);
+        try (ServerSocket server = new ServerSocket(port, 10, InetAddress.getLoopbackAddress())) {
+            publishState(server.getLocalPort(), token);
+            LOGGER.info("Test daemon listening on 127.0.0.1:{}, state in {}", server.getLocalPort(), stateFile.getPath());
+            if (ReloadingClassLoader.classPathDirectories().length == 0) {
+                LOGGER.warn("No class directory on the class path, recompiled tests need a daemon restart");
+            }
+
+            server.setSoTimeout(1000);
+            while (!stopped) {
+                try (Socket socket = server.accept()) {
+                    handle(socket, token, handler);
+                } catch (SocketTimeoutException e) {
+                    // Periodic wake-up to re-check the stop flag
+                } catch (IOException e) {
+                    LOGGER.warn("Daemon client connection failed: {}", e.getMessage());
+                }
+            }
+        } finally {
+            if (stateFile.exists() && !stateFile.delete()) {
+                LOGGER.warn("Failed to delete daemon state file {}", stateFile.getPath());
+            }
+            LOGGER.info("Test daemon stopped");
+        }
+    }
+
+    private void handle(Socket socket, String token, RequestHandler handler) throws IOException {
+        socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(30));
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+
+        String[] hello = split(in.readLine());
+        if (hello.length < 2 || !"TOKEN".equals(hello[0]) || !MessageDigest.isEqual(
+                token.getBytes(StandardCharsets.UTF_8), hello[1].getBytes(StandardCharsets.UTF_8))) {
+            LOGGER.warn("Rejected daemon client with an invalid token");
+            out.println("EXIT\t2");
+            return;
+        }
+
+        List<String> args = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] message = split(line);
+            if ("ARG".equals(message[0])) {
+                args.add(message.length > 1 ? line.substring(4) : "");
+            } else if ("STOP".equals(message[0])) {
+                stopped = true;
+                out.println("EXIT\t0");
+                return;
+            } else if ("RUN".equals(message[0])) {
+                // Runs can take much longer than reading the request
+                socket.setSoTimeout(0);
+                boolean failed = runForwardingLogs(args.toArray(new String[0]), handler, socket.getOutputStream());
+                out.println("EXIT\t" + (failed ? 1 : 0));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs one request on this thread with a fresh class loader for test classes,
+     * copying log output to the client while it runs.
+     */
+    private boolean runForwardingLogs(String[] args, RequestHandler handler, OutputStream client) {
+        long start = System.nanoTime();
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        Configuration config = context.getConfiguration();
+        Appender appender = createClientAppender(config, client);
+        appender.start();
+        for (LoggerConfig loggerConfig : config.getLoggers().values()) {
+            loggerConfig.addAppender(appender, Level.INFO, null);
+        }
+        config.getRootLogger().addAppender(appender, Level.INFO, null);
+        context.updateLoggers();
+
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        ReloadingClassLoader loader = new ReloadingClassLoader(previous);
+        thread.setContextClassLoader(loader);
+        try {
+            return handler.run(args);
+        } catch (RuntimeException e) {
+            LOGGER.error("Daemon run failed: {}", e.getMessage(), e);
+            return true;
+        } finally {
+            thread.setContextClassLoader(previous);
+            try {
+                loader.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close test class loader: {}", e.getMessage());
+            }
+            LOGGER.info("Daemon run finished in {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            for (LoggerConfig loggerConfig : config.getLoggers().values()) {
+                loggerConfig.removeAppender(appender.getName());
+            }
+            config.getRootLogger().removeAppender(appender.getName());
+            context.updateLoggers();
+            appender.stop();
+        }
+    }
+
+    private static Appender createClientAppender(Configuration config, OutputStream client) {
+        // The console's layout masks secrets in %maskedMsg, and its filter sets the level clients see
+        String pattern = config.getStrSubstitutor().replace("${LOG_PATTERN}");
+        if (pattern == null || pattern.contains("${")) {
+            pattern = DEFAULT_LOG_PATTERN;
+        }
+        Filter filter = null;
+        Appender console = config.getAppender("Console");
+        if (console instanceof AbstractFilterable) {
+            filter = ((AbstractFilterable) console).getFilter();
+        }
+        return WriterAppender.newBuilder()
+                .setName("DaemonClient-" + System.nanoTime())
+                .setTarget(new OutputStreamWriter(client, StandardCharsets.UTF_8))
+                .setLayout(PatternLayout.newBuilder().withPattern(pattern).withConfiguration(config).build())
+                .setFilter(filter)
+                .build();
+    }
+
+    /**
+     * Writes the port and token to the state file, readable by the current user only.
+     */
+    private void publishState(int boundPort, String token) throws IOException {
+        File parent = stateFile.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Files.deleteIfExists(stateFile.toPath());
+        try {
+            Files.createFile(stateFile.toPath(),
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(stateFile.toPath());
+        }
+
+        Properties state = new Properties();
+        state.setProperty("port", String.valueOf(boundPort));
+        state.setProperty("token", token);
+        try (OutputStream out = new FileOutputStream(stateFile)) {
+            state.store(out, "Secure test daemon");
+        }
+    }
+
+    private static String[] split(String line) {
+        return line == null ? new String[] {""} : line.split("\t", -1);
+    }
+
+    /**
+     * Loads test and step classes from the class path directories itself
+     * (child first), so each request sees the latest compiled version.
+     * Everything else, including the runner and utilities, comes from the parent.
+     */
+    static class ReloadingClassLoader extends URLClassLoader {
+        ReloadingClassLoader(ClassLoader parent) {
+            super(classPathDirectories(), parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!isReloadable(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    try {
+                        loaded = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        loaded = super.loadClass(name, false);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+
+        private static boolean isReloadable(String name) {
+            for (String prefix : RELOADABLE_PACKAGES) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static URL[] classPathDirectories() {
+            List<URL> urls = new ArrayList<>();
+            for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                File file = new File(entry);
+                if (file.isDirectory()) {
+                    try {
+                        urls.add(file.toURI().toURL());
+                    } catch (IOException e) {
+                        LOGGER.debug("Skipping class path entry {}: {}", entry, e.getMessage());
+                    }
+                }
+            }
+            return urls.toArray(new URL[0]);
+        }
+    }
+}
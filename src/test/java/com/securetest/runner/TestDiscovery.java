@@ -0,0 +1,155 @@
+package com.securetest.runner;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Discovers JUnit test classes and methods on the classpath.
+ */
+public class TestDiscovery {
+    private static final Logger LOGGER = LogManager.getLogger(TestDiscovery.class);
+    public static final String DEFAULT_TEST_PACKAGE = "com.securetest.tests";
+
+    private TestDiscovery() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Finds all concrete classes in a package that declare JUnit {@code @Test} methods.
+     *
+     * @param packageName The package to scan
+     * @return Sorted list of fully qualified class names
+     */
+    public static List<String> findTestClasses(String packageName) {
+        List<String> classNames = new ArrayList<>();
+        String path = packageName.replace('.', '/');
+
+        try {
+            Enumeration<URL> resources = Thread.currentThread().getContextClassLoader().getResources(path);
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                if ("jar".equals(resource.getProtocol())) {
+                    scanJar(resource, path, classNames);
+                } else {
+                    scanDirectory(new File(URLDecoder.decode(resource.getFile(), "UTF-8")), packageName, classNames);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to scan package {} for tests: {}", packageName, e.getMessage());
+        }
+
+        List<String> testClasses = new ArrayList<>();
+        for (String className : classNames) {
+            // A package can be visible through more than one class loader, e.g. in daemon mode
+            if (isTestClass(className) && !testClasses.contains(className)) {
+                testClasses.add(className);
+            }
+        }
+        Collections.sort(testClasses);
+
+        LOGGER.info("Discovered {} test classes in {}", testClasses.size(), packageName);
+        return testClasses;
+    }
+
+    /**
+     * Lists the {@code @Test} methods of a class in declaration-independent (sorted) order.
+     *
+     * @param className The fully qualified class name
+     * @return Sorted list of test method names
+     */
+    public static List<String> findTestMethods(String className) {
+        List<String> methods = new ArrayList<>();
+        try {
+            for (Method method : Class.forName(className, false, Thread.currentThread().getContextClassLoader()).getMethods()) {
+                if (method.isAnnotationPresent(Test.class)) {
+                    methods.add(method.getName());
+                }
+            }
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOGGER.error("Failed to load test class {}: {}", className, e.getMessage());
+        }
+        Collections.sort(methods);
+        return methods;
+    }
+
+    /**
+     * Builds work items for the given classes.
+     *
+     * @param classNames The test classes
+     * @param perMethod true to create one item per test method, false for one per class
+     * @return The work items
+     */
+    public static List<TestWorkItem> toWorkItems(List<String> classNames, boolean perMethod) {
+        List<TestWorkItem> items = new ArrayList<>();
+        for (String className : classNames) {
+            if (perMethod) {
+                for (String method : findTestMethods(className)) {
+                    items.add(new TestWorkItem(className, method));
+                }
+            } else {
+                items.add(new TestWorkItem(className));
+            }
+        }
+        return items;
+    }
+
+    private static boolean isTestClass(String className) {
+        try {
+            Class<?> clazz = Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+            if (Modifier.isAbstract(clazz.getModifiers()) || !Modifier.isPublic(clazz.getModifiers())) {
+                return false;
+            }
+            for (Method method : clazz.getMethods()) {
+                if (method.isAnnotationPresent(Test.class)) {
+                    return true;
+                }
+            }
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOGGER.warn("Skipping class {} during discovery: {}", className, e.getMessage());
+        }
+        return false;
+    }
+
+    private static void scanDirectory(File directory, String packageName, List<String> classNames) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                scanDirectory(file, packageName + "." + file.getName(), classNames);
+            } else if (file.getName().endsWith(".class") && !file.getName().contains("$")) {
+                classNames.add(packageName + "." + file.getName().substring(0, file.getName().length() - 6));
+            }
+        }
+    }
+
+    private static void scanJar(URL resource, String path, List<String> classNames) throws IOException {
+        JarURLConnection connection = (JarURLConnection) resource.openConnection();
+        connection.setUseCaches(false);
+        try (JarFile jar = connection.getJarFile()) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.startsWith(path + "/") && name.endsWith(".class") && !name.contains("$")) {
+                    classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+                }
+            }
+        }
+    }
+}
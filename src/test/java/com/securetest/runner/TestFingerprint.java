@@ -0,0 +1,245 @@
+package com.securetest.runner;
+
+import com.securetest.utils.CommandLineParser;
+import com.securetest.utils.PropertyManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes a digest of everything a test class depends on, so a recorded result
+ * can be reused while none of it has changed. The inputs are:
+ * <ul>
+ * <li>the bytecode of the test class and the classes of its own package it reaches
+ * (superclasses, nested classes, helpers),</li>
+ * <li>the bytecode of the framework classes it reaches under {@code com.securetest.utils}
+ * and {@code com.securetest.capabilities}, followed transitively,</li>
+ * <li>the effective value of every {@code config.properties} key named by a string
+ * literal in any of those classes,</li>
+ * <li>the browser, headless mode and environment of the run.</li>
+ * </ul>
+ * Reached classes are found by reading the class names in each class file's
+ * constant pool, so no test code is executed. Credentials are not part of the
+ * fingerprint. Only JUnit test classes are fingerprinted; Cucumber scenarios
+ * always run.
+ */
+public class TestFingerprint {
+    private static final Logger LOGGER = LogManager.getLogger(TestFingerprint.class);
+    private static final String[] FRAMEWORK_PACKAGES = {"com/securetest/utils/", "com/securetest/capabilities/"};
+    private static final Pattern CLASS_REFERENCE = Pattern.compile("com/securetest/[A-Za-z0-9_$/]+");
+
+    private final ClassLoader loader;
+    private final Map<String, ClassInfo> classes = new HashMap<>();
+    private final Map<String, String> fingerprints = new HashMap<>();
+
+    /**
+     * What one class file contributes to a fingerprint.
+     */
+    private static class ClassInfo {
+        private final String digest;
+        private final Set<String> references = new HashSet<>();
+        private final Set<String> literals = new HashSet<>();
+
+        ClassInfo(String digest) {
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Creates a fingerprinter reading class files through the given loader.
+     *
+     * @param loader The class loader the tests are run from
+     */
+    public TestFingerprint(ClassLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Gets the fingerprint of a work item. Items of the same class share a fingerprint.
+     *
+     * @param item The work item
+     * @return The hex-encoded SHA-256 fingerprint
+     */
+    public synchronized String of(TestWorkItem item) {
+        String fingerprint = fingerprints.get(item.getClassName());
+        if (fingerprint == null) {
+            fingerprint = compute(item.getClassName());
+            fingerprints.put(item.getClassName(), fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private String compute(String className) {
+        String root = className.replace('.', '/');
+        String ownPackage = root.substring(0, root.lastIndexOf('/') + 1);
+
+        // Follow references breadth-first, staying inside the test's package and the framework packages
+        Map<String, String> reached = new TreeMap<>();
+        Set<String> literals = new TreeSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            String name = queue.poll();
+            if (reached.containsKey(name)) {
+                continue;
+            }
+            ClassInfo info = read(name);
+            reached.put(name, info != null ? info.digest : "missing");
+            if (info == null) {
+                continue;
+            }
+            literals.addAll(info.literals);
+            for (String reference : info.references) {
+                if (!reached.containsKey(reference) && isFollowed(reference, ownPackage)) {
+                    queue.add(reference);
+                }
+            }
+        }
+
+        StringBuilder inputs = new StringBuilder();
+        for (Map.Entry<String, String> entry : reached.entrySet()) {
+            inputs.append("class ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        Set<String> configKeys = PropertyManager.getPropertyNames();
+        for (String literal : literals) {
+            if (configKeys.contains(literal)) {
+                inputs.append("config ").append(literal).append('=').append(PropertyManager.getProperty(literal)).append('\n');
+            }
+        }
+        inputs.append("browser ").append(CommandLineParser.getOptionValue("b", "chrome")).append('\n');
+        inputs.append("headless ").append(CommandLineParser.getBooleanOption("headless", false)).append('\n');
+        inputs.append("environment ").append(PropertyManager.getProperty("environment", "default")).append('\n');
+
+        LOGGER.debug("Fingerprinted {} from {} class(es)", className, reached.size());
+        return sha256(inputs.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isFollowed(String reference, String ownPackage) {
+        if (reference.startsWith(ownPackage) && reference.indexOf('/', ownPackage.length()) < 0) {
+            return true;
+        }
+        for (String prefix : FRAMEWORK_PACKAGES) {
+            if (reference.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ClassInfo read(String internalName) {
+        if (classes.containsKey(internalName)) {
+            return classes.get(internalName);
+        }
+        ClassInfo info = null;
+        try (InputStream in = loader.getResourceAsStream(internalName + ".class")) {
+            if (in != null) {
+                byte[] bytecode = readAll(in);
+                info = new ClassInfo(sha256(bytecode));
+                scanConstantPool(bytecode, info);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read class file of {}: {}", internalName, e.getMessage());
+        }
+        classes.put(internalName, info);
+        return info;
+    }
+
+    /**
+     * Collects the framework classes named anywhere in the constant pool (class
+     * entries, descriptors and signatures) and all string literals.
+     */
+    private static void scanConstantPool(byte[] bytecode, ClassInfo info) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytecode));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        Set<Integer> stringIndexes = new HashSet<>();
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    utf8[i] = in.readUTF();
+                    break;
+                case 8:
+                    stringIndexes.add(in.readUnsignedShort());
+                    break;
+                case 7: case 16: case 19: case 20:
+                    in.skipBytes(2);
+                    break;
+                case 15:
+                    in.skipBytes(3);
+                    break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                    in.skipBytes(4);
+                    break;
+                case 5: case 6:
+                    // Longs and doubles take two constant pool slots
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        for (int i = 1; i < count; i++) {
+            if (utf8[i] == null) {
+                continue;
+            }
+            if (stringIndexes.contains(i)) {
+                info.literals.add(utf8[i]);
+            }
+            Matcher matcher = CLASS_REFERENCE.matcher(utf8[i]);
+            while (matcher.find()) {
+                info.references.add(matcher.group());
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.error("SHA-256 not available: {}", e.getMessage());
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.securetest.runner;
+
+import com.securetest.utils.PropertyManager;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks which changes alter a {@link TestFingerprint} and which do not.
+ */
+public class TestFingerprintTest {
+    private static final String FIXTURE = FingerprintFixture.class.getName();
+    private static final String CONFIG_KEY = "test.parallel.mode";
+
+    @After
+    public void clearOverride() {
+        System.clearProperty(CONFIG_KEY);
+    }
+
+    @Test
+    public void isStableAndSharedByTheMethodsOfAClass() {
+        String first = fingerprint(loader());
+
+        assertEquals(first, fingerprint(loader()));
+        assertEquals(first, new TestFingerprint(loader()).of(new TestWorkItem(FIXTURE, "mode")));
+    }
+
+    @Test
+    public void differsBetweenClasses() {
+        TestFingerprint fingerprints = new TestFingerprint(loader());
+
+        assertNotEquals(fingerprints.of(new TestWorkItem(FIXTURE)),
+                fingerprints.of(new TestWorkItem(FingerprintHelper.class.getName())));
+    }
+
+    @Test
+    public void changesWhenAHelperOfThePackageChanges() {
+        assertNotEquals(fingerprint(loader()), fingerprint(loader(internalName(FingerprintHelper.class))));
+    }
+
+    @Test
+    public void changesWhenAReachedFrameworkClassChanges() {
+        assertNotEquals(fingerprint(loader()), fingerprint(loader("com/securetest/utils/PropertyManager")));
+    }
+
+    @Test
+    public void ignoresClassesTheTestDoesNotReach() {
+        assertEquals(fingerprint(loader()), fingerprint(loader(internalName(TestScheduler.class))));
+    }
+
+    @Test
+    public void changesWhenANamedConfigValueChanges() {
+        String before = fingerprint(loader());
+        System.setProperty(CONFIG_KEY, "changed-" + PropertyManager.getProperty(CONFIG_KEY));
+
+        assertNotEquals(before, fingerprint(loader()));
+    }
+
+    @Test
+    public void ignoresConfigKeysTheTestDoesNotName() {
+        String before = fingerprint(loader());
+        System.setProperty("test.parallel.threads", "99");
+        try {
+            assertEquals(before, fingerprint(loader()));
+        } finally {
+            System.clearProperty("test.parallel.threads");
+        }
+    }
+
+    @Test
+    public void fingerprintsMissingClasses() {
+        TestFingerprint fingerprints = new TestFingerprint(loader());
+
+        assertEquals(64, fingerprints.of(new TestWorkItem("com.securetest.tests.DoesNotExist")).length());
+    }
+
+    private static String fingerprint(ClassLoader loader) {
+        return new TestFingerprint(loader).of(new TestWorkItem(FIXTURE));
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    /**
+     * Gets a loader serving the real class files, with the named ones changed by an appended byte.
+     */
+    private static ClassLoader loader(String... changed) {
+        final Set<String> changedFiles = new HashSet<>();
+        for (String name : changed) {
+            changedFiles.add(name + ".class");
+        }
+        final ClassLoader parent = TestFingerprintTest.class.getClassLoader();
+        return new ClassLoader(parent) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                InputStream in = parent.getResourceAsStream(name);
+                if (in == null || !changedFiles.contains(name)) {
+                    return in;
+                }
+                try (InputStream original = in) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = original.read(buffer)) != -1) {
+                        bytes.write(buffer, 0, read);
+                    }
+                    bytes.write(0);
+                    return new ByteArrayInputStream(bytes.toByteArray());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
+
+/**
+ * A test class reaching a helper of its package, a framework class and a config key.
+ * Top level, because a nested class would also reach the test class around it.
+ */
+class FingerprintFixture {
+    public String mode() {
+        return FingerprintHelper.describe(PropertyManager.getProperty("test.parallel.mode"));
+    }
+}
+
+class FingerprintHelper {
+    static String describe(String value) {
+        return "mode " + value;
+    }
+}
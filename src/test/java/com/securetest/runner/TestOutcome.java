@@ -0,0 +1,125 @@
+package com.securetest.runner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of executing a single work item.
+ */
+public class TestOutcome {
+    
+    /**
+     * Final status of a work item.
+     */
+    public enum Status {
+        PASSED,
+        FAILED,
+        SKIPPED,
+        // Not run because an environment it needs is down, see EnvironmentCircuitBreaker
+        BLOCKED
+    }
+    
+    private final TestWorkItem item;
+    private final Status status;
+    private final long queueMillis;
+    private final long wallMillis;
+    private final String message;
+    private final boolean reused;
+    
+    public TestOutcome(TestWorkItem item, Status status, long queueMillis, long wallMillis, String message) {
+        this(item, status, queueMillis, wallMillis, message, false);
+    }
+    
+    private TestOutcome(TestWorkItem item, Status status, long queueMillis, long wallMillis, String message,
+                        boolean reused) {
+        this.item = item;
+        this.status = status;
+        this.queueMillis = queueMillis;
+        this.wallMillis = wallMillis;
+        this.message = message;
+        this.reused = reused;
+    }
+    
+    /**
+     * Creates the outcome of a test that was not run because a recorded pass with
+     * unchanged inputs was found in the {@link ResultCache}.
+     * 
+     * @param item The work item
+     * @param recordedWallMillis The wall time of the recorded run
+     * @return A passed outcome marked as reused
+     */
+    public static TestOutcome reused(TestWorkItem item, long recordedWallMillis) {
+        return new TestOutcome(item, Status.PASSED, 0, recordedWallMillis, "Result reused, inputs unchanged", true);
+    }
+    
+    public TestWorkItem getItem() {
+        return item;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    /**
+     * Gets the time the item waited for a free worker.
+     * 
+     * @return Queue time in milliseconds
+     */
+    public long getQueueMillis() {
+        return queueMillis;
+    }
+    
+    /**
+     * Gets the time the item spent executing.
+     * 
+     * @return Wall time in milliseconds
+     */
+    public long getWallMillis() {
+        return wallMillis;
+    }
+    
+    /**
+     * Gets the failure message, if any.
+     * 
+     * @return The failure message or null
+     */
+    public String getMessage() {
+        return message;
+    }
+    
+    public boolean isFailed() {
+        return status == Status.FAILED;
+    }
+    
+    public boolean isBlocked() {
+        return status == Status.BLOCKED;
+    }
+    
+    /**
+     * Checks whether this result was taken from the result cache instead of running the test.
+     * 
+     * @return true if the result was reused
+     */
+    public boolean isReused() {
+        return reused;
+    }
+    
+    /**
+     * Reduces a list that may contain several attempts per test to the last attempt of each.
+     * 
+     * @param outcomes Outcomes of all attempts, in completion order
+     * @return The final outcome of every test, in first-seen order
+     */
+    public static List<TestOutcome> finalAttempts(List<TestOutcome> outcomes) {
+        Map<String, TestOutcome> latest = new LinkedHashMap<>();
+        for (TestOutcome outcome : outcomes) {
+            TestOutcome previous = latest.get(outcome.getItem().getId());
+            if (previous == null || previous.getItem().getAttempt() < outcome.getItem().getAttempt()) {
+                latest.put(outcome.getItem().getId(), outcome);
+            }
+        }
+        return new ArrayList<>(latest.values());
+    }
+}
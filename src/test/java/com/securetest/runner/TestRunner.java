@@ -2,25 +2,62 @@ package com.securetest.runner;
 
 import com.aventstack.extentreports.ExtentReports;
 import com.aventstack.extentreports.reporter.ExtentSparkReporter;
+import com.aventstack.extentreports.reporter.JsonFormatter;
+import com.securetest.capabilities.CapabilityRegistry;
+import com.securetest.reporting.ReportEventBus;
+import com.securetest.reporting.ReportRenderer;
+import com.securetest.reporting.ReportTest;
+import com.securetest.reporting.ScreenshotPipeline;
+import com.securetest.tests.BaseTest;
 import com.securetest.utils.CommandLineParser;
+import com.securetest.utils.CommandMetrics;
+import com.securetest.utils.DriverPool;
+import com.securetest.utils.EnvironmentCircuitBreaker;
+import com.securetest.utils.FlightEvents;
+import com.securetest.utils.LogIndexer;
 import com.securetest.utils.EncryptionUtil;
 import com.securetest.utils.PropertyManager;
 import com.securetest.utils.SensitiveDataManager;
+import com.securetest.utils.TraceRecorder;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.junit.runner.JUnitCore;
-import org.junit.runner.Result;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Simple JUnit runner for the secure test automation framework.
- * Handles command-line arguments, encryption setup, and reporting.
+ * Handles command-line arguments, encryption setup, test execution and reporting.
  */
 public class TestRunner {
     private static final Logger LOGGER = LogManager.getLogger(TestRunner.class);
-    private static ExtentReports extentReports;
+    private static final Logger RESULTS = LogManager.getLogger("TestResults");
+    private static final String REPORT_DIR = "test-output/extent-reports";
+    private static final String SHARD_REPORT_DIR = REPORT_DIR + "/shards";
+    private static final String SHARD_HISTORY_DIR = "test-output/history/shards";
+    private static final String WORKER_LOG_DIR = "test-output/workers";
+    private static final Set<String> COORDINATOR_ONLY_OPTIONS = new HashSet<>(Arrays.asList(
+            "-coordinator", "--coordinator", "-localWorkers", "--local-workers"));
+    private static final String EVENT_LOG = REPORT_DIR + "/events.jsonl";
+    private static ReportEventBus report;
+    private static String[] launchArgs = new String[0];
+    private static final ThreadLocal<ReportTest> currentTest = new ThreadLocal<>();
     
     /**
      * Main method to run tests from command line.
@@ -28,6 +65,12 @@ public class TestRunner {
      * @param args Command line arguments
      */
     public static void main(String[] args) {
+        boolean testsFailed = false;
+        launchArgs = args.clone();
+        // A log query must not write to the logs it reads, or the active log is re-indexed on every query
+        if (isLogQuery(args)) {
+            logToConsoleOnly();
+        }
         try {
             LOGGER.info("Starting secure test automation framework");
             
@@ -52,73 +95,868 @@ public class TestRunner {
                 System.exit(0);
             }
             
+            // Merging shard reports needs no credentials or test execution
+            if (CommandLineParser.hasOption("mergeReports")) {
+                boolean merged = mergeShardReports(CommandLineParser.getOptionValue("mergeReports", SHARD_REPORT_DIR));
+                System.exit(merged ? 0 : 1);
+            }
+            
+            // Re-rendering the event log of an interrupted run needs neither
+            if (CommandLineParser.hasOption("renderReport")) {
+                PropertyManager.init();
+                boolean rendered = renderEventLog(new File(CommandLineParser.getOptionValue("renderReport", EVENT_LOG)));
+                System.exit(rendered ? 0 : 1);
+            }
+            
+            // Log queries only read the log files and their index
+            if (CommandLineParser.hasOption("queryLogs")) {
+                PropertyManager.init();
+                boolean queried = queryLogs(CommandLineParser.getOptionValue("queryLogs", ""));
+                System.exit(queried ? 0 : 1);
+            }
+            
+            // Serve framework metrics while tests run, and between runs of a daemon
+            startMetricsEndpoint();
+            
+            // The daemon receives credentials with every run request instead
+            if (CommandLineParser.hasOption("daemon")) {
+                PropertyManager.init();
+                runDaemon();
+                return;
+            }
+            
             // Check for required parameters
             if (!validateRequiredParameters()) {
                 System.exit(1);
             }
             
-            // Initialize properties
-            PropertyManager.init();
-            
-            // Initialize sensitive data from command line
-            SensitiveDataManager.initFromCommandLine();
-            
-            // Log test configuration
-            logTestConfiguration();
+            // Record the phases of startup and of every test when tracing
+            if (isTracing()) {
+                TraceRecorder.start();
+            }
+            if (isProfiling()) {
+                FlightEvents.startRecording(PropertyManager.getProperty("profile.settings", "profile"));
+            }
             
-            // Set up reporting
-            setupReporting();
+            // Load configuration, credentials and reporting, and launch the first browser
+            bootstrap();
             
             // Check if we're being run directly from command line
             boolean runningFromCommandLine = CommandLineParser.hasOption("u") && CommandLineParser.hasOption("p");
             
             if (runningFromCommandLine) {
-                // Execute available test classes
                 LOGGER.info("JUnit framework ready for test execution");
-                
-                // For now, we're skipping the actual test execution when run directly
-                // Users can execute individual test classes with Maven or IDE
-                LOGGER.info("Framework initialized successfully. Tests can be run individually.");
-                LOGGER.info("To run tests, use Maven: mvn test -Dusername=xyz -Dpassword=xyz");
+                testsFailed = runTests();
             } else {
                 LOGGER.info("No command line credentials provided, skipping test execution");
             }
             
             // Finalize reporting
-            if (extentReports != null) {
-                extentReports.flush();
+            if (report != null) {
+                finishReporting();
                 LOGGER.info("Test reports generated successfully");
             }
+            if (TraceRecorder.isEnabled()) {
+                TraceRecorder.export(getTraceFile());
+            }
+            exportMetrics();
+            FlightEvents.dumpRecording(getProfileFile());
             
         } catch (Exception e) {
             LOGGER.error("Error during test execution: {}", e.getMessage(), e);
             System.exit(1);
         } finally {
-            // Ensure sensitive data is cleared
+            // Ensure sensitive data is cleared and started capabilities, e.g. pooled browsers, are closed
             SensitiveDataManager.clearAllSecureData();
+            CapabilityRegistry.stopAll();
+            CommandMetrics.stopHttpEndpoint();
             LOGGER.info("Framework execution completed. Sensitive data cleared.");
         }
+        
+        if (testsFailed) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Keeps this JVM resident and executes run requests sent over the loopback socket.
+     * Configuration and pooled browsers stay warm between runs.
+     */
+    private static void runDaemon() {
+        int port = Integer.parseInt(CommandLineParser.getOptionValue("daemon",
+                PropertyManager.getProperty("daemon.port", "0")));
+        try {
+            new TestDaemon(port, new File(TestDaemon.STATE_FILE)).serve(TestRunner::runDaemonRequest);
+        } catch (IOException e) {
+            LOGGER.error("Test daemon failed: {}", e.getMessage());
+            throw new RuntimeException("Test daemon failed", e);
+        }
+    }
+    
+    /**
+     * Executes one run request inside the daemon, with the same steps as a cold start.
+     * 
+     * @param args The command line arguments of the request
+     * @return true if any test failed, false otherwise
+     */
+    private static boolean runDaemonRequest(String[] args) {
+        StartupTimer.restart("daemon");
+        if (!CommandLineParser.parseArgs(args) || !validateRequiredParameters()) {
+            return true;
+        }
+        launchArgs = args.clone();
+        if (isTracing()) {
+            TraceRecorder.start();
+        }
+        if (isProfiling()) {
+            FlightEvents.startRecording(PropertyManager.getProperty("profile.settings", "profile"));
+        }
+        try {
+            bootstrap();
+            boolean failed = runTests();
+            finishReporting();
+            return failed;
+        } finally {
+            if (TraceRecorder.isEnabled()) {
+                TraceRecorder.export(getTraceFile());
+            }
+            exportMetrics();
+            FlightEvents.dumpRecording(getProfileFile());
+            // Credentials only live for the duration of their run
+            SensitiveDataManager.clearAllSecureData();
+        }
+    }
+    
+    /**
+     * Runs the setup steps concurrently, joining only on real dependencies.
+     * The browser for the first web test is launched in the background and is
+     * waited for by that test rather than here.
+     */
+    private static void bootstrap() {
+        BootstrapGraph graph = new BootstrapGraph()
+                .add("properties", PropertyManager::init)
+                .add("secure-data", SensitiveDataManager::initFromCommandLine)
+                .add("reporting", TestRunner::setupReporting, "properties")
+                .add("environment", TestRunner::probeEnvironment, "properties")
+                .add("browser", TestRunner::prewarmBrowser, "environment");
+        graph.start();
+        graph.await("properties", "secure-data", "reporting", "environment");
+        logTestConfiguration();
+    }
+    
+    /**
+     * Probes the portal before any web test runs, so a dead portal opens its circuit
+     * breaker and the web tests are blocked within seconds instead of timing out one by one.
+     */
+    private static void probeEnvironment() {
+        if (!PropertyManager.getBooleanProperty("circuit.breaker.enabled", true) || !needsBrowser()) {
+            return;
+        }
+        EnvironmentCircuitBreaker portal = EnvironmentCircuitBreaker.portal();
+        if (portal.getState() == EnvironmentCircuitBreaker.State.CLOSED && !portal.probe()) {
+            LOGGER.error("Portal {} is unreachable, web tests will be reported as blocked",
+                    PropertyManager.getProperty("cuscal.portal.url"));
+        }
+    }
+    
+    /**
+     * Launches the browser for the first web test, resolving its driver binary on the way.
+     */
+    private static void prewarmBrowser() {
+        if (!PropertyManager.getBooleanProperty("webdriver.prewarm.enabled", true) || !needsBrowser()
+                || EnvironmentCircuitBreaker.portal().getState() == EnvironmentCircuitBreaker.State.OPEN) {
+            return;
+        }
+        DriverPool.prewarm(CommandLineParser.getOptionValue("b", "chrome"),
+                CommandLineParser.getBooleanOption("headless", false));
+    }
+    
+    /**
+     * Checks whether the selected tests use a browser: Cucumber scenarios, the full
+     * suite or any selected subclass of {@link BaseTest}.
+     * 
+     * @return true if a browser will be needed
+     */
+    private static boolean needsBrowser() {
+        // The coordinator hands all tests to workers
+        if (CommandLineParser.hasOption("coordinator")) {
+            return false;
+        }
+        if (CommandLineParser.hasOption("t")) {
+            return true;
+        }
+        String selection = CommandLineParser.getOptionValue("tests");
+        if (selection == null || selection.trim().isEmpty()) {
+            return true;
+        }
+        
+        // Resolve through the context loader, which reloads test classes in daemon mode
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            Class<?> baseTest = Class.forName(BaseTest.class.getName(), false, loader);
+            for (String entry : selection.split(",")) {
+                String id = entry.trim();
+                if (id.indexOf('#') >= 0) {
+                    id = id.substring(0, id.indexOf('#'));
+                }
+                if (id.isEmpty()) {
+                    continue;
+                }
+                if (id.indexOf('.') < 0) {
+                    id = TestDiscovery.DEFAULT_TEST_PACKAGE + "." + id;
+                }
+                try {
+                    if (baseTest.isAssignableFrom(Class.forName(id, false, loader))) {
+                        return true;
+                    }
+                } catch (ClassNotFoundException e) {
+                    // Reported when the tests are selected
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            LOGGER.debug("BaseTest not found, not launching a browser: {}", e.getMessage());
+        }
+        return false;
+    }
+    
+    /**
+     * Discovers the requested tests and runs them through the execution engine.
+     * 
+     * @return true if any test failed, false otherwise
+     */
+    private static boolean runTests() {
+        boolean parallel = CommandLineParser.hasOption("parallel")
+                ? CommandLineParser.getBooleanOption("parallel", false)
+                : PropertyManager.getBooleanProperty("test.parallel.enabled", false);
+        int threads = parallel
+                ? Integer.parseInt(CommandLineParser.getOptionValue("threads",
+                        String.valueOf(PropertyManager.getIntProperty("test.parallel.threads",
+                                Runtime.getRuntime().availableProcessors()))))
+                : 1;
+        boolean perMethod = "methods".equalsIgnoreCase(PropertyManager.getProperty("test.parallel.mode", "classes"));
+        
+        if (CommandLineParser.hasOption("worker")) {
+            runAsWorker(threads);
+            return false;
+        }
+        
+        // Tag filters select Cucumber scenarios rather than JUnit classes
+        if (CommandLineParser.hasOption("t")) {
+            if (isIncremental()) {
+                LOGGER.info("Incremental runs only reuse JUnit results, all matching scenarios are run");
+            }
+            return CucumberScenarioRunner.run(CommandLineParser.getOptionValue("t"), threads);
+        }
+        
+        List<TestWorkItem> items = selectWorkItems(perMethod);
+        if (items.isEmpty()) {
+            LOGGER.warn("No tests selected for execution");
+            return false;
+        }
+        
+        LOGGER.info("Running {} work item(s), parallel: {}, workers: {}, mode: {}",
+                items.size(), parallel, threads, perMethod ? "methods" : "classes");
+        
+        // Schedule recent failures first, then longest-processing-time first
+        DurationHistory history = DurationHistory.loadDefault();
+        TestScheduler scheduler = new TestScheduler(history);
+        if (isSharded()) {
+            items = createShardPartitioner().select(items, getShardIndex(), getShardCount());
+        }
+        
+        // Reuse recorded passes of tests whose inputs have not changed since
+        ResultCache resultCache = isIncremental() ? ResultCache.loadDefault() : null;
+        TestFingerprint fingerprints = new TestFingerprint(Thread.currentThread().getContextClassLoader());
+        List<TestOutcome> reused = new ArrayList<>();
+        if (resultCache != null && !CommandLineParser.hasOption("force")) {
+            items = reuseCachedResults(items, resultCache, fingerprints, reused);
+        }
+        items = scheduler.plan(items, threads);
+        
+        List<TestOutcome> outcomes = new ArrayList<>(reused);
+        if (items.isEmpty()) {
+            LOGGER.info("All selected tests were reused, nothing left to run");
+        } else if (CommandLineParser.hasOption("coordinator")) {
+            outcomes.addAll(runAsCoordinator(items));
+        } else {
+            // Adapt the number of workers to latency, infrastructure failures and free memory
+            AdaptiveConcurrencyController controller = parallel && isAdaptive()
+                    ? AdaptiveConcurrencyController.fromConfig(history, threads) : null;
+            outcomes.addAll(new ParallelTestEngine(report, threads, RetryPolicy.fromConfig(), controller).run(items));
+            if (controller != null) {
+                controller.report(report);
+            }
+        }
+        if (isSharded()) {
+            history.record(outcomes, new File(SHARD_HISTORY_DIR, getShardName() + ".log"));
+        } else {
+            history.record(outcomes);
+        }
+        if (resultCache != null) {
+            resultCache.update(TestOutcome.finalAttempts(outcomes), fingerprints);
+            resultCache.save();
+        }
+        if (!reused.isEmpty()) {
+            logIncrementalSummary(outcomes);
+        }
+        for (TestOutcome outcome : TestOutcome.finalAttempts(outcomes)) {
+            if (outcome.isFailed() || outcome.isBlocked()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks whether the number of workers is adjusted during the run, from --adaptive or test.parallel.adaptive.enabled.
+     * 
+     * @return true if adaptive concurrency is enabled
+     */
+    private static boolean isAdaptive() {
+        return CommandLineParser.hasOption("adaptive")
+                || PropertyManager.getBooleanProperty("test.parallel.adaptive.enabled", false);
+    }
+    
+    /**
+     * Checks whether test phases are recorded as a trace, from --trace or trace.enabled.
+     * 
+     * @return true if tracing is enabled
+     */
+    private static boolean isTracing() {
+        return CommandLineParser.hasOption("trace") || PropertyManager.getBooleanProperty("trace.enabled", false);
+    }
+    
+    /**
+     * Gets the trace file of this process. Shards and workers, which may share the
+     * --trace argument of their launcher, write a file of their own next to it.
+     * 
+     * @return The trace file
+     */
+    private static File getTraceFile() {
+        return getProcessFile(CommandLineParser.getOptionValue("trace",
+                PropertyManager.getProperty("trace.file", TraceRecorder.DEFAULT_FILE)));
+    }
+    
+    /**
+     * Checks whether a flight recording is made, from --profile or profile.enabled.
+     * 
+     * @return true if profiling is enabled
+     */
+    private static boolean isProfiling() {
+        return CommandLineParser.hasOption("profile") || PropertyManager.getBooleanProperty("profile.enabled", false);
+    }
+    
+    /**
+     * Gets the flight recording file of this process, next to the report by default.
+     * 
+     * @return The recording file
+     */
+    private static File getProfileFile() {
+        return getProcessFile(CommandLineParser.getOptionValue("profile",
+                PropertyManager.getProperty("profile.file", REPORT_DIR + "/profile.jfr")));
+    }
+    
+    /**
+     * Gets the file of this process for output that every shard or worker writes, such as
+     * traces, metrics and profiles. Shards and workers get their shard name or process id appended.
+     * 
+     * @param path The configured path
+     * @return The file of this process
+     */
+    private static File getProcessFile(String path) {
+        String suffix = null;
+        if (CommandLineParser.hasOption("worker")) {
+            suffix = "worker-" + TraceRecorder.processId();
+        } else if (isSharded()) {
+            suffix = getShardName();
+        }
+        if (suffix == null) {
+            return new File(path);
+        }
+        int extension = path.lastIndexOf('.');
+        return extension > path.lastIndexOf('/')
+                ? new File(path.substring(0, extension) + "-" + suffix + path.substring(extension))
+                : new File(path + "-" + suffix);
+    }
+    
+    /**
+     * Starts the local metrics endpoint if metrics.http.enabled is set.
+     */
+    private static void startMetricsEndpoint() {
+        if (!PropertyManager.getBooleanProperty("metrics.http.enabled", false)) {
+            return;
+        }
+        try {
+            CommandMetrics.startHttpEndpoint(
+                    InetAddress.getByName(PropertyManager.getProperty("metrics.http.bind.address", "127.0.0.1")),
+                    PropertyManager.getIntProperty("metrics.http.port", 9464));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to start metrics endpoint: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Logs the slowest WebDriver commands and writes all metrics as a Prometheus text file.
+     */
+    private static void exportMetrics() {
+        if (!PropertyManager.getBooleanProperty("metrics.enabled", true)) {
+            return;
+        }
+        CommandMetrics.logSummary(PropertyManager.getIntProperty("metrics.summary.limit", 10));
+        CommandMetrics.writeTo(getProcessFile(PropertyManager.getProperty("metrics.file", CommandMetrics.DEFAULT_FILE)));
+    }
+    
+    /**
+     * Checks whether recorded results may be reused, from --incremental or test.incremental.enabled.
+     * 
+     * @return true if incremental runs are enabled
+     */
+    private static boolean isIncremental() {
+        return CommandLineParser.hasOption("incremental")
+                || PropertyManager.getBooleanProperty("test.incremental.enabled", false);
+    }
+    
+    /**
+     * Removes the items whose recorded pass is still valid and marks them as reused in the report.
+     * 
+     * @param items The selected work items
+     * @param resultCache The recorded results
+     * @param fingerprints Fingerprints the current inputs of each item
+     * @param reused Receives a reused outcome for each removed item
+     * @return The items that still have to run
+     */
+    private static List<TestWorkItem> reuseCachedResults(List<TestWorkItem> items, ResultCache resultCache,
+                                                         TestFingerprint fingerprints, List<TestOutcome> reused) {
+        List<TestWorkItem> remaining = new ArrayList<>();
+        for (TestWorkItem item : items) {
+            ResultCache.Entry entry = resultCache.find(item.getId(), fingerprints.of(item));
+            if (entry == null) {
+                remaining.add(item);
+                continue;
+            }
+            TestOutcome outcome = TestOutcome.reused(item, entry.getWallMillis());
+            reused.add(outcome);
+            RESULTS.info("REUSED {} (recorded {} ms)", item.getId(), outcome.getWallMillis());
+            report.createTest(item.getDisplayName() + " (reused)")
+                    .assignCategory("Reused")
+                    .pass(String.format("%s. Passed on %tF %<tT in %d ms",
+                            outcome.getMessage(), entry.getRecordedAt(), entry.getWallMillis()));
+        }
+        LOGGER.info("Incremental run: reused {} recorded result(s), {} work item(s) left to run",
+                reused.size(), remaining.size());
+        return remaining;
     }
     
     /**
-     * Sets up the Extent reporting system
+     * Logs the totals of an incremental run, counting the reused results along with the executed tests.
+     * 
+     * @param outcomes The reused and executed outcomes
+     */
+    private static void logIncrementalSummary(List<TestOutcome> outcomes) {
+        int passed = 0;
+        int reused = 0;
+        int failed = 0;
+        int blocked = 0;
+        int skipped = 0;
+        for (TestOutcome outcome : TestOutcome.finalAttempts(outcomes)) {
+            switch (outcome.getStatus()) {
+                case PASSED:
+                    passed++;
+                    if (outcome.isReused()) {
+                        reused++;
+                    }
+                    break;
+                case FAILED:
+                    failed++;
+                    break;
+                case BLOCKED:
+                    blocked++;
+                    break;
+                default:
+                    skipped++;
+                    break;
+            }
+        }
+        RESULTS.info("Incremental run summary: {} passed ({} reused), {} failed, {} blocked, {} skipped",
+                passed, reused, failed, blocked, skipped);
+    }
+    
+    /**
+     * Serves the work items to worker JVMs and collects their results.
+     * Starts --local-workers worker processes on this host once the socket is bound.
+     * 
+     * @param items The scheduled work items
+     * @return The outcomes reported by the workers
+     */
+    private static List<TestOutcome> runAsCoordinator(List<TestWorkItem> items) {
+        int port = Integer.parseInt(CommandLineParser.getOptionValue("coordinator", "0"));
+        int localWorkers = Integer.parseInt(CommandLineParser.getOptionValue("localWorkers", "0"));
+        String token = PropertyManager.getProperty("distributed.token");
+        final String sharedToken = token != null ? token : new BigInteger(128, new SecureRandom()).toString(16);
+        final List<Process> processes = new ArrayList<>();
+        
+        try {
+            InetAddress bindAddress = InetAddress.getByName(
+                    PropertyManager.getProperty("distributed.bind.address", "127.0.0.1"));
+            if (token == null && !bindAddress.isLoopbackAddress()) {
+                LOGGER.warn("No distributed.token configured; only workers started by this coordinator can join");
+            }
+            
+            DistributedCoordinator coordinator = new DistributedCoordinator(port, sharedToken, items, report,
+                    RetryPolicy.fromConfig());
+            coordinator.setTimeouts(
+                    TimeUnit.SECONDS.toMillis(PropertyManager.getIntProperty("distributed.worker.timeoutSeconds", 300)),
+                    TimeUnit.MINUTES.toMillis(PropertyManager.getIntProperty("distributed.run.timeoutMinutes", 0)));
+            return coordinator.run(bindAddress, boundPort -> {
+                processes.addAll(startLocalWorkers(localWorkers, boundPort, sharedToken));
+                coordinator.watchLocalWorkers(processes);
+            });
+        } catch (IOException e) {
+            LOGGER.error("Coordinator failed: {}", e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            for (Process process : processes) {
+                try {
+                    if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                        process.destroy();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    process.destroy();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Starts worker JVMs on this host with the same classpath and arguments as the coordinator.
+     * 
+     * @param count Number of worker processes
+     * @param port The coordinator port
+     * @param token The shared secret, passed through the environment rather than the command line
+     * @return The started processes
+     */
+    private static List<Process> startLocalWorkers(int count, int port, String token) {
+        List<Process> processes = new ArrayList<>();
+        if (count <= 0) {
+            return processes;
+        }
+        new File(WORKER_LOG_DIR).mkdirs();
+        
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TestRunner.class.getName());
+        for (int i = 0; i < launchArgs.length; i++) {
+            String arg = launchArgs[i];
+            String name = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+            if (COORDINATOR_ONLY_OPTIONS.contains(name)) {
+                if (!arg.contains("=")) {
+                    i++;
+                }
+                continue;
+            }
+            command.add(arg);
+        }
+        command.add("--worker");
+        command.add("127.0.0.1:" + port);
+        
+        for (int i = 1; i <= count; i++) {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.environment().put("distributed.token", token);
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(Redirect.appendTo(new File(WORKER_LOG_DIR, "worker-" + i + ".log")));
+            try {
+                processes.add(builder.start());
+            } catch (IOException e) {
+                LOGGER.error("Failed to start local worker {}: {}", i, e.getMessage());
+            }
+        }
+        LOGGER.info("Started {} local worker process(es), logs in {}", processes.size(), WORKER_LOG_DIR);
+        return processes;
+    }
+    
+    /**
+     * Pulls work items from the coordinator given by --worker until it reports that all work is done.
+     * 
+     * @param slots Number of tests to run concurrently in this JVM
+     */
+    private static void runAsWorker(int slots) {
+        String address = CommandLineParser.getOptionValue("worker");
+        int separator = address.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Worker address must be host:port");
+        }
+        String host = address.substring(0, separator);
+        int port = Integer.parseInt(address.substring(separator + 1));
+        
+        ParallelTestEngine engine = new ParallelTestEngine(report, slots);
+        new DistributedWorker(host, port, PropertyManager.getProperty("distributed.token"), engine).run(slots);
+    }
+    
+    /**
+     * Builds the work items from the --tests option, or from all discovered test classes.
+     * 
+     * @param perMethod true to split classes into one item per test method
+     * @return The work items to run
+     */
+    private static List<TestWorkItem> selectWorkItems(boolean perMethod) {
+        String selection = CommandLineParser.getOptionValue("tests");
+        if (selection == null || selection.trim().isEmpty()) {
+            return TestDiscovery.toWorkItems(TestDiscovery.findTestClasses(TestDiscovery.DEFAULT_TEST_PACKAGE), perMethod);
+        }
+        
+        List<String> classNames = new ArrayList<>();
+        List<TestWorkItem> items = new ArrayList<>();
+        for (String entry : selection.split(",")) {
+            String id = entry.trim();
+            if (id.isEmpty()) {
+                continue;
+            }
+            if (id.indexOf('.') < 0) {
+                id = TestDiscovery.DEFAULT_TEST_PACKAGE + "." + id;
+            }
+            if (id.indexOf('#') >= 0) {
+                items.add(TestWorkItem.fromId(id));
+            } else {
+                classNames.add(id);
+            }
+        }
+        items.addAll(TestDiscovery.toWorkItems(classNames, perMethod));
+        return items;
+    }
+    
+    /**
+     * Sets up the reporting pipeline. Results are streamed to the event log while
+     * the tests run and rendered into the HTML report by {@link #finishReporting()}.
      */
     private static void setupReporting() {
-        // Set up reporting directory
-        String reportDir = "test-output/extent-reports";
-        new File(reportDir).mkdirs();
+        CapabilityRegistry.require(CapabilityRegistry.REPORTING);
+        
+        if (CommandLineParser.hasOption("worker")) {
+            // Workers stream results to the coordinator, which owns the report
+            LOGGER.info("Worker mode: results are reported by the coordinator");
+            report = new ReportEventBus(null);
+        } else if (isSharded()) {
+            // Each shard writes a partial report that --merge-reports combines later
+            report = new ReportEventBus(new File(SHARD_REPORT_DIR + "/" + getShardName() + ".events.jsonl"));
+            report.setSystemInfo("Shard", getShardName());
+        } else {
+            report = new ReportEventBus(new File(EVENT_LOG));
+        }
+        report.setSystemInfo("Environment", PropertyManager.getProperty("environment", "Test"));
+        report.setSystemInfo("Browser", CommandLineParser.getOptionValue("b", "chrome"));
         
-        // Initialize Extent Reports
-        ExtentSparkReporter htmlReporter = new ExtentSparkReporter(reportDir + "/extent-report.html");
+        LOGGER.info("Reporting system initialized successfully");
+    }
+    
+    /**
+     * Writes out the remaining report events and renders the event log into the HTML report.
+     */
+    @SuppressWarnings("try")
+    private static void finishReporting() {
+        ScreenshotPipeline.awaitCompletion();
+        report.close();
+        File eventLog = report.getEventLog();
+        if (eventLog == null) {
+            return;
+        }
+        ExtentReports extentReports = new ExtentReports();
+        if (isSharded()) {
+            extentReports.attachReporter(createHtmlReporter(SHARD_REPORT_DIR + "/" + getShardName() + ".html"));
+            extentReports.attachReporter(new JsonFormatter(SHARD_REPORT_DIR + "/" + getShardName() + ".json"));
+        } else {
+            extentReports.attachReporter(createHtmlReporter(REPORT_DIR + "/extent-report.html"));
+        }
+        try (TraceRecorder.Span span = TraceRecorder.begin("report", "render html", eventLog.getPath())) {
+            ReportRenderer.render(eventLog, extentReports);
+            extentReports.flush();
+        } catch (IOException e) {
+            LOGGER.error("Failed to render report from {}: {}", eventLog, e.getMessage());
+        }
+    }
+    
+    /**
+     * Renders an event log left behind by an interrupted run into extent-report.html.
+     * 
+     * @param eventLog The event log
+     * @return true if the report was rendered
+     */
+    private static boolean renderEventLog(File eventLog) {
+        if (!eventLog.exists()) {
+            LOGGER.error("Event log {} not found", eventLog);
+            return false;
+        }
+        new File(REPORT_DIR).mkdirs();
+        ExtentReports extentReports = new ExtentReports();
+        extentReports.attachReporter(createHtmlReporter(REPORT_DIR + "/extent-report.html"));
+        try {
+            int tests = ReportRenderer.render(eventLog, extentReports);
+            extentReports.flush();
+            LOGGER.info("Rendered {} report entries from {} into {}/extent-report.html", tests, eventLog, REPORT_DIR);
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Failed to render report from {}: {}", eventLog, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Checks for --query-logs before the command line is parsed, as parsing already logs.
+     */
+    private static boolean isLogQuery(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--query-logs") || arg.startsWith("--query-logs=") || arg.equals("-queryLogs")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Detaches every appender but the console from all loggers.
+     */
+    private static void logToConsoleOnly() {
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        Configuration config = context.getConfiguration();
+        List<LoggerConfig> loggerConfigs = new ArrayList<>(config.getLoggers().values());
+        loggerConfigs.add(config.getRootLogger());
+        for (LoggerConfig loggerConfig : loggerConfigs) {
+            for (String appender : new ArrayList<>(loggerConfig.getAppenders().keySet())) {
+                if (!"Console".equals(appender)) {
+                    loggerConfig.removeAppender(appender);
+                }
+            }
+        }
+        context.updateLoggers();
+    }
+    
+    /**
+     * Prints the entries of the framework logs matching a query, indexing new and grown log files first.
+     * 
+     * @param query The query, see {@link LogIndexer.Query#parse(String)}
+     * @return true if the query ran
+     */
+    private static boolean queryLogs(String query) {
+        File logDir = new File(PropertyManager.getProperty("log.dir", LogIndexer.DEFAULT_DIR));
+        try {
+            LogIndexer.query(logDir, query, System.out);
+            return true;
+        } catch (IllegalArgumentException | DateTimeException e) {
+            LOGGER.error("Invalid log query '{}': {}", query, e.getMessage());
+            return false;
+        } catch (IOException e) {
+            LOGGER.error("Failed to query logs in {}: {}", logDir, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Creates the HTML reporter with the framework's report titles.
+     * 
+     * @param path The HTML file to write
+     * @return The configured reporter
+     */
+    private static ExtentSparkReporter createHtmlReporter(String path) {
+        ExtentSparkReporter htmlReporter = new ExtentSparkReporter(path);
         htmlReporter.config().setDocumentTitle("Automation Test Report");
         htmlReporter.config().setReportName("Secure Test Automation Report");
+        return htmlReporter;
+    }
+    
+    /**
+     * Combines the partial JSON reports written by each shard into one extent-report.html.
+     * 
+     * @param shardDir Directory containing the shard-*.json files
+     * @return true if at least one partial report was merged
+     */
+    private static boolean mergeShardReports(String shardDir) {
+        File[] partials = new File(shardDir).listFiles((dir, name) -> name.startsWith("shard-") && name.endsWith(".json"));
+        if (partials == null || partials.length == 0) {
+            LOGGER.error("No shard reports found in {}", shardDir);
+            return false;
+        }
+        Arrays.sort(partials);
         
-        extentReports = new ExtentReports();
-        extentReports.attachReporter(htmlReporter);
-        extentReports.setSystemInfo("Environment", PropertyManager.getProperty("environment", "Test"));
-        extentReports.setSystemInfo("Browser", CommandLineParser.getOptionValue("b", "chrome"));
+        new File(REPORT_DIR).mkdirs();
+        ExtentReports merged = new ExtentReports();
+        merged.attachReporter(createHtmlReporter(REPORT_DIR + "/extent-report.html"));
+        merged.setSystemInfo("Environment", PropertyManager.getProperty("environment", "Test"));
+        merged.setSystemInfo("Shards", String.valueOf(partials.length));
         
-        LOGGER.info("Reporting system initialized successfully");
+        for (File partial : partials) {
+            try {
+                merged.createDomainFromJsonArchive(partial);
+                LOGGER.info("Merged shard report {}", partial.getName());
+            } catch (IOException e) {
+                LOGGER.error("Failed to merge shard report {}: {}", partial.getName(), e.getMessage());
+                return false;
+            }
+        }
+        
+        merged.flush();
+        LOGGER.info("Merged {} shard report(s) into {}/extent-report.html", partials.length, REPORT_DIR);
+        
+        // Fold the shards' recorded durations into the shared history
+        File[] shardHistories = new File(SHARD_HISTORY_DIR).listFiles((dir, name) -> name.endsWith(".log"));
+        if (shardHistories != null && shardHistories.length > 0) {
+            Arrays.sort(shardHistories);
+            new DurationHistory(new File(DurationHistory.DEFAULT_FILE)).mergeFrom(Arrays.asList(shardHistories));
+        }
+        return true;
+    }
+    
+    /**
+     * Checks whether this run is one shard of a split suite.
+     * 
+     * @return true if --shard-count greater than 1 was given
+     */
+    private static boolean isSharded() {
+        return getShardCount() > 1;
+    }
+    
+    /**
+     * Creates the partitioner for a sharded run. It balances by duration only with the history
+     * file given by test.shard.durations, which every agent must have, e.g. checked in.
+     * The local history differs between agents and would give them different partitions.
+     * 
+     * @return The partitioner
+     */
+    private static ShardPartitioner createShardPartitioner() {
+        String durations = PropertyManager.getProperty("test.shard.durations", "").trim();
+        if (durations.isEmpty()) {
+            LOGGER.info("Balancing shards by test count, set test.shard.durations to balance by duration");
+            return new ShardPartitioner();
+        }
+        
+        File file = new File(durations);
+        if (!file.isFile()) {
+            throw new IllegalStateException("Shard duration history not found: " + file.getPath());
+        }
+        String digest;
+        try {
+            digest = TestFingerprint.sha256(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read shard duration history: " + e.getMessage(), e);
+        }
+        DurationHistory shared = new DurationHistory(file);
+        shared.load();
+        // Agents that log different digests computed different partitions
+        LOGGER.info("Balancing shards by the durations in {} (SHA-256 {})", file.getPath(), digest);
+        return new ShardPartitioner(new TestScheduler(shared));
+    }
+    
+    private static String getShardName() {
+        return String.format("shard-%d-of-%d", getShardIndex(), getShardCount());
+    }
+    
+    private static int getShardIndex() {
+        return Integer.parseInt(CommandLineParser.getOptionValue("shardIndex", "0"));
+    }
+    
+    private static int getShardCount() {
+        return Integer.parseInt(CommandLineParser.getOptionValue("shardCount", "1"));
     }
     
     /**
@@ -140,9 +978,16 @@ public class TestRunner {
             valid = false;
         }
         
+        // Recorded results are kept per JUnit class, scenarios selected by tag always run
+        if (CommandLineParser.hasOption("t")
+                && (CommandLineParser.hasOption("incremental") || CommandLineParser.hasOption("force"))) {
+            LOGGER.error("--incremental and --force cannot be combined with -t, Cucumber scenarios always run");
+            valid = false;
+        }
+        
         // Log validation result
         if (!valid) {
-            LOGGER.error("Required command line parameters are missing");
+            LOGGER.error("Required command line parameters are missing or conflicting");
             HelpFormatter formatter = new HelpFormatter();
             formatter.printHelp("SecureTestAutomation", CommandLineParser.getOptions());
         }
@@ -169,11 +1014,33 @@ public class TestRunner {
     }
     
     /**
-     * Gets the ExtentReports instance.
+     * Gets the report that results are published to.
+     * 
+     * @return The report, or null before reporting is set up
+     */
+    public static ReportEventBus getReport() {
+        return report;
+    }
+    
+    /**
+     * Gets the report entry of the work item running on the current thread.
      * 
-     * @return The ExtentReports instance
+     * @return The current report entry, or null when not run through the engine
      */
-    public static ExtentReports getExtentReports() {
-        return extentReports;
+    public static ReportTest getCurrentTest() {
+        return currentTest.get();
+    }
+    
+    /**
+     * Sets the report entry for the work item running on the current thread.
+     * 
+     * @param test The report entry, or null to clear it
+     */
+    static void setCurrentTest(ReportTest test) {
+        if (test == null) {
+            currentTest.remove();
+        } else {
+            currentTest.set(test);
+        }
     }
 }
@@ -0,0 +1,110 @@
+package com.securetest.runner;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Orders work items using recorded history.
+ * Tests that failed on their last run go first so broken runs fail early,
+ * then the remaining tests run longest-processing-time first so a long test
+ * is never the last one holding up the run.
+ */
+public class TestScheduler {
+    private static final Logger LOGGER = LogManager.getLogger(TestScheduler.class);
+
+    // Estimate for tests that have never been recorded and no history exists at all
+    private static final long UNKNOWN_DURATION_MILLIS = 30000;
+
+    private final DurationHistory history;
+    private final long defaultMillis;
+
+    /**
+     * Creates a scheduler backed by a duration history.
+     *
+     * @param history The recorded durations and outcomes
+     */
+    public TestScheduler(DurationHistory history) {
+        this.history = history;
+        this.defaultMillis = history.medianMillis(UNKNOWN_DURATION_MILLIS);
+    }
+
+    /**
+     * Gets the estimated duration of a work item.
+     *
+     * @param item The work item
+     * @return Estimated wall time in milliseconds
+     */
+    public long estimate(TestWorkItem item) {
+        return history.estimateMillis(item, defaultMillis);
+    }
+
+    /**
+     * Orders work items: recent failures first, then longest first.
+     * Ties are broken by test ID so the order is deterministic.
+     *
+     * @param items The work items
+     * @return A new, ordered list
+     */
+    public List<TestWorkItem> order(List<TestWorkItem> items) {
+        List<TestWorkItem> ordered = new ArrayList<>(items);
+        Collections.sort(ordered, new Comparator<TestWorkItem>() {
+            @Override
+            public int compare(TestWorkItem a, TestWorkItem b) {
+                boolean aFailed = history.failedLastRun(a);
+                boolean bFailed = history.failedLastRun(b);
+                if (aFailed != bFailed) {
+                    return aFailed ? -1 : 1;
+                }
+                int byDuration = Long.compare(estimate(b), estimate(a));
+                return byDuration != 0 ? byDuration : a.getId().compareTo(b.getId());
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Estimates the total wall time of running the items in the given order,
+     * by simulating greedy assignment to the least loaded worker.
+     *
+     * @param orderedItems The work items, in execution order
+     * @param workers The number of workers
+     * @return Estimated wall time in milliseconds
+     */
+    public long estimateWallMillis(List<TestWorkItem> orderedItems, int workers) {
+        PriorityQueue<Long> loads = new PriorityQueue<>();
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            loads.add(0L);
+        }
+        long makespan = 0;
+        for (TestWorkItem item : orderedItems) {
+            long load = loads.poll() + estimate(item);
+            makespan = Math.max(makespan, load);
+            loads.add(load);
+        }
+        return makespan;
+    }
+
+    /**
+     * Orders the items and logs the resulting plan and time estimate.
+     *
+     * @param items The work items
+     * @param workers The number of workers
+     * @return The ordered work items
+     */
+    public List<TestWorkItem> plan(List<TestWorkItem> items, int workers) {
+        List<TestWorkItem> ordered = order(items);
+        for (TestWorkItem item : ordered) {
+            LOGGER.debug("Scheduled {} (estimated {} ms{})", item.getId(), estimate(item),
+                    history.failedLastRun(item) ? ", failed last run" : "");
+        }
+        LOGGER.info("Estimated wall time for {} work item(s) on {} worker(s): {} ms",
+                ordered.size(), workers, estimateWallMillis(ordered, workers));
+        return ordered;
+    }
+}
@@ -0,0 +1,165 @@
+package com.securetest.runner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the estimates of {@link DurationHistory} and the order {@link TestScheduler} derives from them.
+ */
+public class TestSchedulerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ordersRecentFailuresFirstThenLongestFirst() throws IOException {
+        DurationHistory history = history(
+                "1\tsuite.Short\tPASSED\t1000",
+                "1\tsuite.Long\tPASSED\t9000",
+                "1\tsuite.Medium\tPASSED\t5000",
+                "1\tsuite.Broken\tPASSED\t8000",
+                "2\tsuite.Broken\tFAILED\t200");
+
+        List<TestWorkItem> ordered = new TestScheduler(history).order(items("suite.Short", "suite.Medium",
+                "suite.Broken", "suite.Long"));
+
+        assertEquals(Arrays.asList("suite.Broken", "suite.Long", "suite.Medium", "suite.Short"), ids(ordered));
+    }
+
+    @Test
+    public void breaksTiesByTestId() throws IOException {
+        DurationHistory history = history(
+                "1\tsuite.B\tPASSED\t3000",
+                "1\tsuite.A\tPASSED\t3000");
+
+        List<TestWorkItem> ordered = new TestScheduler(history).order(items("suite.B", "suite.A"));
+
+        assertEquals(Arrays.asList("suite.A", "suite.B"), ids(ordered));
+    }
+
+    @Test
+    public void smoothsDurationsOverRuns() throws IOException {
+        DurationHistory history = history(
+                "1\tsuite.A\tPASSED\t4000",
+                "2\tsuite.A\tPASSED\t2000");
+
+        assertEquals(3000, history.estimateMillis(new TestWorkItem("suite.A"), 0));
+        assertEquals(2, history.get("suite.A").getRuns());
+    }
+
+    @Test
+    public void blockedRunsKeepTheAverageButCountAsFailed() throws IOException {
+        DurationHistory history = history(
+                "1\tsuite.A\tPASSED\t4000",
+                "2\tsuite.A\tBLOCKED\t3");
+
+        TestWorkItem item = new TestWorkItem("suite.A");
+        assertEquals(4000, history.estimateMillis(item, 0));
+        assertEquals(1, history.get("suite.A").getRuns());
+        assertTrue(history.failedLastRun(item));
+    }
+
+    @Test
+    public void estimatesClassesFromTheirMethods() throws IOException {
+        DurationHistory history = history(
+                "1\tsuite.A#one\tPASSED\t1500",
+                "1\tsuite.A#two\tPASSED\t2500",
+                "1\tsuite.AB#other\tPASSED\t9000");
+
+        assertEquals(4000, history.estimateMillis(new TestWorkItem("suite.A"), 0));
+    }
+
+    @Test
+    public void estimatesUnknownTestsWithTheMedian() throws IOException {
+        DurationHistory history = history(
+                "1\tsuite.A\tPASSED\t1000",
+                "1\tsuite.B\tPASSED\t2000",
+                "1\tsuite.C\tPASSED\t7000",
+                "1\tsuite.D\tBLOCKED\t1");
+
+        assertEquals(2000, new TestScheduler(history).estimate(new TestWorkItem("suite.Unknown")));
+        assertEquals(30000, new TestScheduler(history(new String[0])).estimate(new TestWorkItem("suite.Unknown")));
+    }
+
+    @Test
+    public void skipsMalformedLines() throws IOException {
+        DurationHistory history = history(
+                "garbage",
+                "x\tsuite.A\tPASSED\t1000",
+                "1\tsuite.A\tUNKNOWN\t1000",
+                "1\tsuite.A\tPASSED\t1000");
+
+        assertEquals(1, history.get("suite.A").getRuns());
+    }
+
+    @Test
+    public void recordedOutcomesSurviveReload() throws IOException {
+        File file = new File(folder.getRoot(), "durations.log");
+        DurationHistory history = new DurationHistory(file);
+        TestWorkItem item = new TestWorkItem("suite.A");
+        history.record(Arrays.asList(
+                new TestOutcome(item, TestOutcome.Status.FAILED, 0, 1200, "boom"),
+                TestOutcome.reused(new TestWorkItem("suite.B"), 5000)));
+
+        DurationHistory reloaded = new DurationHistory(file);
+        reloaded.load();
+        assertEquals(1200, reloaded.estimateMillis(item, 0));
+        assertTrue(reloaded.failedLastRun(item));
+        assertNull(reloaded.get("suite.B"));
+        assertFalse(reloaded.failedLastRun(new TestWorkItem("suite.B")));
+    }
+
+    @Test
+    public void estimatesWallTimeByGreedyAssignment() throws IOException {
+        DurationHistory history = history(
+                "1\tsuite.A\tPASSED\t6000",
+                "1\tsuite.B\tPASSED\t4000",
+                "1\tsuite.C\tPASSED\t3000",
+                "1\tsuite.D\tPASSED\t3000");
+        TestScheduler scheduler = new TestScheduler(history);
+        List<TestWorkItem> ordered = scheduler.order(items("suite.D", "suite.C", "suite.B", "suite.A"));
+
+        // A | B, then C joins B (7000) and D joins A (9000)
+        assertEquals(9000, scheduler.estimateWallMillis(ordered, 2));
+        assertEquals(16000, scheduler.estimateWallMillis(ordered, 1));
+        assertEquals(6000, scheduler.estimateWallMillis(ordered, 8));
+        assertEquals(0, scheduler.estimateWallMillis(Collections.<TestWorkItem>emptyList(), 2));
+    }
+
+    private DurationHistory history(String... lines) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        DurationHistory history = new DurationHistory(file);
+        history.load();
+        return history;
+    }
+
+    private static List<TestWorkItem> items(String... ids) {
+        TestWorkItem[] items = new TestWorkItem[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            items[i] = TestWorkItem.fromId(ids[i]);
+        }
+        return Arrays.asList(items);
+    }
+
+    private static List<String> ids(List<TestWorkItem> items) {
+        String[] ids = new String[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = items.get(i).getId();
+        }
+        return Arrays.asList(ids);
+    }
+}
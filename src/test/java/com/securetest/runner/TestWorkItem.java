@@ -0,0 +1,105 @@
+package com.securetest.runner;
+
+/**
+ * A unit of work for the execution engine: either a whole test class
+ * or a single test method within a class.
+ */
+public class TestWorkItem {
+    private final String className;
+    private final String methodName;
+    private final int attempt;
+    
+    /**
+     * Creates a work item for a whole test class.
+     * 
+     * @param className The fully qualified test class name
+     */
+    public TestWorkItem(String className) {
+        this(className, null);
+    }
+    
+    /**
+     * Creates a work item for a single test method.
+     * 
+     * @param className The fully qualified test class name
+     * @param methodName The test method name, or null for the whole class
+     */
+    public TestWorkItem(String className, String methodName) {
+        this(className, methodName, 1);
+    }
+    
+    private TestWorkItem(String className, String methodName, int attempt) {
+        this.className = className;
+        this.methodName = methodName;
+        this.attempt = attempt;
+    }
+    
+    /**
+     * Parses a work item from its ID ("ClassName" or "ClassName#method").
+     * 
+     * @param id The test ID
+     * @return The work item
+     */
+    public static TestWorkItem fromId(String id) {
+        int separator = id.indexOf('#');
+        if (separator < 0) {
+            return new TestWorkItem(id);
+        }
+        return new TestWorkItem(id.substring(0, separator), id.substring(separator + 1));
+    }
+    
+    public String getClassName() {
+        return className;
+    }
+    
+    public String getMethodName() {
+        return methodName;
+    }
+    
+    public boolean isMethod() {
+        return methodName != null;
+    }
+    
+    /**
+     * Gets the attempt number of this execution, starting at 1.
+     * 
+     * @return The attempt number
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+    
+    /**
+     * Creates the work item for re-running this test after a failure.
+     * 
+     * @return A copy of this item with the attempt number incremented
+     */
+    public TestWorkItem nextAttempt() {
+        return new TestWorkItem(className, methodName, attempt + 1);
+    }
+    
+    /**
+     * Gets the stable test ID used for history, sharding and reporting.
+     * 
+     * @return "ClassName" or "ClassName#method"
+     */
+    public String getId() {
+        return methodName == null ? className : className + "#" + methodName;
+    }
+    
+    /**
+     * Gets a short display name for logs and reports.
+     * 
+     * @return Simple class name, with the method name and retry attempt if present
+     */
+    public String getDisplayName() {
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        String name = methodName == null ? simpleName : simpleName + "." + methodName;
+        return attempt > 1 ? name + " (attempt " + attempt + ")" : name;
+    }
+    
+    @Override
+    public String toString() {
+        return getId();
+    }
+}
@@ -0,0 +1,467 @@
+package com.securetest.steps;
+
+import com.aventstack.extentreports.Status;
+import com.securetest.reporting.ReportEventBus;
+import com.securetest.reporting.ReportTest;
+import com.securetest.reporting.ScreenshotPipeline;
+import com.securetest.runner.ScenarioFailureTracker;
+import com.securetest.runner.StartupTimer;
+import com.securetest.runner.TestRunner;
+import com.securetest.utils.AppiumHelper;
+import com.securetest.utils.CommandLineParser;
+import com.securetest.utils.CommandMetrics;
+import com.securetest.utils.DriverFactory;
+import com.securetest.utils.DriverPool;
+import com.securetest.utils.EnvironmentCircuitBreaker;
+import com.securetest.utils.FlightEvents;
+import com.securetest.utils.PropertyManager;
+import com.securetest.utils.SensitiveDataManager;
+import com.securetest.utils.SessionSnapshotCache;
+import com.securetest.utils.TestLogBufferAppender;
+import com.securetest.utils.TraceRecorder;
+import com.securetest.utils.VisualComparator;
+import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.MobileElement;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.Scenario;
+import io.cucumber.java.en.And;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Step definitions for CuscalAuthentication.feature.
+ * <p>
+ * Cucumber creates a new instance per scenario and runs each scenario on a
+ * single thread, so the browser, mobile driver and scenario data scope held
+ * here are never shared between concurrently running scenarios. Browsers are
+ * borrowed from {@link DriverPool} and come back with their session cleared.
+ */
+public class CuscalAuthenticationSteps {
+    private static final Logger LOGGER = LogManager.getLogger(CuscalAuthenticationSteps.class);
+
+    // Portal locators
+    private static final By USERNAME_FIELD = By.id("username");
+    private static final By PASSWORD_FIELD = By.id("password");
+    private static final By LOGIN_BUTTON = By.id("loginButton");
+    private static final By LOGIN_ERROR = By.cssSelector(".login-error, #loginError");
+    private static final By OTP_FIELD = By.id("otp");
+    private static final By OTP_VERIFY_BUTTON = By.id("verifyOtpButton");
+    private static final By OTP_RESEND_LINK = By.id("resendOtp");
+    private static final By OTP_ERROR = By.cssSelector(".otp-error, #otpError");
+    private static final By DASHBOARD = By.id("dashboard");
+    private static final By ACCOUNT_SUMMARY = By.id("accountSummary");
+    private static final By TRANSACTIONS = By.id("transactions");
+    private static final By LOGOUT_BUTTON = By.id("logoutButton");
+
+    // Scenario-scoped key for the OTP read from the device
+    private static final String RETRIEVED_OTP = "retrievedOtp";
+
+    private WebDriver driver;
+    private AppiumDriver<MobileElement> mobileDriver;
+    private ReportTest test;
+    private TraceRecorder.Span scenarioSpan;
+    private FlightEvents.Scope scenarioEvent;
+    private String outerTestId;
+
+    /**
+     * Opens the scenario's data scope and browser, and creates its report entry.
+     *
+     * @param scenario The scenario about to run
+     */
+    @Before
+    public void setUp(Scenario scenario) {
+        StartupTimer.markFirstTest();
+        scenarioSpan = TraceRecorder.begin("test", scenario.getName(), scenario.getUri().toString());
+        scenarioEvent = FlightEvents.test(scenario.getName(), 1);
+        // Scenarios run inside the runner class's test; its id is restored afterwards
+        outerTestId = ThreadContext.get(TestLogBufferAppender.TEST_ID);
+        TestLogBufferAppender.startTest(scenario.getName());
+        LOGGER.info("Starting scenario: {}", scenario.getName());
+        SensitiveDataManager.beginScenarioScope();
+        // Records which environments the scenario uses, as the engine does for JUnit tests
+        EnvironmentCircuitBreaker.startTracking();
+
+        String browser = CommandLineParser.getOptionValue("b", "chrome");
+        boolean headless = CommandLineParser.getBooleanOption("headless", false);
+        driver = DriverPool.acquire(browser, headless);
+
+        ReportEventBus report = TestRunner.getReport();
+        if (report != null) {
+            test = report.createTest(scenario.getName())
+                    .assignCategory(scenario.getSourceTagNames().toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Records the scenario result, then releases its drivers and scoped data.
+     *
+     * @param scenario The scenario that has finished
+     */
+    @After
+    public void tearDown(Scenario scenario) {
+        try {
+            if (test != null) {
+                if (scenario.isFailed()) {
+                    test.fail("Scenario failed: " + scenario.getStatus());
+                    if (PropertyManager.getBooleanProperty("report.screenshot.onFailure", true)) {
+                        captureScreenshot(Status.FAIL, "Failure: " + scenario.getName());
+                    }
+                } else {
+                    test.pass("Scenario " + scenario.getStatus().toString().toLowerCase());
+                    if (PropertyManager.getBooleanProperty("report.screenshot.onSuccess", false)) {
+                        captureScreenshot(Status.PASS, "Passed: " + scenario.getName());
+                    }
+                }
+            }
+            LOGGER.info("Finished scenario: {} ({})", scenario.getName(), scenario.getStatus());
+            scenarioEvent.setResult(scenario.getStatus().toString());
+            recordEnvironmentResult(scenario);
+            // The debug lines of the scenario are only kept if it failed
+            String testLog = TestLogBufferAppender.finishTest(scenario.isFailed());
+            if (test != null && testLog != null) {
+                test.info("Log of the failed scenario:").codeBlock(Status.INFO, testLog);
+            }
+        } finally {
+            DriverPool.release(driver);
+            if (mobileDriver != null) {
+                mobileDriver.quit();
+            }
+            SensitiveDataManager.endScenarioScope();
+            scenarioEvent.close();
+            scenarioSpan.close();
+            TestLogBufferAppender.finishTest(false);
+            if (outerTestId != null) {
+                TestLogBufferAppender.startTest(outerTestId);
+            }
+        }
+    }
+
+    @Given("I navigate to the Cuscal portal")
+    @SuppressWarnings("try")
+    public void navigateToPortal() {
+        String portalUrl = PropertyManager.getProperty("cuscal.portal.url");
+        try (TraceRecorder.Span span = TraceRecorder.begin("navigation", "open portal", portalUrl)) {
+            driver.get(portalUrl);
+        }
+        log("Navigated to " + portalUrl);
+    }
+
+    /**
+     * Reuses a cached authenticated session when one is available and only
+     * runs the full username, password and OTP flow when it is not.
+     */
+    @Given("I am logged in to the Cuscal portal")
+    @SuppressWarnings("try")
+    public void loggedInToPortal() {
+        String portalUrl = PropertyManager.getProperty("cuscal.portal.url");
+        String dashboardUrl = portalUrl + PropertyManager.getProperty("cuscal.portal.dashboard.path", "/dashboard");
+
+        boolean reused;
+        try (TraceRecorder.Span span = TraceRecorder.begin("navigation", "log in", portalUrl)) {
+            reused = SessionSnapshotCache.authenticate(driver, SensitiveDataManager.getUsername(),
+                    portalUrl, dashboardUrl, this::loginWithOtp, this::isDashboardDisplayed);
+        }
+        log(reused ? "Restored cached session" : "Logged in with username, password and OTP");
+        verifyDashboardPage();
+    }
+
+    @When("I enter my username")
+    public void enterMyUsername() {
+        String username = SensitiveDataManager.getUsername();
+        assertNotNull("Username not found in secure storage", username);
+        type(USERNAME_FIELD, username);
+        log("Entered username [SECURED]");
+    }
+
+    @And("I enter my password")
+    public void enterMyPassword() {
+        String password = SensitiveDataManager.getPassword();
+        assertNotNull("Password not found in secure storage", password);
+        type(PASSWORD_FIELD, password);
+        log("Entered password [SECURED]");
+    }
+
+    @When("I enter username {string}")
+    public void enterUsername(String username) {
+        type(USERNAME_FIELD, username);
+        log("Entered username " + username);
+    }
+
+    @And("I enter password {string}")
+    public void enterPassword(String password) {
+        type(PASSWORD_FIELD, password);
+        log("Entered password [SECURED]");
+    }
+
+    @And("I click the login button")
+    public void clickLoginButton() {
+        click(LOGIN_BUTTON);
+    }
+
+    @Then("I should see the OTP page")
+    public void verifyOtpPage() {
+        waitFor(OTP_FIELD);
+        log("OTP page displayed");
+    }
+
+    @When("I initialize my mobile device for OTP retrieval")
+    public void initializeMobileDevice() {
+        // Seed-enrolled accounts generate the OTP in-process and need no device
+        if (SensitiveDataManager.hasSecureValue(SensitiveDataManager.OTP_SEED)) {
+            log("Authenticator seed available, skipping device setup");
+            return;
+        }
+        String deviceName = SensitiveDataManager.getDeviceName();
+        mobileDriver = AppiumHelper.initializeDriver(deviceName != null ? deviceName : "Android Emulator");
+        log("Mobile device initialized");
+    }
+
+    @And("I retrieve the OTP from my mobile device")
+    public void retrieveOtp() {
+        String otp = AppiumHelper.retrieveOtp(mobileDriver);
+        assertNotNull("Failed to retrieve OTP", otp);
+        SensitiveDataManager.storeSecureData(RETRIEVED_OTP, otp);
+        log("Retrieved OTP [SECURED]");
+    }
+
+    @And("I enter the retrieved OTP")
+    public void enterRetrievedOtp() {
+        String otp = SensitiveDataManager.getSecureData(RETRIEVED_OTP);
+        assertNotNull("No OTP retrieved in this scenario", otp);
+        type(OTP_FIELD, otp);
+        log("Entered OTP [SECURED]");
+    }
+
+    @When("I enter OTP {string}")
+    public void enterOtp(String otp) {
+        type(OTP_FIELD, otp);
+        log("Entered OTP " + otp);
+    }
+
+    @And("I click the OTP verify button")
+    public void clickOtpVerifyButton() {
+        click(OTP_VERIFY_BUTTON);
+    }
+
+    @When("I click the resend OTP link")
+    public void clickResendOtpLink() {
+        click(OTP_RESEND_LINK);
+    }
+
+    @Then("I should see the dashboard page")
+    public void verifyDashboardPage() {
+        waitFor(DASHBOARD);
+        log("Dashboard displayed");
+    }
+
+    @And("I should see my account summary")
+    public void verifyAccountSummary() {
+        waitFor(ACCOUNT_SUMMARY);
+        log("Account summary displayed");
+    }
+
+    @And("I should see my transactions")
+    public void verifyTransactions() {
+        waitFor(TRANSACTIONS);
+        log("Transactions displayed");
+    }
+
+    @Then("I should see a login error message")
+    public void verifyLoginError() {
+        waitFor(LOGIN_ERROR);
+    }
+
+    @And("I should see login error message containing {string}")
+    public void verifyLoginErrorText(String expected) {
+        assertTextContains(LOGIN_ERROR, expected);
+    }
+
+    @Then("I should see an OTP error message")
+    public void verifyOtpError() {
+        waitFor(OTP_ERROR);
+    }
+
+    @And("I should see OTP error message containing {string}")
+    public void verifyOtpErrorText(String expected) {
+        assertTextContains(OTP_ERROR, expected);
+    }
+
+    @When("I click the logout button")
+    public void clickLogoutButton() {
+        click(LOGOUT_BUTTON);
+        // Logging out ends the server-side session, so its snapshot is useless from now on
+        SessionSnapshotCache.invalidate(SensitiveDataManager.getUsername());
+    }
+
+    /**
+     * Compares the browser with the stored baseline for the current browser, recording
+     * the baseline on first use. Differing tiles are outlined in test-output/visual.
+     *
+     * @param name The baseline name, e.g. "dashboard"
+     */
+    @Then("the screen should match the visual baseline {string}")
+    public void verifyVisualBaseline(String name) {
+        VisualComparator.Result result = VisualComparator.compareWithBaseline(driver, name);
+        log("Visual check " + name + ": " + result.getMessage());
+        assertTrue("Screen does not match visual baseline " + name + ": " + result.getMessage(), result.isMatched());
+    }
+
+    /**
+     * Compares the browser with a visual baseline, leaving out regions that change between runs.
+     * Each row of the table names either an {@code element} by CSS selector, or a region by
+     * {@code x}, {@code y}, {@code width} and {@code height} in screenshot pixels.
+     *
+     * @param name The baseline name, e.g. "dashboard"
+     * @param regions The regions to ignore
+     */
+    @Then("the screen should match the visual baseline {string} ignoring:")
+    public void verifyVisualBaselineIgnoring(String name, List<Map<String, String>> regions) {
+        List<Rectangle> ignored = new ArrayList<>();
+        for (Map<String, String> region : regions) {
+            String selector = region.get("element");
+            if (selector != null && !selector.isEmpty()) {
+                for (WebElement element : driver.findElements(By.cssSelector(selector))) {
+                    ignored.add(VisualComparator.regionOf(driver, element));
+                }
+            } else {
+                ignored.add(new Rectangle(Integer.parseInt(region.get("x")), Integer.parseInt(region.get("y")),
+                        Integer.parseInt(region.get("width")), Integer.parseInt(region.get("height"))));
+            }
+        }
+        VisualComparator.Result result = VisualComparator.compareWithBaseline(driver, name,
+                ignored.toArray(new Rectangle[0]));
+        log("Visual check " + name + " ignoring " + ignored.size() + " region(s): " + result.getMessage());
+        assertTrue("Screen does not match visual baseline " + name + ": " + result.getMessage(), result.isMatched());
+    }
+
+    @Then("I should see the login page")
+    public void verifyLoginPage() {
+        waitFor(USERNAME_FIELD);
+        log("Login page displayed");
+    }
+
+    private void loginWithOtp() {
+        if (!driver.getCurrentUrl().startsWith(PropertyManager.getProperty("cuscal.portal.url"))) {
+            navigateToPortal();
+        }
+        enterMyUsername();
+        enterMyPassword();
+        clickLoginButton();
+        verifyOtpPage();
+        initializeMobileDevice();
+        retrieveOtp();
+        enterRetrievedOtp();
+        clickOtpVerifyButton();
+    }
+
+    private boolean isDashboardDisplayed(WebDriver webDriver) {
+        try {
+            waitFor(DASHBOARD);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private WebElement waitFor(By locator) {
+        return await("visible", locator, ExpectedConditions.visibilityOfElementLocated(locator));
+    }
+
+    /**
+     * Waits for a condition on an element, recording the wait in the trace, the metrics and the flight recording,
+     * and in the log when it is slow.
+     */
+    @SuppressWarnings("try")
+    private <T> T await(String kind, By locator, ExpectedCondition<T> condition) {
+        int timeout = PropertyManager.getIntProperty("webdriver.timeout.implicit", 10);
+        long start = System.nanoTime();
+        boolean timedOut = false;
+        FlightEvents.Scope event = FlightEvents.await(kind, locator.toString());
+        try (TraceRecorder.Span span = TraceRecorder.begin("wait", kind, locator.toString())) {
+            return new WebDriverWait(driver, timeout).until(condition);
+        } catch (TimeoutException e) {
+            timedOut = true;
+            event.setResult("timeout");
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            CommandMetrics.recordWait(kind, elapsed, timedOut);
+            event.close();
+            // Logged with its duration, so log queries can find the slowest waits
+            if (elapsed / 1000000 >= PropertyManager.getIntProperty("wait.slow.thresholdMs", 2000)) {
+                LOGGER.info("Slow wait: {} {} took {} ms", kind, locator, elapsed / 1000000);
+            }
+        }
+    }
+
+    private void type(By locator, String value) {
+        WebElement element = waitFor(locator);
+        element.clear();
+        element.sendKeys(value);
+    }
+
+    private void click(By locator) {
+        await("clickable", locator, ExpectedConditions.elementToBeClickable(locator)).click();
+    }
+
+    private void assertTextContains(By locator, String expected) {
+        String actual = waitFor(locator).getText();
+        assertTrue("Expected message containing '" + expected + "' but was '" + actual + "'",
+                actual != null && actual.contains(expected));
+        log("Message contains: " + expected);
+    }
+
+    /**
+     * Counts the scenario's outcome against the environments it used: infrastructure failures
+     * towards opening their circuit breakers, passes towards closing them.
+     */
+    private void recordEnvironmentResult(Scenario scenario) {
+        Throwable failure = null;
+        if (scenario.isFailed()) {
+            failure = ScenarioFailureTracker.getFailure();
+            if (failure == null) {
+                failure = new AssertionError("Scenario " + scenario.getStatus());
+            }
+        }
+        EnvironmentCircuitBreaker.recordResult(failure);
+    }
+
+    /**
+     * Grabs a screenshot of the browser, and of the device if one was used, for the background pipeline.
+     */
+    private void captureScreenshot(Status status, String title) {
+        if (driver != null) {
+            ScreenshotPipeline.submit(test, status, title, DriverFactory.captureScreenshot(driver));
+        }
+        if (mobileDriver != null) {
+            ScreenshotPipeline.submit(test, status, title + " (device)", DriverFactory.captureScreenshot(mobileDriver));
+        }
+    }
+
+    private void log(String message) {
+        LOGGER.info(message);
+        if (test != null) {
+            test.info(message);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.securetest.tests;
 
+import com.securetest.capabilities.CapabilityRegistry;
 import com.securetest.utils.SensitiveDataManager;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -12,6 +13,7 @@ import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.JSONObject;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -25,6 +27,14 @@ import static org.junit.Assert.assertNotNull;
  */
 public class ApiTest {
     private static final Logger LOGGER = LogManager.getLogger(ApiTest.class);
+
+    /**
+     * Starts only the API capability, so API runs never load browser or device drivers.
+     */
+    @Before
+    public void setUp() {
+        CapabilityRegistry.require(CapabilityRegistry.API);
+    }
     
     /**
      * Test method for API authentication with secure credentials.
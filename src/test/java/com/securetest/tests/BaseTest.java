@@ -1,13 +1,20 @@
 package com.securetest.tests;
 
-import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.Status;
+import com.securetest.reporting.ReportTest;
+import com.securetest.reporting.ScreenshotPipeline;
 import com.securetest.runner.TestRunner;
 import com.securetest.utils.CommandLineParser;
 import com.securetest.utils.DriverFactory;
+import com.securetest.utils.DriverPool;
+import com.securetest.utils.PropertyManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
 import org.openqa.selenium.WebDriver;
 
 /**
@@ -17,7 +24,39 @@ import org.openqa.selenium.WebDriver;
 public class BaseTest {
     protected static final Logger LOGGER = LogManager.getLogger(BaseTest.class);
     protected WebDriver driver;
-    protected ExtentTest test;
+    protected ReportTest test;
+    
+    /**
+     * Captures screenshots according to report.screenshot.onFailure and onSuccess, and
+     * releases the browser afterwards. Rules only see the result after @After methods
+     * have run, so the browser is released here rather than in {@link #baseTearDown()}.
+     */
+    @Rule
+    public final TestWatcher screenshotWatcher = new TestWatcher() {
+        @Override
+        protected void failed(Throwable e, Description description) {
+            if (PropertyManager.getBooleanProperty("report.screenshot.onFailure", true)) {
+                captureScreenshot(Status.FAIL, "Failure: " + description.getMethodName());
+            }
+        }
+        
+        @Override
+        protected void succeeded(Description description) {
+            if (PropertyManager.getBooleanProperty("report.screenshot.onSuccess", false)) {
+                captureScreenshot(Status.PASS, "Passed: " + description.getMethodName());
+            }
+        }
+        
+        @Override
+        protected void finished(Description description) {
+            // Return browser to the pool, cleared of this test's session
+            if (driver != null) {
+                DriverPool.release(driver);
+                driver = null;
+                LOGGER.info("WebDriver released");
+            }
+        }
+    };
     
     /**
      * Setup method run before each test.
@@ -32,30 +71,29 @@ public class BaseTest {
         boolean headless = CommandLineParser.getBooleanOption("headless", false);
         
         // Initialize driver
-        driver = DriverFactory.createDriver(browser, headless);
+        driver = DriverPool.acquire(browser, headless);
         LOGGER.info("WebDriver initialized for browser: {}, headless: {}", browser, headless);
         
-        // Initialize test reporting
-        test = TestRunner.getExtentReports().createTest(getClass().getSimpleName());
-        test.info("Test started");
+        // Initialize test reporting, reusing the entry created by the execution engine
+        test = TestRunner.getCurrentTest();
+        if (test == null && TestRunner.getReport() != null) {
+            test = TestRunner.getReport().createTest(getClass().getSimpleName());
+        }
+        if (test != null) {
+            test.info("Test started");
+        }
         
         LOGGER.info("Test environment setup complete");
     }
     
     /**
      * Teardown method run after each test.
-     * Closes WebDriver and finalizes reporting.
+     * Finalizes reporting; the browser is released by {@link #screenshotWatcher}.
      */
     @After
     public void baseTearDown() {
         LOGGER.info("Tearing down test environment");
         
-        // Close browser
-        if (driver != null) {
-            driver.quit();
-            LOGGER.info("WebDriver closed");
-        }
-        
         // Update test reporting
         if (test != null) {
             test.info("Test completed");
@@ -63,4 +101,17 @@ public class BaseTest {
         
         LOGGER.info("Test environment teardown complete");
     }
-}
\ No newline at end of file
+    
+    /**
+     * Grabs a screenshot on the test thread and hands it to the background pipeline
+     * that stores it and attaches it to the report.
+     * 
+     * @param status The status to log the screenshot with
+     * @param title The caption
+     */
+    protected void captureScreenshot(Status status, String title) {
+        if (driver != null && test != null) {
+            ScreenshotPipeline.submit(test, status, title, DriverFactory.captureScreenshot(driver));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.securetest.tests;
 
 import com.securetest.utils.SensitiveDataManager;
+import com.securetest.utils.TraceRecorder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.Test;
@@ -20,6 +21,7 @@ public class LoginTest extends BaseTest {
      * Uses encrypted credentials from command line.
      */
     @Test
+    @SuppressWarnings("try")
     public void testSecureLogin() {
         LOGGER.info("Starting secure login test");
         
@@ -27,7 +29,9 @@ public class LoginTest extends BaseTest {
         String baseUrl = "https://example.com/login";
         
         // Navigate to login page
-        driver.get(baseUrl);
+        try (TraceRecorder.Span span = TraceRecorder.begin("navigation", "open login page", baseUrl)) {
+            driver.get(baseUrl);
+        }
         LOGGER.info("Navigated to login page: {}", baseUrl);
         
         // Get securely stored credentials
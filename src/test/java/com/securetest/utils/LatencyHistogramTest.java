@@ -0,0 +1,105 @@
+package com.securetest.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bucket layout and quantile estimates of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+    private static final int LAST_BUCKET = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+
+    @Test
+    public void givesSmallValuesABucketEach() {
+        for (long micros = 0; micros < 16; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketOf(micros));
+            assertEquals(micros, LatencyHistogram.upperEdgeOf((int) micros));
+        }
+    }
+
+    @Test
+    public void splitsEachPowerOfTwoIntoSixteenBuckets() {
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(31, LatencyHistogram.bucketOf(31));
+        // From 32 µs on, each bucket is two wide, then four, ...
+        assertEquals(32, LatencyHistogram.bucketOf(32));
+        assertEquals(32, LatencyHistogram.bucketOf(33));
+        assertEquals(33, LatencyHistogram.bucketOf(34));
+        assertEquals(47, LatencyHistogram.bucketOf(63));
+        assertEquals(48, LatencyHistogram.bucketOf(64));
+        assertEquals(63L, LatencyHistogram.upperEdgeOf(47));
+        assertEquals(67L, LatencyHistogram.upperEdgeOf(48));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinOneSixteenth() {
+        for (int bucket = 0; bucket < LAST_BUCKET; bucket++) {
+            long edge = LatencyHistogram.upperEdgeOf(bucket);
+            assertEquals("upper edge of bucket " + bucket, bucket, LatencyHistogram.bucketOf(edge));
+            assertEquals("value after bucket " + bucket, bucket + 1, LatencyHistogram.bucketOf(edge + 1));
+
+            long lowerEdge = bucket == 0 ? 0 : LatencyHistogram.upperEdgeOf(bucket - 1) + 1;
+            assertTrue("width of bucket " + bucket, (edge - lowerEdge + 1) * 16 <= Math.max(16, lowerEdge));
+        }
+    }
+
+    @Test
+    public void putsValuesBeyondTheRangeInTheLastBucket() {
+        long lastEdge = LatencyHistogram.upperEdgeOf(LAST_BUCKET);
+        assertEquals((1L << 44) - 1, lastEdge);
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketOf(lastEdge + 1));
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void estimatesPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5.05, histogram.getSumSeconds(), 1e-9);
+        assertPercentile(histogram, 50, 50);
+        assertPercentile(histogram, 90, 90);
+        assertPercentile(histogram, 99, 99);
+        assertPercentile(histogram, 100, 100);
+        // The lowest rank is the smallest value, however small the percentile
+        assertPercentile(histogram, 0, 1);
+    }
+
+    @Test
+    public void reportsZeroPercentileWhenEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0.0, histogram.getPercentileMillis(99), 0.0);
+        assertEquals(0, histogram.countAtOrBelow(1.0));
+    }
+
+    @Test
+    public void countsValuesAtOrBelowBucketEdges() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(32));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(33));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        // Negative latencies, e.g. from a clock step, count as zero
+        histogram.record(-1000);
+
+        assertEquals(2, histogram.countAtOrBelow(0.000010));
+        // 32 and 33 µs share a bucket that ends at 33 µs
+        assertEquals(2, histogram.countAtOrBelow(0.000032));
+        assertEquals(4, histogram.countAtOrBelow(0.000033));
+        assertEquals(4, histogram.countAtOrBelow(0.004));
+        assertEquals(5, histogram.countAtOrBelow(0.006));
+    }
+
+    private static void assertPercentile(LatencyHistogram histogram, double percentile, double expectedMillis) {
+        double actual = histogram.getPercentileMillis(percentile);
+        assertTrue("p" + percentile + " = " + actual, actual >= expectedMillis && actual <= expectedMillis * 17 / 16);
+    }
+}
@@ -0,0 +1,141 @@
+package com.securetest.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the time range, level and duration queries of {@link LogIndexer} on log files
+ * written in the layout of {@code log4j2.xml}.
+ */
+public class LogIndexerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void selectsEntriesInHalfOpenTimeRange() throws IOException {
+        File logDir = writeSampleLogs();
+
+        String result = query(logDir, "from=\"2026-10-17 23:30\" to=\"2026-10-18 01:00\"", 3);
+
+        assertTrue(result.contains("closing browser"));
+        assertTrue(result.contains("portal login took 1200 ms"));
+        assertTrue(result.contains("driver crashed"));
+        // to= is exclusive, from= inclusive
+        assertFalse(result.contains("otp arrived"));
+        assertFalse(result.contains("suite started"));
+    }
+
+    @Test
+    public void spansRolledAndActiveFilesInLogOrder() throws IOException {
+        File logDir = writeSampleLogs();
+
+        String result = query(logDir, "from=2026-10-17", 6);
+
+        assertTrue(result.indexOf("suite started") < result.indexOf("closing browser"));
+        assertTrue(result.indexOf("closing browser") < result.indexOf("portal login took"));
+        assertTrue(result.indexOf("driver crashed") < result.indexOf("otp arrived"));
+    }
+
+    @Test
+    public void acceptsOpenEndedRanges() throws IOException {
+        File logDir = writeSampleLogs();
+
+        query(logDir, "from=\"2026-10-18 01:00\"", 2);
+        query(logDir, "to=\"2026-10-18 00:00\"", 2);
+        query(logDir, "from=2026-10-19", 0);
+    }
+
+    @Test
+    public void combinesRangeWithLevelAndLogger() throws IOException {
+        File logDir = writeSampleLogs();
+
+        String errors = query(logDir, "level=ERROR from=\"2026-10-18 00:00\" to=\"2026-10-18 02:00\"", 1);
+        assertTrue(errors.contains("driver crashed"));
+        // Stack trace lines belong to the entry before them
+        assertTrue(errors.contains("at com.securetest.utils.DriverFactory.createDriver"));
+
+        query(logDir, "level=WARN,ERROR logger=DriverPool from=2026-10-18", 0);
+        query(logDir, "logger=com.securetest.utils.DriverPool from=\"2026-10-17 23:00\"", 1);
+        query(logDir, "test=LoginTest to=\"2026-10-18 00:30\"", 2);
+    }
+
+    @Test
+    public void reindexesActiveFileAfterItGrows() throws IOException {
+        File logDir = writeSampleLogs();
+        query(logDir, "from=\"2026-10-18 02:00\"", 0);
+
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(logDir, "secure-test.log"), true), StandardCharsets.UTF_8)) {
+            writer.write("2026-10-18 02:15:00.000 [main] INFO  com.securetest.runner.TestRunner - suite finished\n");
+        }
+
+        assertTrue(query(logDir, "from=\"2026-10-18 02:00\"", 1).contains("suite finished"));
+    }
+
+    @Test
+    public void reportsSlowestEntriesPerHourInRange() throws IOException {
+        File logDir = writeSampleLogs();
+
+        String result = query(logDir, "slowest=1 per=hour from=2026-10-18", 3);
+
+        assertTrue(result.contains("2026-10-18 00:00"));
+        assertTrue(result.contains("1200 ms"));
+        assertTrue(result.contains("2026-10-18 01:00"));
+        assertTrue(result.contains("350 ms"));
+        assertFalse(result.contains("80 ms"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownQueryTerms() {
+        LogIndexer.Query.parse("since=2026-10-18");
+    }
+
+    private String query(File logDir, String query, int expectedMatches) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int matches = LogIndexer.query(logDir, query, new PrintStream(buffer, true, "UTF-8"));
+        String output = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(query + "\n" + output, expectedMatches, matches);
+        return output;
+    }
+
+    /**
+     * Writes a rolled log for the evening before and the active log after midnight.
+     */
+    private File writeSampleLogs() throws IOException {
+        File logDir = folder.newFolder("logs");
+        write(new File(logDir, "secure-test-2026-10-17-1.log"),
+                "2026-10-17 22:00:00.000 [main] INFO  com.securetest.runner.TestRunner - suite started",
+                "2026-10-17 23:30:00.000 [worker-1] DEBUG [LoginTest] com.securetest.utils.DriverPool - closing browser");
+        write(new File(logDir, "secure-test.log"),
+                "2026-10-18 00:10:00.000 [worker-1] INFO  [LoginTest] com.securetest.tests.LoginTest - portal login took 1200 ms",
+                "2026-10-18 00:40:00.000 [worker-2] ERROR [ApiTest] com.securetest.utils.DriverFactory - driver crashed",
+                "java.lang.IllegalStateException: session not created",
+                "\tat com.securetest.utils.DriverFactory.createDriver(DriverFactory.java:250)",
+                "2026-10-18 01:00:00.000 [worker-2] WARN  [ApiTest] com.securetest.utils.AppiumHelper - otp arrived after 350 ms",
+                "2026-10-18 01:20:00.000 [worker-2] INFO  [ApiTest] com.securetest.utils.AppiumHelper - otp read in 80 ms");
+        return logDir;
+    }
+
+    private static void write(File file, String... lines) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+}
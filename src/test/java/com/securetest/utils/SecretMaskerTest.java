@@ -0,0 +1,103 @@
+package com.securetest.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the keyword and registered-secret masking of {@link SecretMasker}.
+ */
+public class SecretMaskerTest {
+    private final SecretMasker masker = new SecretMasker(SecretMasker.DEFAULT_KEYWORDS);
+
+    @After
+    public void clearRegistered() {
+        SecretMasker.clearRegistered();
+    }
+
+    @Test
+    public void masksValuesAssignedToKeywords() {
+        assertEquals("password=hu*****r2", mask("password=hunter2r2"));
+        assertEquals("login with Password: hu*****r2 ok", mask("login with Password: hunter2r2 ok"));
+        assertEquals("{\"apiKey\": \"ab****yz\"}", mask("{\"apiKey\": \"abc12xyz\"}"));
+        assertEquals("db_password='se*****23', user=bob", mask("db_password='secret123', user=bob"));
+    }
+
+    @Test
+    public void masksCredentialAfterAuthScheme() {
+        assertEquals("Authorization: Bearer ey*********90", mask("Authorization: Bearer eyJ1234567890"));
+        assertEquals("authorization=Basic ****", mask("authorization=Basic abcd"));
+    }
+
+    @Test
+    public void leavesMentionsAndPlaceholdersUnchanged() {
+        assertEquals("Password field displayed", mask("Password field displayed"));
+        assertEquals("password=[SECURED]", mask("password=[SECURED]"));
+        assertEquals("token=", mask("token="));
+    }
+
+    @Test
+    public void masksRegisteredSecretsAnywhere() {
+        SecretMasker.register("s3cr3t-value");
+        SecretMasker.register("abc");
+
+        assertEquals("typed s3********ue into the field", mask("typed s3cr3t-value into the field"));
+        assertEquals("s3********ue/s3********ue", mask("s3cr3t-value/s3cr3t-value"));
+        // Shorter than MIN_REGISTERED_LENGTH, so ordinary text stays readable
+        assertEquals("abc", mask("abc"));
+    }
+
+    @Test
+    public void masksLongerSecretThatOverlapsShorterOne() {
+        SecretMasker.register("alice");
+        SecretMasker.register("alice-secret");
+
+        assertEquals("al********et", mask("alice-secret"));
+        assertEquals("user al*ce", mask("user alice"));
+    }
+
+    @Test
+    public void keepsSecretMaskedUntilEveryRegistrationIsUndone() {
+        SecretMasker.register("shared-secret");
+        SecretMasker.register("shared-secret");
+
+        SecretMasker.unregister("shared-secret");
+        assertEquals("sh*********et", mask("shared-secret"));
+
+        SecretMasker.unregister("shared-secret");
+        assertEquals("shared-secret", mask("shared-secret"));
+
+        // Unknown secrets are ignored
+        SecretMasker.unregister("never-registered");
+        SecretMasker.unregister(null);
+    }
+
+    @Test
+    public void masksOnlyFromTheGivenOffset() {
+        SecretMasker.register("prefix-secret");
+        StringBuilder buffer = new StringBuilder("prefix-secret | prefix-secret");
+
+        masker.mask(buffer, 16);
+
+        assertEquals("prefix-secret | pr*********et", buffer.toString());
+    }
+
+    @Test
+    public void usesConfiguredKeywordsOnly() {
+        SecretMasker pinMasker = new SecretMasker(Arrays.asList("pin"));
+        StringBuilder buffer = new StringBuilder("pin=123456 password=hunter2r2");
+
+        pinMasker.mask(buffer, 0);
+
+        assertEquals("pin=12**56 password=hunter2r2", buffer.toString());
+    }
+
+    private String mask(String message) {
+        StringBuilder buffer = new StringBuilder(message);
+        masker.mask(buffer, 0);
+        return buffer.toString();
+    }
+}
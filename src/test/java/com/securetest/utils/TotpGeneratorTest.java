@@ -0,0 +1,59 @@
+package com.securetest.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link TotpGenerator} against the test vectors of RFC 6238, Appendix B.
+ */
+public class TotpGeneratorTest {
+    // ASCII "12345678901234567890", repeated to 32 and 64 bytes for SHA256 and SHA512
+    private static final String SEED_SHA1 = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+    private static final String SEED_SHA256 = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZA====";
+    private static final String SEED_SHA512 =
+            "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNA=";
+
+    private static final long[] TIMES = {59L, 1111111109L, 1111111111L, 1234567890L, 2000000000L, 20000000000L};
+
+    @Test
+    public void generatesSha1Vectors() {
+        assertVectors("HmacSHA1", SEED_SHA1,
+                "94287082", "07081804", "14050471", "89005924", "69279037", "65353130");
+    }
+
+    @Test
+    public void generatesSha256Vectors() {
+        assertVectors("HmacSHA256", SEED_SHA256,
+                "46119246", "68084774", "67062674", "91819424", "90698825", "77737706");
+    }
+
+    @Test
+    public void generatesSha512Vectors() {
+        assertVectors("HmacSHA512", SEED_SHA512,
+                "90693936", "25091201", "99943326", "93441116", "38618901", "47863826");
+    }
+
+    @Test
+    public void truncatesToSixDigits() {
+        assertEquals("287082", TotpGenerator.generate(SEED_SHA1, 59000L, "HmacSHA1", 6, 30));
+        assertEquals("081804", TotpGenerator.generate(SEED_SHA1, 1111111109000L, "HmacSHA1", 6, 30));
+    }
+
+    @Test
+    public void decodesSeedsWithSpacesAndLowerCase() {
+        assertEquals("94287082", TotpGenerator.generate("gezd gnbv gy3t qojq gezd gnbv gy3t qojq", 59000L, "HmacSHA1", 8, 30));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rejectsInvalidBase32() {
+        TotpGenerator.generate("NOT-BASE32-1", 59000L, "HmacSHA1", 6, 30);
+    }
+
+    private static void assertVectors(String algorithm, String seed, String... expected) {
+        for (int i = 0; i < TIMES.length; i++) {
+            assertEquals(algorithm + " at " + TIMES[i], expected[i],
+                    TotpGenerator.generate(seed, TIMES[i] * 1000L, algorithm, 8, 30));
+        }
+    }
+}
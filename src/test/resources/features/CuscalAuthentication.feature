@@ -12,6 +12,7 @@ Feature: Cuscal Portal Authentication
     And I enter my password
     And I click the login button
     Then I should see the OTP page
+    And the screen should match the visual baseline "otp"
     When I initialize my mobile device for OTP retrieval
     And I retrieve the OTP from my mobile device
     And I enter the retrieved OTP
@@ -19,6 +20,10 @@ Feature: Cuscal Portal Authentication
     Then I should see the dashboard page
     And I should see my account summary
     And I should see my transactions
+    And the screen should match the visual baseline "dashboard" ignoring:
+      | element         |
+      | #accountSummary |
+      | #transactions   |
 
   @login @negative
   Scenario: Failed login with invalid credentials
@@ -54,14 +59,6 @@ Feature: Cuscal Portal Authentication
 
   @logout
   Scenario: Successful logout
-    When I enter my username
-    And I enter my password
-    And I click the login button
-    Then I should see the OTP page
-    When I initialize my mobile device for OTP retrieval
-    And I retrieve the OTP from my mobile device
-    And I enter the retrieved OTP
-    And I click the OTP verify button
-    Then I should see the dashboard page
+    Given I am logged in to the Cuscal portal
     When I click the logout button
     Then I should see the login page